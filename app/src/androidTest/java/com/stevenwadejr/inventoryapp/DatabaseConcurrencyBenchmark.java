@@ -0,0 +1,134 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how long a page of items takes to read while another thread bulk-updates quantities,
+ * with the write-ahead log on and with the old rollback journal. Percentiles are written to logcat
+ * under the "DatabaseConcurrencyBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseConcurrencyBenchmark {
+
+	private static final String TAG = "DatabaseConcurrencyBenchmark";
+
+	private static final int ITEMS = 5000;
+	private static final int PAGE_SIZE = 50;
+	private static final int WRITE_BATCH_SIZE = 500;
+	private static final int WARMUP_READS = 50;
+	private static final int READS = 500;
+
+	private Context mContext;
+	private InventoryDatabase mInventoryDb;
+	private long[] mItemIds;
+
+	@Before
+	public void setUp() {
+		mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+
+		String[] names = new String[ITEMS];
+		int[] quantities = new int[ITEMS];
+		for (int i = 0; i < ITEMS; i++) {
+			names[i] = "Item " + i;
+			quantities[i] = i % 100;
+		}
+		mInventoryDb.upsertItems(names, quantities, ITEMS);
+
+		List<Item> items = mInventoryDb.getItemsAfter(0, ITEMS);
+		mItemIds = new long[items.size()];
+		for (int i = 0; i < mItemIds.length; i++) {
+			mItemIds[i] = items.get(i).getId();
+		}
+	}
+
+	@After
+	public void tearDown() {
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+	}
+
+	@Test
+	public void readLatencyDuringBulkUpdates() throws InterruptedException {
+		assertTrue(mInventoryDb.getWritableDatabase().isWriteAheadLoggingEnabled());
+		report("WAL", measureReadsDuringWrites());
+
+		mInventoryDb.setWriteAheadLoggingEnabled(false);
+		report("Rollback journal", measureReadsDuringWrites());
+		mInventoryDb.setWriteAheadLoggingEnabled(true);
+	}
+
+	/**
+	 * Read random pages while a writer thread keeps updating batches of quantities
+	 *
+	 * @return The time each read took in nanoseconds, sorted
+	 */
+	private long[] measureReadsDuringWrites() throws InterruptedException {
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final AtomicInteger batches = new AtomicInteger();
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Random random = new Random(1);
+				while (writing.get()) {
+					Map<Long, Integer> quantities = new HashMap<>();
+					for (int i = 0; i < WRITE_BATCH_SIZE; i++) {
+						quantities.put(mItemIds[random.nextInt(mItemIds.length)], random.nextInt(100));
+					}
+					mInventoryDb.updateQuantities(quantities);
+					batches.incrementAndGet();
+				}
+			}
+		}, "benchmark-writer");
+		writer.start();
+
+		Random random = new Random(2);
+		long[] times = new long[READS];
+		try {
+			for (int i = 0; i < WARMUP_READS + READS; i++) {
+				long afterId = mItemIds[random.nextInt(mItemIds.length - PAGE_SIZE)];
+				long start = System.nanoTime();
+				assertEquals(PAGE_SIZE, mInventoryDb.getItemsAfter(afterId, PAGE_SIZE).size());
+				if (i >= WARMUP_READS) {
+					times[i - WARMUP_READS] = System.nanoTime() - start;
+				}
+			}
+		} finally {
+			writing.set(false);
+			writer.join();
+		}
+
+		Log.i(TAG, batches.get() + " write batches ran during the reads");
+		Arrays.sort(times);
+		return times;
+	}
+
+	/**
+	 * Log the median, 95th percentile and worst read time
+	 */
+	private static void report(String mode, long[] times) {
+		Log.i(TAG, mode + ": p50 " + times[times.length / 2] / 1000 + " us, p95 " +
+				times[times.length * 95 / 100] / 1000 + " us, max " + times[times.length - 1] / 1000 + " us");
+	}
+}
@@ -0,0 +1,137 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.os.Bundle;
+import android.os.Parcel;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the cost of handing an item to the edit screen through an intent's extras: the old
+ * Serializable item, a Parcelable item, and the item's ID resolved through the item cache. Each
+ * path writes the extras to a parcel and reads them back, which is what happens when an activity
+ * is started. Median times are written to logcat under the "ItemTransferBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ItemTransferBenchmark {
+
+	private static final String TAG = "ItemTransferBenchmark";
+	private static final String KEY = "item";
+
+	private static final int WARMUP_ITERATIONS = 2000;
+	private static final int ITERATIONS = 10000;
+	private static final int RUNS = 5;
+
+	/**
+	 * The shape of the item as it used to be sent, through Java serialization
+	 */
+	private static final class SerializableItem implements Serializable {
+		private final long mId;
+		private final String mName;
+		private final int mQuantity;
+
+		SerializableItem(long id, String name, int quantity) {
+			mId = id;
+			mName = name;
+			mQuantity = quantity;
+		}
+	}
+
+	/**
+	 * One way of sending an item and getting it back on the other side
+	 */
+	private interface TransferPath {
+		Object transfer();
+	}
+
+	@Test
+	public void compareTransferPaths() {
+		final Item item = new Item(42, "Cordless drill 18V", 12);
+		final SerializableItem serializableItem = new SerializableItem(42, "Cordless drill 18V", 12);
+		final ItemCache cache = new ItemCache();
+		cache.put(item);
+
+		long serializable = measure(new TransferPath() {
+			@Override
+			public Object transfer() {
+				Bundle extras = new Bundle();
+				extras.putSerializable(KEY, serializableItem);
+				return roundTrip(extras).getSerializable(KEY);
+			}
+		});
+
+		long parcelable = measure(new TransferPath() {
+			@Override
+			public Object transfer() {
+				Bundle extras = new Bundle();
+				extras.putParcelable(KEY, item);
+				return roundTrip(extras).getParcelable(KEY);
+			}
+		});
+
+		long idLookup = measure(new TransferPath() {
+			@Override
+			public Object transfer() {
+				Bundle extras = new Bundle();
+				extras.putLong(KEY, item.getId());
+				return cache.get(roundTrip(extras).getLong(KEY));
+			}
+		});
+
+		Log.i(TAG, "Serializable item: " + serializable + " ns");
+		Log.i(TAG, "Parcelable item: " + parcelable + " ns");
+		Log.i(TAG, "ID + item cache: " + idLookup + " ns");
+
+		// Make sure every path really delivers the item
+		Bundle extras = new Bundle();
+		extras.putParcelable(KEY, item);
+		Item received = roundTrip(extras).getParcelable(KEY);
+		assertEquals(item.getId(), received.getId());
+		assertEquals(item.getName(), received.getName());
+		assertEquals(item.getQuantity(), received.getQuantity());
+	}
+
+	/**
+	 * Write the extras to a parcel and read them back, as starting an activity does
+	 */
+	private static Bundle roundTrip(Bundle extras) {
+		Parcel parcel = Parcel.obtain();
+		try {
+			parcel.writeBundle(extras);
+			parcel.setDataPosition(0);
+			Bundle received = parcel.readBundle(ItemTransferBenchmark.class.getClassLoader());
+			received.setClassLoader(ItemTransferBenchmark.class.getClassLoader());
+			return received;
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	/**
+	 * Time a path, returning the median time per transfer across several runs
+	 */
+	private static long measure(TransferPath path) {
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			assertNotNull(path.transfer());
+		}
+
+		long[] runs = new long[RUNS];
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < ITERATIONS; i++) {
+				path.transfer();
+			}
+			runs[run] = (System.nanoTime() - start) / ITERATIONS;
+		}
+		Arrays.sort(runs);
+		return runs[RUNS / 2];
+	}
+}
@@ -0,0 +1,130 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures the time from launching the app to the inventory list being drawn, logging in with a
+ * password each time and with a saved session. The time spent typing isn't counted - the login
+ * path fills in the fields and taps log in straight away. Median times are written to logcat under
+ * the "LaunchBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LaunchBenchmark {
+
+	private static final String TAG = "LaunchBenchmark";
+
+	private static final int WARMUP_LAUNCHES = 2;
+	private static final int LAUNCHES = 9;
+	private static final long TIMEOUT_MS = 10_000;
+
+	private static final String USERNAME = "benchmark";
+	private static final String PASSWORD = "correct horse battery staple";
+
+	private Instrumentation mInstrumentation;
+	private Context mContext;
+
+	@Before
+	public void setUp() {
+		mInstrumentation = InstrumentationRegistry.getInstrumentation();
+		mContext = mInstrumentation.getTargetContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		SessionStore.getInstance(mContext).end();
+
+		InventoryDatabase inventoryDb = InventoryDatabase.getInstance(mContext);
+		assertTrue(inventoryDb.addUser(USERNAME, PASSWORD,
+				new PasswordHasher(PasswordHasher.DEFAULT_ITERATIONS)));
+		inventoryDb.setCurrentUser(USERNAME);
+		for (int i = 0; i < PagedItemList.PAGE_SIZE * 2; i++) {
+			inventoryDb.addItem("Item " + i, i);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		SessionStore.getInstance(mContext).end();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+	}
+
+	@Test
+	public void launchToList() {
+		long login = measure(false);
+
+		SessionStore.getInstance(mContext).start(USERNAME);
+		long session = measure(true);
+
+		Log.i(TAG, "Launch to list with login: " + login / 1_000_000.0 + " ms");
+		Log.i(TAG, "Launch to list with session: " + session / 1_000_000.0 + " ms");
+	}
+
+	/**
+	 * Launch the app repeatedly and return the median time until the list is drawn
+	 */
+	private long measure(boolean withSession) {
+		for (int i = 0; i < WARMUP_LAUNCHES; i++) {
+			launchToList(withSession);
+		}
+
+		long[] launches = new long[LAUNCHES];
+		for (int i = 0; i < LAUNCHES; i++) {
+			launches[i] = launchToList(withSession);
+		}
+		Arrays.sort(launches);
+		return launches[LAUNCHES / 2];
+	}
+
+	/**
+	 * Launch the login screen, log in if there's no session, and wait for the list to settle
+	 */
+	private long launchToList(boolean withSession) {
+		Instrumentation.ActivityMonitor monitor = mInstrumentation.addMonitor(
+				InventoryListActivity.class.getName(), null, false);
+		try {
+			long start = System.nanoTime();
+			Intent intent = new Intent(mContext, LoginActivity.class);
+			intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+			final Activity launched = mInstrumentation.startActivitySync(intent);
+
+			if (!withSession) {
+				mInstrumentation.runOnMainSync(new Runnable() {
+					@Override
+					public void run() {
+						LoginActivity loginActivity = (LoginActivity) launched;
+						loginActivity.usernameInput.setText(USERNAME);
+						loginActivity.passwordInput.setText(PASSWORD);
+						loginActivity.login(loginActivity.loginBtn);
+					}
+				});
+			}
+
+			Activity list = mInstrumentation.waitForMonitorWithTimeout(monitor, TIMEOUT_MS);
+			assertNotNull("Inventory list never opened", list);
+			mInstrumentation.waitForIdleSync();
+			long elapsed = System.nanoTime() - start;
+
+			// Log out of the list without revoking the session
+			list.finish();
+			mInstrumentation.waitForIdleSync();
+			return elapsed;
+		} finally {
+			mInstrumentation.removeMonitor(monitor);
+		}
+	}
+}
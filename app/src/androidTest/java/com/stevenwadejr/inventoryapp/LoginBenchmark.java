@@ -0,0 +1,97 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Measures how long logging in takes at several password hashing costs, including the lookup and
+ * the check against the stored hash, and how long the one-off rehash of a legacy MD5 password
+ * adds to a first login. Use it to pick {@link PasswordHasher#DEFAULT_ITERATIONS} - logins should
+ * stay well under a second on the slowest supported device. Median times are written to logcat
+ * under the "LoginBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LoginBenchmark {
+
+	private static final String TAG = "LoginBenchmark";
+
+	private static final int[] ITERATION_COUNTS = {10_000, 50_000, 100_000, 200_000};
+	private static final int WARMUP_LOGINS = 2;
+	private static final int LOGINS = 9;
+
+	private static final String USERNAME = "benchmark";
+	private static final String PASSWORD = "correct horse battery staple";
+
+	private Context mContext;
+	private InventoryDatabase mInventoryDb;
+
+	@Before
+	public void setUp() {
+		mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+	}
+
+	@After
+	public void tearDown() {
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+	}
+
+	@Test
+	public void loginLatencyByCost() {
+		for (int iterations : ITERATION_COUNTS) {
+			PasswordHasher hasher = new PasswordHasher(iterations);
+			String username = USERNAME + iterations;
+			assertTrue(mInventoryDb.addUser(username, PASSWORD, hasher));
+
+			for (int i = 0; i < WARMUP_LOGINS; i++) {
+				assertTrue(mInventoryDb.checkUser(username, PASSWORD, hasher));
+			}
+
+			long[] logins = new long[LOGINS];
+			for (int i = 0; i < LOGINS; i++) {
+				long start = System.nanoTime();
+				assertTrue(mInventoryDb.checkUser(username, PASSWORD, hasher));
+				logins[i] = System.nanoTime() - start;
+			}
+			Arrays.sort(logins);
+			Log.i(TAG, iterations + " iterations: " + logins[LOGINS / 2] / 1_000_000.0 + " ms");
+		}
+	}
+
+	@Test
+	public void firstLoginRehashesLegacyPassword() {
+		PasswordHasher hasher = new PasswordHasher(PasswordHasher.DEFAULT_ITERATIONS);
+
+		// An MD5 hash as stored before passwords were salted
+		assertTrue(mInventoryDb.addUser(USERNAME, new PasswordHasher.HashedPassword(
+				"9cc2ae8a1ba7a93da39b46fc1019c481", null, PasswordHasher.LEGACY_MD5_ITERATIONS)));
+
+		long start = System.nanoTime();
+		boolean loggedIn = mInventoryDb.checkUser(USERNAME, PASSWORD, hasher);
+		long firstLogin = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		assertTrue(mInventoryDb.checkUser(USERNAME, PASSWORD, hasher));
+		long secondLogin = System.nanoTime() - start;
+
+		assertTrue(loggedIn);
+		assertEquals(PasswordHasher.DEFAULT_ITERATIONS, mInventoryDb.getPassword(USERNAME).iterations);
+		Log.i(TAG, "Legacy login with rehash: " + firstLogin / 1_000_000.0 + " ms");
+		Log.i(TAG, "Login after rehash: " + secondLogin / 1_000_000.0 + " ms");
+	}
+}
@@ -0,0 +1,652 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs inventory database calls off the main thread. Writes go through a single writer thread so
+ * they never queue up behind each other for the write lock, reads run on a small pool of reader
+ * threads, and results are delivered back on the main thread.
+ */
+public class AsyncInventoryDatabase {
+
+	// Logcat tag
+	private static final String TAG = "AsyncInventoryDatabase";
+
+	// Number of threads that can read from the database at the same time. The database is in WAL
+	// mode, so each gets its own read connection and none of them wait for the writer thread.
+	private static final int READER_THREADS = 3;
+
+	// How long an idle reader thread is kept around
+	private static final long READER_KEEP_ALIVE_SECONDS = 30;
+
+	// Singleton of the async database
+	private static AsyncInventoryDatabase sAsyncInventoryDatabase;
+
+	// The blocking database that does the actual work
+	private final InventoryDatabase mInventoryDatabase;
+
+	// Executors for database writes and reads
+	private final ExecutorService mWriteExecutor;
+	private final ThreadPoolExecutor mReadExecutor;
+
+	// Hashes and checks passwords for logins and registrations. Hashing is slow on purpose, so it
+	// gets its own thread rather than holding up the reader pool or queueing writes behind it. The
+	// resulting insert or update still goes through the writer.
+	private final ExecutorService mCredentialExecutor;
+
+	// Hashes and checks passwords
+	private final PasswordHasher mPasswordHasher = new PasswordHasher(PasswordHasher.DEFAULT_ITERATIONS);
+
+	// Used to deliver results on the main thread
+	private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+	// Told about changes to inventory items on the main thread
+	private final List<InventoryDatabase.ChangeListener> mChangeListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Receives the result of a database call on the main thread
+	 *
+	 * @param <T> The type of the result
+	 */
+	public interface Callback<T> {
+		/**
+		 * Called with the result of a successful database call
+		 *
+		 * @param result The result of the call
+		 */
+		void onResult(T result);
+
+		/**
+		 * Called when the database call threw an exception. Logs the error by default.
+		 *
+		 * @param e The exception that was thrown
+		 */
+		default void onError(Exception e) {
+			Log.e(TAG, "Database call failed", e);
+		}
+	}
+
+	/**
+	 * Factory method to get the singleton and create a new one if needed
+	 *
+	 * @param context The app's context
+	 * @return Async inventory database
+	 */
+	public static synchronized AsyncInventoryDatabase getInstance(Context context) {
+		if (sAsyncInventoryDatabase == null) {
+			sAsyncInventoryDatabase = new AsyncInventoryDatabase(
+					InventoryDatabase.getInstance(context.getApplicationContext()));
+		}
+		return sAsyncInventoryDatabase;
+	}
+
+	/**
+	 * Create an async wrapper around a database. The app uses the singleton from
+	 * {@link #getInstance(Context)}, tests build their own.
+	 *
+	 * @param inventoryDb The blocking database to run calls against
+	 */
+	@VisibleForTesting
+	AsyncInventoryDatabase(InventoryDatabase inventoryDb) {
+		mInventoryDatabase = inventoryDb;
+		mWriteExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("inventory-db-writer"));
+		mReadExecutor = new ThreadPoolExecutor(READER_THREADS, READER_THREADS,
+				READER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new NamedThreadFactory("inventory-db-reader"));
+		mReadExecutor.allowCoreThreadTimeOut(true);
+		mCredentialExecutor = Executors.newSingleThreadExecutor(new NamedThreadFactory("inventory-db-credentials"));
+
+		// Pass changes on to the main thread, whichever thread made them
+		mInventoryDatabase.addChangeListener(new InventoryDatabase.ChangeListener() {
+			@Override
+			public void onItemsChanged(InventoryDatabase.ItemChanges changes) {
+				mMainHandler.post(new Runnable() {
+					@Override
+					public void run() {
+						for (InventoryDatabase.ChangeListener listener : mChangeListeners) {
+							listener.onItemsChanged(changes);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Start telling a listener about changes to inventory items. The listener is called on the main
+	 * thread, so remember to remove it when its screen is destroyed.
+	 *
+	 * @param listener The listener
+	 */
+	public void addChangeListener(InventoryDatabase.ChangeListener listener) {
+		mChangeListeners.add(listener);
+	}
+
+	/**
+	 * Stop telling a listener about changes to inventory items
+	 *
+	 * @param listener The listener
+	 */
+	public void removeChangeListener(InventoryDatabase.ChangeListener listener) {
+		mChangeListeners.remove(listener);
+	}
+
+	/**
+	 * Get the blocking database. Only call this from a background thread.
+	 *
+	 * @return The blocking inventory database
+	 */
+	public InventoryDatabase getBlockingDatabase() {
+		return mInventoryDatabase;
+	}
+
+	/**
+	 * Get all inventory items
+	 *
+	 * @param callback Receives the list of inventory items
+	 * @return A future for the call
+	 */
+	public Future<List<Item>> getItems(Callback<List<Item>> callback) {
+		return read(new Callable<List<Item>>() {
+			@Override
+			public List<Item> call() {
+				return mInventoryDatabase.getItems();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Get a single item, from the item cache when it's there
+	 *
+	 * @param id       The ID of the item
+	 * @param callback Receives the item, or `null` if there's no item with that ID
+	 * @return A future for the call
+	 */
+	public Future<Item> getItem(long id, Callback<Item> callback) {
+		return read(new Callable<Item>() {
+			@Override
+			public Item call() {
+				return mInventoryDatabase.getItem(id);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Get a page of inventory items using keyset pagination
+	 *
+	 * @param afterId  The ID of the last item on the previous page (0 for the first page)
+	 * @param limit    The maximum number of items to return
+	 * @param callback Receives the items in the page
+	 * @return A future for the call
+	 */
+	public Future<List<Item>> getItemsAfter(long afterId, int limit, Callback<List<Item>> callback) {
+		return read(new Callable<List<Item>>() {
+			@Override
+			public List<Item> call() {
+				return mInventoryDatabase.getItemsAfter(afterId, limit);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Search item names by prefix
+	 *
+	 * @param query              The text the user typed
+	 * @param cancellationSignal Cancels the search, for example when the user types another letter
+	 * @param callback           Receives the matching items
+	 * @return A future for the call
+	 */
+	public Future<List<Item>> searchItems(String query, CancellationSignal cancellationSignal,
+			Callback<List<Item>> callback) {
+		return read(new Callable<List<Item>>() {
+			@Override
+			public List<Item> call() {
+				return mInventoryDatabase.searchItems(query, cancellationSignal);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Count the inventory items
+	 *
+	 * @param callback Receives the number of items
+	 * @return A future for the call
+	 */
+	public Future<Integer> getItemCount(Callback<Integer> callback) {
+		return read(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return mInventoryDatabase.getItemCount();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Count the items matching a query without loading them
+	 *
+	 * @param query    The items to count - only its filters matter
+	 * @param callback Receives the number of matching items
+	 * @return A future for the call
+	 */
+	public Future<Integer> getItemCount(ItemQuery query, Callback<Integer> callback) {
+		return read(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return mInventoryDatabase.getItemCount(query);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Get the inventory totals
+	 *
+	 * @param callback Receives the totals
+	 * @return A future for the call
+	 */
+	public Future<InventoryDatabase.Summary> getSummary(Callback<InventoryDatabase.Summary> callback) {
+		return read(new Callable<InventoryDatabase.Summary>() {
+			@Override
+			public InventoryDatabase.Summary call() {
+				return mInventoryDatabase.getSummary();
+			}
+		}, callback);
+	}
+
+	/**
+	 * Set who is logged in, so only their items are listed and the stock movements they make are
+	 * attributed to them. Reads started after this returns already see the new user's items.
+	 *
+	 * @param username The user's username, or `null` when nobody is logged in
+	 * @param callback Told once it's set, may be `null`
+	 * @return A future for the call
+	 */
+	public Future<Void> setCurrentUser(String username, Callback<Void> callback) {
+		// Reads run on their own threads, so switch their owner now rather than after queued writes
+		mInventoryDatabase.setOwner(username);
+		return write(new Callable<Void>() {
+			@Override
+			public Void call() {
+				mInventoryDatabase.setCurrentUser(username);
+				return null;
+			}
+		}, callback);
+	}
+
+	/**
+	 * Get an item's quantity at a point in time
+	 *
+	 * @param itemId   The ID of the item
+	 * @param time     The point in time, in milliseconds since the epoch
+	 * @param callback Receives the quantity
+	 * @return A future for the call
+	 */
+	public Future<Long> getQuantityAt(long itemId, long time, Callback<Long> callback) {
+		return read(new Callable<Long>() {
+			@Override
+			public Long call() {
+				return mInventoryDatabase.getQuantityAt(itemId, time);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Fold stock movements older than the retention into daily snapshots. Cheap when there's
+	 * nothing old enough, so it can be run whenever the app starts.
+	 *
+	 * @param callback Receives the number of movements folded, may be `null`
+	 * @return A future for the call
+	 */
+	public Future<Integer> compactStockMovements(Callback<Integer> callback) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return mInventoryDatabase.compactStockMovements(
+						System.currentTimeMillis() - InventoryDatabase.STOCK_MOVEMENT_RETENTION_MS);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Create a new user - failing if the user already exists
+	 *
+	 * @param username The username of the user to create
+	 * @param password The plain text password of the user to create
+	 * @param callback Receives `true` if the user was created
+	 * @return A future for the call
+	 */
+	public Future<Boolean> addUser(String username, String password, Callback<Boolean> callback) {
+		return mCredentialExecutor.submit(wrap(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				// Guard against registering an existing user before spending time on the hash
+				if (mInventoryDatabase.usernameExists(username)) {
+					return false;
+				}
+
+				// Hash here, and only hand the insert itself to the writer
+				PasswordHasher.HashedPassword hashed = mPasswordHasher.hash(password);
+				return awaitWrite(new Callable<Boolean>() {
+					@Override
+					public Boolean call() {
+						return mInventoryDatabase.addUser(username, hashed);
+					}
+				});
+			}
+		}, callback));
+	}
+
+	/**
+	 * Check the given user's credentials, rehashing the password if it was stored with an older cost
+	 *
+	 * @param username The given username to check
+	 * @param password The given plain text password to check
+	 * @param callback Receives `true` if the credentials are correct
+	 * @return A future for the call
+	 */
+	public Future<Boolean> checkUser(String username, String password, Callback<Boolean> callback) {
+		return mCredentialExecutor.submit(wrap(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				PasswordHasher.HashedPassword stored = mInventoryDatabase.getPassword(username);
+				if (stored == null || !mPasswordHasher.verify(password, stored)) {
+					return false;
+				}
+
+				// Rehash here, and only hand the update itself to the writer
+				if (mPasswordHasher.needsRehash(stored)) {
+					PasswordHasher.HashedPassword rehashed = mPasswordHasher.hash(password);
+					awaitWrite(new Callable<Boolean>() {
+						@Override
+						public Boolean call() {
+							return mInventoryDatabase.updatePassword(username, rehashed);
+						}
+					});
+				}
+				return true;
+			}
+		}, callback));
+	}
+
+	/**
+	 * Add an item to the database
+	 *
+	 * @param name     The name of the item
+	 * @param quantity The quantity of the item
+	 * @param callback Receives whether the item was inserted
+	 * @return A future for the call
+	 */
+	public Future<Boolean> addItem(String name, int quantity, Callback<Boolean> callback) {
+		return addItem(name, quantity, null, callback);
+	}
+
+	/**
+	 * Add an item to the database with a low stock threshold
+	 *
+	 * @param name              The name of the item
+	 * @param quantity          The quantity of the item
+	 * @param lowStockThreshold The quantity to alert at, or `null` for no alerts
+	 * @param callback          Receives whether the item was inserted
+	 * @return A future for the call
+	 */
+	public Future<Boolean> addItem(String name, int quantity, Integer lowStockThreshold,
+			Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return mInventoryDatabase.addItem(name, quantity, lowStockThreshold);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Update an existing item
+	 *
+	 * @param item     The item to update
+	 * @param callback Receives whether the item was updated
+	 * @return A future for the call
+	 */
+	public Future<Boolean> updateItem(Item item, Callback<Boolean> callback) {
+		// Copy the item so later changes on the main thread can't race with the write
+		Item snapshot = new Item(item.getId(), item.getName(), item.getQuantity(), item.getLowStockThreshold());
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return mInventoryDatabase.updateItem(snapshot);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Set an item's quantity without rewriting the rest of the row
+	 *
+	 * @param id       The ID of the item
+	 * @param quantity The new quantity
+	 * @param callback Receives whether the item was updated
+	 * @return A future for the call
+	 */
+	public Future<Boolean> setQuantity(long id, int quantity, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return mInventoryDatabase.setQuantity(id, quantity);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Update the quantities of several items in a single transaction
+	 *
+	 * @param quantities New quantities keyed by item ID
+	 * @param callback   Receives the number of items updated
+	 * @return A future for the call
+	 */
+	public Future<Integer> updateQuantities(Map<Long, Integer> quantities, Callback<Integer> callback) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return mInventoryDatabase.updateQuantities(quantities);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Add to (or subtract from) an item's quantity atomically
+	 *
+	 * @param id       The ID of the item
+	 * @param delta    The amount to add - negative to subtract, stopping at zero
+	 * @param callback Receives the new quantity, or -1 if the item doesn't exist
+	 * @return A future for the call
+	 */
+	public Future<Integer> adjustQuantity(long id, int delta, Callback<Integer> callback) {
+		return write(new Callable<Integer>() {
+			@Override
+			public Integer call() {
+				return mInventoryDatabase.adjustQuantity(id, delta);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Apply a batch of quantity deltas in a single transaction
+	 *
+	 * @param deltas   The amount to add to each item, keyed by item ID
+	 * @param callback Receives the new quantity of each item, keyed by item ID
+	 * @return A future for the call
+	 */
+	public Future<Map<Long, Integer>> adjustQuantities(Map<Long, Integer> deltas,
+			Callback<Map<Long, Integer>> callback) {
+		return write(new Callable<Map<Long, Integer>>() {
+			@Override
+			public Map<Long, Integer> call() {
+				return mInventoryDatabase.adjustQuantities(deltas);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Set some quantities and adjust others, all in a single transaction
+	 *
+	 * @param quantities New quantities keyed by item ID, may be `null`
+	 * @param deltas     Amounts to add keyed by item ID, may be `null`
+	 * @param callback   Receives the number of rows updated and the adjusted quantities
+	 * @return A future for the call
+	 */
+	public Future<InventoryDatabase.QuantityChanges> applyQuantityChanges(Map<Long, Integer> quantities,
+			Map<Long, Integer> deltas, Callback<InventoryDatabase.QuantityChanges> callback) {
+		return write(new Callable<InventoryDatabase.QuantityChanges>() {
+			@Override
+			public InventoryDatabase.QuantityChanges call() {
+				return mInventoryDatabase.applyQuantityChanges(quantities, deltas);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Delete an item from the database
+	 *
+	 * @param item     The item to delete
+	 * @param callback Receives whether the item was deleted
+	 * @return A future for the call
+	 */
+	public Future<Boolean> deleteItem(Item item, Callback<Boolean> callback) {
+		return write(new Callable<Boolean>() {
+			@Override
+			public Boolean call() {
+				return mInventoryDatabase.deleteItem(item);
+			}
+		}, callback);
+	}
+
+	/**
+	 * Run a read-only task on the reader pool
+	 *
+	 * @param task     The task to run against the database
+	 * @param callback Receives the result on the main thread, may be `null`
+	 * @param <T>      The type of the result
+	 * @return A future for the task
+	 */
+	public <T> Future<T> read(Callable<T> task, Callback<T> callback) {
+		return mReadExecutor.submit(wrap(task, callback));
+	}
+
+	/**
+	 * Run a task that writes to the database on the writer thread
+	 *
+	 * @param task     The task to run against the database
+	 * @param callback Receives the result on the main thread, may be `null`
+	 * @param <T>      The type of the result
+	 * @return A future for the task
+	 */
+	public <T> Future<T> write(Callable<T> task, Callback<T> callback) {
+		return mWriteExecutor.submit(wrap(task, callback));
+	}
+
+	/**
+	 * Run a task that writes to the database on the writer thread and wait for it. For background
+	 * threads that do their own slow work but must leave the writing to the writer - never call it
+	 * from the writer thread itself.
+	 *
+	 * @param task The task to run against the database
+	 * @param <T>  The type of the result
+	 * @return The task's result
+	 */
+	public <T> T awaitWrite(Callable<T> task) {
+		try {
+			return mWriteExecutor.submit(task).get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Database write failed", e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for a database write", e);
+		}
+	}
+
+	/**
+	 * Wrap a task so its result or error is posted to the callback on the main thread
+	 *
+	 * @param task     The task to wrap
+	 * @param callback The callback to deliver to, may be `null`
+	 * @param <T>      The type of the result
+	 * @return The wrapped task
+	 */
+	private <T> Callable<T> wrap(Callable<T> task, Callback<T> callback) {
+		return new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				try {
+					T result = task.call();
+					if (callback != null) {
+						mMainHandler.post(new Runnable() {
+							@Override
+							public void run() {
+								callback.onResult(result);
+							}
+						});
+					}
+					return result;
+				} catch (Exception e) {
+					if (callback != null) {
+						mMainHandler.post(new Runnable() {
+							@Override
+							public void run() {
+								callback.onError(e);
+							}
+						});
+					} else {
+						Log.e(TAG, "Database call failed", e);
+					}
+					throw e;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Names the executor threads so they're easy to spot in traces, and keeps them at background
+	 * priority so they don't compete with the UI thread.
+	 */
+	private static final class NamedThreadFactory implements ThreadFactory {
+		private final String mName;
+		private final AtomicInteger mCount = new AtomicInteger();
+
+		NamedThreadFactory(String name) {
+			mName = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+					runnable.run();
+				}
+			}, mName + "-" + mCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
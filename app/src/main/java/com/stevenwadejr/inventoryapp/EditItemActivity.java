@@ -1,7 +1,6 @@
 package com.stevenwadejr.inventoryapp;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.NavUtils;
 
 import android.app.AlertDialog;
 import android.content.DialogInterface;
@@ -18,16 +17,19 @@ import android.widget.Toast;
  */
 public class EditItemActivity extends AppCompatActivity {
 
-	// The name of the key to use when sending an item to another view
-	public static final String EXTRA_ITEM = "com.stevenwadejr.inventoryapp.item";
+	// The name of the key to use when sending an item's ID to this view
+	public static final String EXTRA_ITEM_ID = "com.stevenwadejr.inventoryapp.item_id";
 
 	// Instance of the inventory database
-	InventoryDatabase inventoryDatabase;
+	AsyncInventoryDatabase inventoryDatabase;
 
 	// Item name and quantity views
 	EditText itemName;
 	EditText itemQuantity;
 
+	// Optional quantity to send a low stock alert at
+	EditText itemLowStockThreshold;
+
 	// Action buttons
 	Button saveBtn;
 	Button deleteItemBtn;
@@ -43,11 +45,12 @@ public class EditItemActivity extends AppCompatActivity {
 		setContentView(R.layout.activity_edit_item);
 
 		// Set the instance of the database
-		inventoryDatabase = InventoryDatabase.getInstance(this);
+		inventoryDatabase = AsyncInventoryDatabase.getInstance(this);
 
 		// Cache the views
 		itemName = findViewById(R.id.editItemName);
 		itemQuantity = findViewById(R.id.editQuantity_edit);
+		itemLowStockThreshold = findViewById(R.id.editLowStockThreshold);
 		deleteItemBtn = findViewById(R.id.deleteItemBtn);
 		saveBtn = findViewById(R.id.saveItem);
 
@@ -55,24 +58,80 @@ public class EditItemActivity extends AppCompatActivity {
 		deleteItemBtn.setVisibility(View.GONE);
 		saveBtn.setEnabled(false);
 
-		int initialQuantity = 0;
+		// Listen to changes to item name or item quantity fields
+		itemName.addTextChangedListener(textWatcher);
+		itemQuantity.addTextChangedListener(textWatcher);
 
-		// See if there was an item passed as serialized data to this view. If so, open it, and set
-		// the class item as well as any of the item's values (name, quantity).
-		Item item = (Item) getIntent().getSerializableExtra(EXTRA_ITEM);
-		if (item != null) {
-			mItem = item;
-			itemName.setText(item.getName());
-			initialQuantity = item.getQuantity();
-			deleteItemBtn.setVisibility(View.VISIBLE);
+		// See if an item's ID was passed to this view. If so, look the item up so it's the current
+		// version rather than a copy made when the list was drawn. Fields restored after a rotation
+		// keep the user's edits.
+		long itemId = getIntent().getLongExtra(EXTRA_ITEM_ID, -1);
+		boolean restoring = savedInstanceState != null;
+		if (itemId < 0) {
+			if (!restoring) {
+				itemQuantity.setText("0");
+			}
+			return;
+		}
+
+		// Recently listed items are usually in the item cache, so they can be shown straight away
+		Item cached = inventoryDatabase.getBlockingDatabase().getItemCache().get(itemId);
+		if (cached != null) {
+			showItem(cached, restoring);
+			return;
 		}
 
-		// Set the initial quantity value based
-		itemQuantity.setText(String.valueOf(initialQuantity));
+		// Otherwise read it in the background, keeping the fields disabled until it arrives
+		setFieldsEnabled(false);
+		inventoryDatabase.getItem(itemId, new AsyncInventoryDatabase.Callback<Item>() {
+			@Override
+			public void onResult(Item item) {
+				if (item == null) {
+					Toast.makeText(EditItemActivity.this, R.string.item_missing, Toast.LENGTH_SHORT).show();
+					finish();
+					return;
+				}
+				setFieldsEnabled(true);
+				showItem(item, restoring);
+			}
 
-		// Listen to changes to item name or item quantity fields
-		itemName.addTextChangedListener(textWatcher);
-		itemQuantity.addTextChangedListener(textWatcher);
+			@Override
+			public void onError(Exception e) {
+				AsyncInventoryDatabase.Callback.super.onError(e);
+				finish();
+			}
+		});
+	}
+
+	/**
+	 * Set the item being edited and show its values
+	 *
+	 * @param item      The item
+	 * @param restoring `true` if the fields were restored from a saved state and shouldn't be reset
+	 */
+	private void showItem(Item item, boolean restoring) {
+		mItem = item;
+		deleteItemBtn.setVisibility(View.VISIBLE);
+		if (!restoring) {
+			itemName.setText(item.getName());
+			itemQuantity.setText(String.valueOf(item.getQuantity()));
+			Integer threshold = item.getLowStockThreshold();
+			itemLowStockThreshold.setText(threshold != null ? String.valueOf(threshold) : "");
+		}
+	}
+
+	/**
+	 * Enable or disable the fields while the item is loading
+	 *
+	 * @param enabled Whether the fields can be edited
+	 */
+	private void setFieldsEnabled(boolean enabled) {
+		itemName.setEnabled(enabled);
+		itemQuantity.setEnabled(enabled);
+		itemLowStockThreshold.setEnabled(enabled);
+		if (!enabled) {
+			saveBtn.setEnabled(false);
+		}
 	}
 
 	/**
@@ -100,25 +159,47 @@ public class EditItemActivity extends AppCompatActivity {
 	 * @param view Instance of the current view
 	 */
 	public void handleSaveItem(View view) {
-		boolean saved;
+		// Don't let the item be saved twice while the first save is still running
+		saveBtn.setEnabled(false);
+
+		// If the item saved in the database successfully, go back to the previous screen, otherwise,
+		// show an error message.
+		AsyncInventoryDatabase.Callback<Boolean> callback = new AsyncInventoryDatabase.Callback<Boolean>() {
+			@Override
+			public void onResult(Boolean saved) {
+				if (saved) {
+					// Return to the existing list, which refreshes the changed row when it resumes
+					finish();
+				} else {
+					showSaveError();
+				}
+			}
+
+			@Override
+			public void onError(Exception e) {
+				AsyncInventoryDatabase.Callback.super.onError(e);
+				showSaveError();
+			}
+		};
 
 		// If we're editing an existing item, update its values and update it in the database.
 		if (mItem != null) {
 			mItem.setName(getItemName());
 			mItem.setQuantity(getItemQuantity());
-			saved = inventoryDatabase.updateItem(mItem);
+			mItem.setLowStockThreshold(getLowStockThreshold());
+			inventoryDatabase.updateItem(mItem, callback);
 		} else {
 			// Create a new item in the database.
-			saved = inventoryDatabase.addItem(getItemName(), getItemQuantity());
+			inventoryDatabase.addItem(getItemName(), getItemQuantity(), getLowStockThreshold(), callback);
 		}
+	}
 
-		// If the item saved in the database successfully, go back to the previous screen, otherwise,
-		// show an error message.
-		if (saved) {
-			NavUtils.navigateUpFromSameTask(this);
-		} else {
-			Toast.makeText(EditItemActivity.this, R.string.save_error, Toast.LENGTH_SHORT).show();
-		}
+	/**
+	 * Show an error message when the item couldn't be saved, letting the user try again
+	 */
+	private void showSaveError() {
+		saveBtn.setEnabled(!getItemName().isEmpty());
+		Toast.makeText(EditItemActivity.this, R.string.save_error, Toast.LENGTH_SHORT).show();
 	}
 
 	/**
@@ -133,21 +214,35 @@ public class EditItemActivity extends AppCompatActivity {
 				.setPositiveButton("Yes", new DialogInterface.OnClickListener() {
 					@Override
 					public void onClick(DialogInterface dialog, int which) {
-						// Delete the item from the database
-						boolean deleted = inventoryDatabase.deleteItem(mItem);
-						finish();
-
-						// If successfully deleted, go back to the previous screen, otherwise, show
-						// an error message.
-						if (deleted) {
-							NavUtils.navigateUpFromSameTask(EditItemActivity.this);
-						} else {
-							Toast.makeText(EditItemActivity.this, R.string.delete_error, Toast.LENGTH_SHORT).show();
-						}
+						// Delete the item from the database in the background. If successfully
+						// deleted, go back to the previous screen, otherwise, show an error message.
+						inventoryDatabase.deleteItem(mItem, new AsyncInventoryDatabase.Callback<Boolean>() {
+							@Override
+							public void onResult(Boolean deleted) {
+								if (!deleted) {
+									showDeleteError();
+								}
+								finish();
+							}
+
+							@Override
+							public void onError(Exception e) {
+								AsyncInventoryDatabase.Callback.super.onError(e);
+								finish();
+								showDeleteError();
+							}
+						});
 					}
 				}).setNegativeButton("No", null).show();
 	}
 
+	/**
+	 * Show an error message when the item couldn't be deleted
+	 */
+	private void showDeleteError() {
+		Toast.makeText(EditItemActivity.this, R.string.delete_error, Toast.LENGTH_SHORT).show();
+	}
+
 	/**
 	 * Increase the item's quantity by one.
 	 *
@@ -188,4 +283,21 @@ public class EditItemActivity extends AppCompatActivity {
 		// Quantity cannot be less than 0
 		return Math.max(quantity, 0);
 	}
+
+	/**
+	 * Helper method to get the low stock threshold from the text field.
+	 *
+	 * @return The threshold, or `null` if the field is empty and the item shouldn't alert
+	 */
+	private Integer getLowStockThreshold() {
+		String rawValue = itemLowStockThreshold.getText().toString().replaceAll("[^\\d]", "").trim();
+		if (rawValue.isEmpty()) {
+			return null;
+		}
+		try {
+			return Integer.parseInt(rawValue);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
 }
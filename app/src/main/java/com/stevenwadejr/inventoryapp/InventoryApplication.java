@@ -0,0 +1,28 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.app.Application;
+
+/**
+ * Starts work the first screens depend on as soon as the process starts, before any activity is
+ * created.
+ */
+public class InventoryApplication extends Application {
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+
+		// Restore a returning user before anything reads the inventory, so the page prefetched
+		// below is from their items
+		String username = SessionStore.getInstance(this).getUsername();
+		if (username != null) {
+			AsyncInventoryDatabase.getInstance(this).setCurrentUser(username, null);
+		}
+
+		// Open the database and read the first page of inventory while the login screen is shown
+		StartupPrefetcher.getInstance(this).prefetch();
+
+		// Watch for low stock and text the user about it, whichever screen is open
+		SmsNotificationQueue.getInstance(this);
+	}
+}
@@ -3,35 +3,166 @@ package com.stevenwadejr.inventoryapp;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.CancellationSignal;
+import android.text.TextUtils;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 public class InventoryDatabase extends SQLiteOpenHelper {
 
 	// Logcat tag
 	private static final String LOG = "InventoryDatabase";
 
-	// Database Version
-	private static final int DATABASE_VERSION = 1;
+	// Database Version - bump this whenever a migration is added below
+	private static final int DATABASE_VERSION = 13;
 
 	// Database Name
 	private static final String DATABASE_NAME = "inventoryApp.db";
 
+	// How long stock movements are kept before being folded into daily snapshots
+	public static final long STOCK_MOVEMENT_RETENTION_MS = TimeUnit.DAYS.toMillis(30);
+
+	// Pages the write-ahead log can grow to before it's copied back into the database
+	private static final int WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+	// Size the write-ahead log is trimmed back to after a checkpoint, in bytes
+	private static final long WAL_SIZE_LIMIT_BYTES = 4 * 1024 * 1024;
+
+	// Length of a day in the stock snapshots, which are by UTC day
+	private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+	// Owner of the items added while nobody is logged in
+	private static final String NO_OWNER = "";
+
 	// Singleton of the database
 	private static InventoryDatabase sInventoryDatabase;
 
+	// Latency of each database call
+	private static final LatencyHistogram METRIC_GET_ITEMS = Metrics.histogram("db.getItems");
+	private static final LatencyHistogram METRIC_GET_ITEM = Metrics.histogram("db.getItem");
+	private static final LatencyHistogram METRIC_GET_ITEMS_AFTER = Metrics.histogram("db.getItemsAfter");
+	private static final LatencyHistogram METRIC_GET_ITEM_AFTER = Metrics.histogram("db.getItemAfter");
+	private static final LatencyHistogram METRIC_COUNT_ITEMS_UP_TO = Metrics.histogram("db.countItemsUpTo");
+	private static final LatencyHistogram METRIC_GET_ITEMS_CURSOR = Metrics.histogram("db.getItemsCursor");
+	private static final LatencyHistogram METRIC_SEARCH_ITEMS = Metrics.histogram("db.searchItems");
+	private static final LatencyHistogram METRIC_GET_SUMMARY = Metrics.histogram("db.getSummary");
+	private static final LatencyHistogram METRIC_GET_ITEM_COUNT = Metrics.histogram("db.getItemCount");
+	private static final LatencyHistogram METRIC_ADD_USER = Metrics.histogram("db.addUser");
+	private static final LatencyHistogram METRIC_CHECK_USER = Metrics.histogram("db.checkUser");
+	private static final LatencyHistogram METRIC_USERNAME_EXISTS = Metrics.histogram("db.usernameExists");
+	private static final LatencyHistogram METRIC_GET_PASSWORD = Metrics.histogram("db.getPassword");
+	private static final LatencyHistogram METRIC_UPDATE_PASSWORD = Metrics.histogram("db.updatePassword");
+	private static final LatencyHistogram METRIC_ADD_ITEM = Metrics.histogram("db.addItem");
+	private static final LatencyHistogram METRIC_UPDATE_ITEM = Metrics.histogram("db.updateItem");
+	private static final LatencyHistogram METRIC_SET_QUANTITY = Metrics.histogram("db.setQuantity");
+	private static final LatencyHistogram METRIC_UPDATE_QUANTITIES = Metrics.histogram("db.updateQuantities");
+	private static final LatencyHistogram METRIC_ADJUST_QUANTITY = Metrics.histogram("db.adjustQuantity");
+	private static final LatencyHistogram METRIC_ADJUST_QUANTITIES = Metrics.histogram("db.adjustQuantities");
+	private static final LatencyHistogram METRIC_APPLY_QUANTITY_CHANGES = Metrics.histogram("db.applyQuantityChanges");
+	private static final LatencyHistogram METRIC_UPSERT_ITEMS = Metrics.histogram("db.upsertItems");
+	private static final LatencyHistogram METRIC_TAKE_LOW_STOCK_EVENTS = Metrics.histogram("db.takeLowStockEvents");
+	private static final LatencyHistogram METRIC_QUEUE_NOTIFICATIONS = Metrics.histogram("db.queueNotifications");
+	private static final LatencyHistogram METRIC_GET_QUEUED_NOTIFICATIONS = Metrics.histogram("db.getQueuedNotifications");
+	private static final LatencyHistogram METRIC_REMOVE_QUEUED_NOTIFICATIONS = Metrics.histogram("db.removeQueuedNotifications");
+	private static final LatencyHistogram METRIC_CLEAR_QUEUED_NOTIFICATIONS = Metrics.histogram("db.clearQueuedNotifications");
+	private static final LatencyHistogram METRIC_SET_CURRENT_USER = Metrics.histogram("db.setCurrentUser");
+	private static final LatencyHistogram METRIC_GET_QUANTITY_AT = Metrics.histogram("db.getQuantityAt");
+	private static final LatencyHistogram METRIC_COMPACT_STOCK_MOVEMENTS = Metrics.histogram("db.compactStockMovements");
+	private static final LatencyHistogram METRIC_DELETE_ITEM = Metrics.histogram("db.deleteItem");
+
+	// Compiled statements for the hot write paths
+	private final StatementCache mStatements = new StatementCache(this);
+
+	// Recently read and written items, so repeated lookups don't go to disk
+	private final ItemCache mItemCache = new ItemCache();
+
+	// Told about every change to the inventory table
+	private final List<ChangeListener> mChangeListeners = new CopyOnWriteArrayList<>();
+
+	// Username of the logged in user - the inventory is listed, counted and read only for them
+	private volatile String mOwner = NO_OWNER;
+
+	// Username that items are added, changed and deleted for. It only switches in setCurrentUser,
+	// which runs in order with the other writes, so a write queued just before a logout still lands
+	// on the user who made it rather than being dropped.
+	private volatile String mWriteOwner = NO_OWNER;
+
+	/**
+	 * Notified after inventory items are added, changed or deleted
+	 */
+	public interface ChangeListener {
+		/**
+		 * Called on the thread that made the change, once it has been committed
+		 *
+		 * @param changes The IDs of the items that changed
+		 */
+		void onItemsChanged(ItemChanges changes);
+	}
+
+	/**
+	 * The inventory items affected by a write
+	 */
+	public static final class ItemChanges {
+		// IDs of items that were added, changed and deleted
+		public final Set<Long> inserted;
+		public final Set<Long> updated;
+		public final Set<Long> deleted;
+
+		// `true` when the write may have touched any item, so the ID sets are empty
+		public final boolean everything;
+
+		private ItemChanges(Set<Long> inserted, Set<Long> updated, Set<Long> deleted, boolean everything) {
+			this.inserted = inserted;
+			this.updated = updated;
+			this.deleted = deleted;
+			this.everything = everything;
+		}
+
+		static ItemChanges inserted(long id) {
+			return new ItemChanges(Collections.singleton(id), Collections.<Long>emptySet(),
+					Collections.<Long>emptySet(), false);
+		}
+
+		static ItemChanges updated(Collection<Long> ids) {
+			return new ItemChanges(Collections.<Long>emptySet(),
+					Collections.unmodifiableSet(new LinkedHashSet<>(ids)), Collections.<Long>emptySet(), false);
+		}
+
+		static ItemChanges deleted(long id) {
+			return new ItemChanges(Collections.<Long>emptySet(), Collections.<Long>emptySet(),
+					Collections.singleton(id), false);
+		}
+
+		static ItemChanges everything() {
+			return new ItemChanges(Collections.<Long>emptySet(), Collections.<Long>emptySet(),
+					Collections.<Long>emptySet(), true);
+		}
+	}
+
 	/**
 	 * Factory method to get the singleton and create a new one if needed
 	 *
 	 * @param context The app's context
 	 * @return Inventory database
 	 */
-	public static InventoryDatabase getInstance(Context context) {
+	public static synchronized InventoryDatabase getInstance(Context context) {
 		Log.i(LOG, "Get instance of database");
 		if (sInventoryDatabase == null) {
 			sInventoryDatabase = new InventoryDatabase(context);
@@ -46,6 +177,36 @@ public class InventoryDatabase extends SQLiteOpenHelper {
 	 */
 	private InventoryDatabase(Context context) {
 		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+
+		// With a write-ahead log, reads run on their own connections alongside a write instead of
+		// waiting for it, and a commit appends to the log rather than rewriting the journal
+		setWriteAheadLoggingEnabled(true);
+	}
+
+	/**
+	 * Tune the write connection before the database is used. In WAL mode a commit only has to sync
+	 * at checkpoints rather than every time, and can't leave the database corrupt - at worst the
+	 * last few commits are lost if the device loses power.
+	 */
+	@Override
+	public void onConfigure(SQLiteDatabase db) {
+		super.onConfigure(db);
+		db.execSQL("PRAGMA synchronous = NORMAL");
+
+		// Checkpoint in larger batches, and don't leave a large log file behind after an import
+		DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " + WAL_AUTOCHECKPOINT_PAGES, null);
+		DatabaseUtils.longForQuery(db, "PRAGMA journal_size_limit = " + WAL_SIZE_LIMIT_BYTES, null);
+	}
+
+	/**
+	 * Close and forget the singleton so the next call to `getInstance` opens the database again
+	 */
+	@VisibleForTesting
+	static synchronized void resetInstance() {
+		if (sInventoryDatabase != null) {
+			sInventoryDatabase.close();
+			sInventoryDatabase = null;
+		}
 	}
 
 	/**
@@ -56,6 +217,239 @@ public class InventoryDatabase extends SQLiteOpenHelper {
 		private static final String COL_ID = "_id";
 		private static final String COL_NAME = "name";
 		private static final String COL_QUANTITY = "quantity";
+		private static final String COL_LOW_STOCK_THRESHOLD = "low_stock_threshold";
+		private static final String COL_OWNER = "owner";
+		private static final String IDX_NAME = "idx_inventory_name";
+		private static final String IDX_QUANTITY = "idx_inventory_quantity";
+		private static final String IDX_OWNER = "idx_inventory_owner";
+		private static final String IDX_OWNER_NAME = "idx_inventory_owner_name";
+		private static final String IDX_OWNER_QUANTITY = "idx_inventory_owner_quantity";
+
+		// Names compared the way the name index sorts them
+		private static final String NAME_NOCASE = COL_NAME + " COLLATE NOCASE";
+
+		// Columns read into an Item, in the order readItem expects them
+		private static final String ITEM_COLUMNS = COL_ID + ", " + COL_NAME + ", " + COL_QUANTITY + ", " +
+				COL_LOW_STOCK_THRESHOLD;
+
+		// Finds an item by ID, but only if it belongs to the given owner
+		private static final String WHERE_ID_AND_OWNER = " WHERE " + COL_ID + " = ? AND " + COL_OWNER + " = ?";
+
+		// Statements compiled once and reused by the write paths
+		private static final String SQL_INSERT = "INSERT INTO " + TABLE + " (" + COL_NAME + ", " +
+				COL_QUANTITY + ", " + COL_LOW_STOCK_THRESHOLD + ", " + COL_OWNER + ") VALUES (?, ?, ?, ?)";
+		private static final String SQL_UPDATE = "UPDATE " + TABLE + " SET " + COL_NAME + " = ?, " +
+				COL_QUANTITY + " = ?, " + COL_LOW_STOCK_THRESHOLD + " = ?" + WHERE_ID_AND_OWNER;
+		private static final String SQL_SET_QUANTITY = "UPDATE " + TABLE + " SET " + COL_QUANTITY +
+				" = ?" + WHERE_ID_AND_OWNER;
+		private static final String SQL_DELETE = "DELETE FROM " + TABLE + WHERE_ID_AND_OWNER;
+
+		// Applies a delta in SQL, clamping at zero the same way Item.setQuantity does
+		private static final String SQL_ADJUST_QUANTITY = "UPDATE " + TABLE + " SET " + COL_QUANTITY +
+				" = MAX(0, IFNULL(" + COL_QUANTITY + ", 0) + ?)" + WHERE_ID_AND_OWNER;
+		private static final String SQL_GET_QUANTITY = "SELECT " + COL_QUANTITY + " FROM " + TABLE +
+				WHERE_ID_AND_OWNER;
+		private static final String SQL_GET_ITEM = "SELECT " + ITEM_COLUMNS + " FROM " + TABLE +
+				WHERE_ID_AND_OWNER;
+
+		// Matches one owner's names case-insensitively so it can use the owner and name index
+		private static final String SQL_SET_QUANTITY_BY_NAME = "UPDATE " + TABLE + " SET " +
+				COL_QUANTITY + " = ? WHERE " + COL_OWNER + " = ? AND " + COL_NAME + " = ? COLLATE NOCASE";
+	}
+
+	/**
+	 * Class representation of the full-text index over item names. Each owner's names are indexed
+	 * under their own language ID, which FTS keeps as a separate index, so a search only ever reads
+	 * that owner's terms. Triggers on the inventory table keep it in sync.
+	 */
+	private static final class InventorySearchTable {
+		private static final String TABLE = "inventory_fts";
+		private static final String COL_DOCID = "docid";
+		private static final String COL_NAME = InventoryTable.COL_NAME;
+		private static final String COL_OWNER_ID = "owner_id";
+		private static final String TRIGGER_AFTER_INSERT = "inventory_fts_after_insert";
+		private static final String TRIGGER_BEFORE_UPDATE = "inventory_fts_before_update";
+		private static final String TRIGGER_AFTER_UPDATE = "inventory_fts_after_update";
+		private static final String TRIGGER_BEFORE_DELETE = "inventory_fts_before_delete";
+		private static final String TRIGGER_AFTER_DELETE = "inventory_fts_after_delete";
+
+		// Maximum number of matches returned for a search
+		private static final int MAX_RESULTS = 200;
+
+		/**
+		 * Build the SQL for the language ID an owner's names are indexed under - their user ID, or 0
+		 * for an owner without an account
+		 *
+		 * @param owner The SQL for the owner's username
+		 */
+		private static String ownerId(String owner) {
+			return "IFNULL((SELECT " + UsersTable.COL_ID + " FROM " + UsersTable.TABLE + " WHERE " +
+					UsersTable.COL_USERNAME + " = " + owner + "), 0)";
+		}
+	}
+
+	/**
+	 * Class representation of the low stock events table. A trigger adds a row whenever an item's
+	 * quantity drops to or below its threshold, so only the rows that actually changed are ever
+	 * checked. Each row keeps the item's owner, and is removed once it's been handed to the low
+	 * stock monitor while that owner is logged in.
+	 */
+	private static final class LowStockEventsTable {
+		private static final String TABLE = "low_stock_events";
+		private static final String COL_ID = "_id";
+		private static final String COL_ITEM_ID = "item_id";
+		private static final String COL_NAME = "name";
+		private static final String COL_QUANTITY = "quantity";
+		private static final String COL_THRESHOLD = "threshold";
+		private static final String COL_CREATED_AT = "created_at";
+		private static final String COL_OWNER = "owner";
+		private static final String IDX_OWNER = "low_stock_events_owner";
+		private static final String TRIGGER_CROSSING = "inventory_low_stock_crossing";
+
+		// Maximum number of events handed out at once
+		private static final int MAX_EVENTS = 500;
+	}
+
+	/**
+	 * Class representation of the outbound notification queue. Low stock alerts wait here until
+	 * they're sent as a text message, so they survive the app being closed. An item has at most one
+	 * queued alert - a newer one replaces it. Alerts are only sent while their owner is logged in,
+	 * so a digest never names another user's items.
+	 */
+	private static final class NotificationQueueTable {
+		private static final String TABLE = "notification_queue";
+		private static final String COL_ID = "_id";
+		private static final String COL_ITEM_ID = "item_id";
+		private static final String COL_NAME = "name";
+		private static final String COL_QUANTITY = "quantity";
+		private static final String COL_THRESHOLD = "threshold";
+		private static final String COL_CREATED_AT = "created_at";
+		private static final String COL_OWNER = "owner";
+		private static final String IDX_OWNER = "notification_queue_owner";
+
+		private static final String SQL_QUEUE = "INSERT OR REPLACE INTO " + TABLE + " (" + COL_ITEM_ID +
+				", " + COL_NAME + ", " + COL_QUANTITY + ", " + COL_THRESHOLD + ", " + COL_CREATED_AT + ", " +
+				COL_OWNER + ") VALUES (?, ?, ?, ?, ?, ?)";
+	}
+
+	/**
+	 * Class representation of the inventory summary table. It has a row of running totals for each
+	 * owner that triggers on the inventory table adjust by each inserted, updated or deleted row, so
+	 * the totals can be read without looking at the inventory.
+	 */
+	private static final class InventorySummaryTable {
+		private static final String TABLE = "inventory_summary";
+		private static final String COL_ID = "_id";
+		private static final String COL_OWNER = "owner";
+		private static final String COL_ITEM_COUNT = "item_count";
+		private static final String COL_TOTAL_QUANTITY = "total_quantity";
+		private static final String COL_OUT_OF_STOCK_COUNT = "out_of_stock_count";
+		private static final String COL_LOW_STOCK_COUNT = "low_stock_count";
+		private static final String TRIGGER_AFTER_INSERT = "inventory_summary_after_insert";
+		private static final String TRIGGER_AFTER_UPDATE = "inventory_summary_after_update";
+		private static final String TRIGGER_AFTER_DELETE = "inventory_summary_after_delete";
+
+		// ID of the only row, before totals were kept per owner
+		private static final long ROW_ID = 1;
+
+		/**
+		 * Build the SQL that adds one inventory row's share to its owner's totals, starting the
+		 * owner's totals at zero when it's their first item
+		 *
+		 * @param row `new` or `old`, the row the trigger is looking at
+		 */
+		private static String addRow(String row) {
+			String owner = row + "." + InventoryTable.COL_OWNER;
+			return "INSERT OR IGNORE INTO " + TABLE + " (" + COL_OWNER + ", " + COL_ITEM_COUNT + ", " +
+					COL_TOTAL_QUANTITY + ", " + COL_OUT_OF_STOCK_COUNT + ", " + COL_LOW_STOCK_COUNT +
+					") VALUES (" + owner + ", 0, 0, 0, 0); UPDATE " + TABLE + " SET " + adjustTotals("+", row) +
+					" WHERE " + COL_OWNER + " = " + owner + "; ";
+		}
+
+		/**
+		 * Build the SQL that takes one inventory row's share away from its owner's totals
+		 *
+		 * @param row `new` or `old`, the row the trigger is looking at
+		 */
+		private static String removeRow(String row) {
+			return "UPDATE " + TABLE + " SET " + adjustTotals("-", row) + " WHERE " + COL_OWNER + " = " + row +
+					"." + InventoryTable.COL_OWNER + "; ";
+		}
+
+		/**
+		 * Build the SQL that adds or subtracts one inventory row's share of each total
+		 *
+		 * @param sign `+` to add the row, `-` to take it away
+		 * @param row  `new` or `old`, the row the trigger is looking at
+		 */
+		private static String adjustTotals(String sign, String row) {
+			String quantity = "IFNULL(" + row + "." + InventoryTable.COL_QUANTITY + ", 0)";
+			String threshold = row + "." + InventoryTable.COL_LOW_STOCK_THRESHOLD;
+			return COL_ITEM_COUNT + " = " + COL_ITEM_COUNT + " " + sign + " 1, " +
+					COL_TOTAL_QUANTITY + " = " + COL_TOTAL_QUANTITY + " " + sign + " " + quantity + ", " +
+					COL_OUT_OF_STOCK_COUNT + " = " + COL_OUT_OF_STOCK_COUNT + " " + sign + " (" + quantity +
+					" <= 0), " + COL_LOW_STOCK_COUNT + " = " + COL_LOW_STOCK_COUNT + " " + sign + " (" +
+					threshold + " IS NOT NULL AND " + quantity + " <= " + threshold + ")";
+		}
+	}
+
+	/**
+	 * Class representation of the stock movements ledger. Triggers on the inventory table add a row
+	 * for every change in an item's quantity, so no write path can skip it. Rows are never changed,
+	 * only folded into daily snapshots once they're old enough.
+	 */
+	private static final class StockMovementsTable {
+		private static final String TABLE = "stock_movements";
+		private static final String COL_ID = "_id";
+		private static final String COL_ITEM_ID = "item_id";
+		private static final String COL_DELTA = "delta";
+		private static final String COL_USERNAME = "username";
+		private static final String COL_CREATED_AT = "created_at";
+		private static final String IDX_ITEM_CREATED_AT = "idx_stock_movements_item_created_at";
+		private static final String IDX_CREATED_AT = "idx_stock_movements_created_at";
+		private static final String TRIGGER_AFTER_INSERT = "stock_movements_after_insert";
+		private static final String TRIGGER_AFTER_UPDATE = "stock_movements_after_update";
+		private static final String TRIGGER_AFTER_DELETE = "stock_movements_after_delete";
+
+		// The current time in milliseconds, as SQL
+		private static final String NOW_MS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+		/**
+		 * Build the SQL that records a movement, attributed to whoever is logged in
+		 *
+		 * @param itemId The SQL for the item's ID
+		 * @param delta  The SQL for the change in quantity
+		 */
+		private static String insertMovement(String itemId, String delta) {
+			return "INSERT INTO " + TABLE + " (" + COL_ITEM_ID + ", " + COL_DELTA + ", " + COL_USERNAME + ", " +
+					COL_CREATED_AT + ") VALUES (" + itemId + ", " + delta + ", (SELECT " +
+					LedgerUserTable.COL_USERNAME + " FROM " + LedgerUserTable.TABLE + " WHERE " +
+					LedgerUserTable.COL_ID + " = " + LedgerUserTable.ROW_ID + "), " + NOW_MS + "); ";
+		}
+	}
+
+	/**
+	 * Class representation of the daily stock snapshots. Each row is an item's quantity at the end
+	 * of a day, made by folding up that day's movements once they're older than the retention.
+	 */
+	private static final class StockSnapshotsTable {
+		private static final String TABLE = "stock_snapshots";
+		private static final String COL_ITEM_ID = "item_id";
+		private static final String COL_DAY = "day";
+		private static final String COL_QUANTITY = "quantity";
+	}
+
+	/**
+	 * Class representation of the logged in user, a single row the stock movement triggers read so
+	 * each movement says who made it
+	 */
+	private static final class LedgerUserTable {
+		private static final String TABLE = "ledger_user";
+		private static final String COL_ID = "_id";
+		private static final String COL_USERNAME = "username";
+
+		// ID of the only row
+		private static final long ROW_ID = 1;
 	}
 
 	/**
@@ -66,8 +460,348 @@ public class InventoryDatabase extends SQLiteOpenHelper {
 		private static final String COL_ID = "_id";
 		private static final String COL_USERNAME = "username";
 		private static final String COL_PASSWORD = "password";
+		private static final String COL_SALT = "salt";
+		private static final String COL_ITERATIONS = "iterations";
+		private static final String IDX_USERNAME = "idx_users_username";
+
+		// Everything needed to check a password, found through the unique username index
+		private static final String SQL_GET_PASSWORD = "SELECT " + COL_PASSWORD + ", " + COL_SALT + ", " +
+				COL_ITERATIONS + " FROM " + TABLE + " WHERE " + COL_USERNAME + " = ? LIMIT 1";
 	}
 
+	/**
+	 * Every schema change since version 1, in order. Never edit a migration once it has shipped -
+	 * add a new one and bump `DATABASE_VERSION` instead.
+	 */
+	private static final Migration[] MIGRATIONS = {
+			// Usernames must be unique, and logging in looks users up by name
+			new Migration(2) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					// Keep the oldest account if the same username was ever registered twice
+					db.execSQL("DELETE FROM " + UsersTable.TABLE + " WHERE " + UsersTable.COL_ID +
+							" NOT IN (SELECT MIN(" + UsersTable.COL_ID + ") FROM " + UsersTable.TABLE +
+							" GROUP BY " + UsersTable.COL_USERNAME + ")");
+					db.execSQL("CREATE UNIQUE INDEX " + UsersTable.IDX_USERNAME + " ON " +
+							UsersTable.TABLE + " (" + UsersTable.COL_USERNAME + ")");
+				}
+			},
+			// Look items up and list them by name, case-insensitively. Including the quantity makes
+			// this a covering index for the list's columns, so those queries never touch the table.
+			new Migration(3) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("CREATE INDEX " + InventoryTable.IDX_NAME + " ON " + InventoryTable.TABLE +
+							" (" + InventoryTable.COL_NAME + " COLLATE NOCASE, " +
+							InventoryTable.COL_QUANTITY + ")");
+				}
+			},
+			// Search item names as the user types. The index also stores one and two character
+			// prefixes so the first keystrokes don't have to scan every term.
+			new Migration(4) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("CREATE VIRTUAL TABLE " + InventorySearchTable.TABLE + " USING fts4(content=\"" +
+							InventoryTable.TABLE + "\", " + InventorySearchTable.COL_NAME + ", prefix=\"1,2\")");
+
+					// Old index entries have to be removed before the row changes, since they're
+					// found by reading the row's current name
+					String deleteOld = "DELETE FROM " + InventorySearchTable.TABLE + " WHERE " +
+							InventorySearchTable.COL_DOCID + " = old." + InventoryTable.COL_ID + "; ";
+					String insertNew = "INSERT INTO " + InventorySearchTable.TABLE + " (" +
+							InventorySearchTable.COL_DOCID + ", " + InventorySearchTable.COL_NAME +
+							") VALUES (new." + InventoryTable.COL_ID + ", new." + InventoryTable.COL_NAME + "); ";
+					db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_AFTER_INSERT + " AFTER INSERT ON " +
+							InventoryTable.TABLE + " BEGIN " + insertNew + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_BEFORE_UPDATE + " BEFORE UPDATE OF " +
+							InventoryTable.COL_NAME + " ON " + InventoryTable.TABLE + " BEGIN " + deleteOld + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_AFTER_UPDATE + " AFTER UPDATE OF " +
+							InventoryTable.COL_NAME + " ON " + InventoryTable.TABLE + " BEGIN " + insertNew + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_BEFORE_DELETE + " BEFORE DELETE ON " +
+							InventoryTable.TABLE + " BEGIN " + deleteOld + "END");
+
+					// Index the items that already exist
+					db.execSQL("INSERT INTO " + InventorySearchTable.TABLE + " (" + InventorySearchTable.TABLE +
+							") VALUES ('rebuild')");
+				}
+			},
+			// Per-item low stock thresholds, and a queue of the moments items crossed them
+			new Migration(5) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("ALTER TABLE " + InventoryTable.TABLE + " ADD COLUMN " +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + " INTEGER");
+					db.execSQL("CREATE TABLE " + LowStockEventsTable.TABLE + " (" +
+							LowStockEventsTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+							LowStockEventsTable.COL_ITEM_ID + " INTEGER NOT NULL, " +
+							LowStockEventsTable.COL_NAME + " TEXT, " +
+							LowStockEventsTable.COL_QUANTITY + " INTEGER NOT NULL, " +
+							LowStockEventsTable.COL_THRESHOLD + " INTEGER NOT NULL, " +
+							LowStockEventsTable.COL_CREATED_AT + " INTEGER NOT NULL)");
+
+					// Only a drop from above the threshold to at or below it counts, so an item that
+					// keeps changing while it's already low doesn't alert again
+					db.execSQL("CREATE TRIGGER " + LowStockEventsTable.TRIGGER_CROSSING + " AFTER UPDATE OF " +
+							InventoryTable.COL_QUANTITY + " ON " + InventoryTable.TABLE + " WHEN new." +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + " IS NOT NULL AND IFNULL(old." +
+							InventoryTable.COL_QUANTITY + ", 0) > new." + InventoryTable.COL_LOW_STOCK_THRESHOLD +
+							" AND IFNULL(new." + InventoryTable.COL_QUANTITY + ", 0) <= new." +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + " BEGIN INSERT INTO " + LowStockEventsTable.TABLE +
+							" (" + LowStockEventsTable.COL_ITEM_ID + ", " + LowStockEventsTable.COL_NAME + ", " +
+							LowStockEventsTable.COL_QUANTITY + ", " + LowStockEventsTable.COL_THRESHOLD + ", " +
+							LowStockEventsTable.COL_CREATED_AT + ") VALUES (new." + InventoryTable.COL_ID + ", new." +
+							InventoryTable.COL_NAME + ", IFNULL(new." + InventoryTable.COL_QUANTITY + ", 0), new." +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + ", CAST(strftime('%s', 'now') AS INTEGER) * 1000); END");
+				}
+			},
+			// Low stock alerts waiting to be sent as text messages
+			new Migration(6) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("CREATE TABLE " + NotificationQueueTable.TABLE + " (" +
+							NotificationQueueTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+							NotificationQueueTable.COL_ITEM_ID + " INTEGER NOT NULL UNIQUE, " +
+							NotificationQueueTable.COL_NAME + " TEXT, " +
+							NotificationQueueTable.COL_QUANTITY + " INTEGER NOT NULL, " +
+							NotificationQueueTable.COL_THRESHOLD + " INTEGER NOT NULL, " +
+							NotificationQueueTable.COL_CREATED_AT + " INTEGER NOT NULL)");
+				}
+			},
+			// Running totals for the inventory list header
+			new Migration(7) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("CREATE TABLE " + InventorySummaryTable.TABLE + " (" +
+							InventorySummaryTable.COL_ID + " INTEGER PRIMARY KEY, " +
+							InventorySummaryTable.COL_ITEM_COUNT + " INTEGER NOT NULL, " +
+							InventorySummaryTable.COL_TOTAL_QUANTITY + " INTEGER NOT NULL, " +
+							InventorySummaryTable.COL_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL, " +
+							InventorySummaryTable.COL_LOW_STOCK_COUNT + " INTEGER NOT NULL)");
+
+					// Total up the items that already exist once, the triggers take it from here
+					String quantity = "IFNULL(" + InventoryTable.COL_QUANTITY + ", 0)";
+					db.execSQL("INSERT INTO " + InventorySummaryTable.TABLE + " SELECT " +
+							InventorySummaryTable.ROW_ID + ", COUNT(*), IFNULL(SUM(" + quantity + "), 0), " +
+							"IFNULL(SUM(" + quantity + " <= 0), 0), IFNULL(SUM(" +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + " IS NOT NULL AND " + quantity + " <= " +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + "), 0) FROM " + InventoryTable.TABLE);
+
+					String updateSummary = "UPDATE " + InventorySummaryTable.TABLE + " SET ";
+					String whereSummaryRow = " WHERE " + InventorySummaryTable.COL_ID + " = " +
+							InventorySummaryTable.ROW_ID + "; ";
+					db.execSQL("CREATE TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_INSERT + " AFTER INSERT ON " +
+							InventoryTable.TABLE + " BEGIN " + updateSummary +
+							InventorySummaryTable.adjustTotals("+", "new") + whereSummaryRow + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_UPDATE + " AFTER UPDATE OF " +
+							InventoryTable.COL_QUANTITY + ", " + InventoryTable.COL_LOW_STOCK_THRESHOLD + " ON " +
+							InventoryTable.TABLE + " BEGIN " + updateSummary +
+							InventorySummaryTable.adjustTotals("-", "old") + whereSummaryRow + updateSummary +
+							InventorySummaryTable.adjustTotals("+", "new") + whereSummaryRow + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_DELETE + " AFTER DELETE ON " +
+							InventoryTable.TABLE + " BEGIN " + updateSummary +
+							InventorySummaryTable.adjustTotals("-", "old") + whereSummaryRow + "END");
+				}
+			},
+			// A ledger of every change in quantity, with daily snapshots for the older history
+			new Migration(8) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("CREATE TABLE " + LedgerUserTable.TABLE + " (" +
+							LedgerUserTable.COL_ID + " INTEGER PRIMARY KEY, " +
+							LedgerUserTable.COL_USERNAME + " TEXT)");
+					db.execSQL("CREATE TABLE " + StockMovementsTable.TABLE + " (" +
+							StockMovementsTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+							StockMovementsTable.COL_ITEM_ID + " INTEGER NOT NULL, " +
+							StockMovementsTable.COL_DELTA + " INTEGER NOT NULL, " +
+							StockMovementsTable.COL_USERNAME + " TEXT, " +
+							StockMovementsTable.COL_CREATED_AT + " INTEGER NOT NULL)");
+					db.execSQL("CREATE INDEX " + StockMovementsTable.IDX_ITEM_CREATED_AT + " ON " +
+							StockMovementsTable.TABLE + " (" + StockMovementsTable.COL_ITEM_ID + ", " +
+							StockMovementsTable.COL_CREATED_AT + ")");
+					db.execSQL("CREATE INDEX " + StockMovementsTable.IDX_CREATED_AT + " ON " +
+							StockMovementsTable.TABLE + " (" + StockMovementsTable.COL_CREATED_AT + ")");
+					db.execSQL("CREATE TABLE " + StockSnapshotsTable.TABLE + " (" +
+							StockSnapshotsTable.COL_ITEM_ID + " INTEGER NOT NULL, " +
+							StockSnapshotsTable.COL_DAY + " INTEGER NOT NULL, " +
+							StockSnapshotsTable.COL_QUANTITY + " INTEGER NOT NULL, " +
+							"PRIMARY KEY (" + StockSnapshotsTable.COL_ITEM_ID + ", " + StockSnapshotsTable.COL_DAY +
+							")) WITHOUT ROWID");
+
+					// Existing items start the ledger with their current quantity
+					db.execSQL("INSERT INTO " + StockMovementsTable.TABLE + " (" + StockMovementsTable.COL_ITEM_ID +
+							", " + StockMovementsTable.COL_DELTA + ", " + StockMovementsTable.COL_CREATED_AT +
+							") SELECT " + InventoryTable.COL_ID + ", " + InventoryTable.COL_QUANTITY + ", " +
+							StockMovementsTable.NOW_MS + " FROM " + InventoryTable.TABLE + " WHERE IFNULL(" +
+							InventoryTable.COL_QUANTITY + ", 0) != 0");
+
+					String newQuantity = "IFNULL(new." + InventoryTable.COL_QUANTITY + ", 0)";
+					String oldQuantity = "IFNULL(old." + InventoryTable.COL_QUANTITY + ", 0)";
+					db.execSQL("CREATE TRIGGER " + StockMovementsTable.TRIGGER_AFTER_INSERT + " AFTER INSERT ON " +
+							InventoryTable.TABLE + " WHEN " + newQuantity + " != 0 BEGIN " +
+							StockMovementsTable.insertMovement("new." + InventoryTable.COL_ID, newQuantity) + "END");
+					db.execSQL("CREATE TRIGGER " + StockMovementsTable.TRIGGER_AFTER_UPDATE + " AFTER UPDATE OF " +
+							InventoryTable.COL_QUANTITY + " ON " + InventoryTable.TABLE + " WHEN " + newQuantity +
+							" != " + oldQuantity + " BEGIN " + StockMovementsTable.insertMovement("new." +
+							InventoryTable.COL_ID, newQuantity + " - " + oldQuantity) + "END");
+					db.execSQL("CREATE TRIGGER " + StockMovementsTable.TRIGGER_AFTER_DELETE + " AFTER DELETE ON " +
+							InventoryTable.TABLE + " WHEN " + oldQuantity + " != 0 BEGIN " +
+							StockMovementsTable.insertMovement("old." + InventoryTable.COL_ID, "-" + oldQuantity) + "END");
+				}
+			},
+			// Salted password hashes with their cost. Existing rows keep their MD5 hash, marked with
+			// 0 iterations, until that user next logs in and is rehashed.
+			new Migration(9) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("ALTER TABLE " + UsersTable.TABLE + " ADD COLUMN " + UsersTable.COL_SALT + " TEXT");
+					db.execSQL("ALTER TABLE " + UsersTable.TABLE + " ADD COLUMN " + UsersTable.COL_ITERATIONS +
+							" INTEGER NOT NULL DEFAULT " + PasswordHasher.LEGACY_MD5_ITERATIONS);
+				}
+			},
+			// Sort and filter the list by quantity. Sorting by name uses the name index from version 3,
+			// which already orders ties by quantity and then ID. Rows from version 1 could have a
+			// missing name or quantity, which would drop out of the sorted pages, so fill them in.
+			new Migration(10) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("UPDATE " + InventoryTable.TABLE + " SET " + InventoryTable.COL_NAME + " = '' WHERE " +
+							InventoryTable.COL_NAME + " IS NULL");
+					db.execSQL("UPDATE " + InventoryTable.TABLE + " SET " + InventoryTable.COL_QUANTITY + " = 0 WHERE " +
+							InventoryTable.COL_QUANTITY + " IS NULL");
+					db.execSQL("CREATE INDEX " + InventoryTable.IDX_QUANTITY + " ON " + InventoryTable.TABLE +
+							" (" + InventoryTable.COL_QUANTITY + ")");
+				}
+			},
+			// Each user has their own inventory. The item indexes lead with the owner, so a user's
+			// queries seek straight to their own rows no matter how many items other users have - the
+			// owner index on its own keeps their rows in ID order. The running totals are kept per owner.
+			//
+			// Before this, every account shared one inventory, so existing items have no owner to
+			// recover. They're deliberately given to the first account registered - the one that set
+			// the app up and most likely added them - so they don't disappear for everyone. Other
+			// accounts start with an empty inventory. A database with no accounts leaves them without
+			// an owner until the first user registers and is given them.
+			new Migration(11) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("ALTER TABLE " + InventoryTable.TABLE + " ADD COLUMN " + InventoryTable.COL_OWNER +
+							" TEXT NOT NULL DEFAULT ''");
+					db.execSQL("UPDATE " + InventoryTable.TABLE + " SET " + InventoryTable.COL_OWNER +
+							" = IFNULL((SELECT " + UsersTable.COL_USERNAME + " FROM " + UsersTable.TABLE + " ORDER BY " +
+							UsersTable.COL_ID + " LIMIT 1), '')");
+
+					db.execSQL("DROP INDEX " + InventoryTable.IDX_NAME);
+					db.execSQL("DROP INDEX " + InventoryTable.IDX_QUANTITY);
+					db.execSQL("CREATE INDEX " + InventoryTable.IDX_OWNER + " ON " + InventoryTable.TABLE + " (" +
+							InventoryTable.COL_OWNER + ")");
+					db.execSQL("CREATE INDEX " + InventoryTable.IDX_OWNER_NAME + " ON " + InventoryTable.TABLE + " (" +
+							InventoryTable.COL_OWNER + ", " + InventoryTable.COL_NAME + " COLLATE NOCASE, " +
+							InventoryTable.COL_QUANTITY + ")");
+					db.execSQL("CREATE INDEX " + InventoryTable.IDX_OWNER_QUANTITY + " ON " + InventoryTable.TABLE +
+							" (" + InventoryTable.COL_OWNER + ", " + InventoryTable.COL_QUANTITY + ")");
+
+					db.execSQL("DROP TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_INSERT);
+					db.execSQL("DROP TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_UPDATE);
+					db.execSQL("DROP TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_DELETE);
+					db.execSQL("DROP TABLE " + InventorySummaryTable.TABLE);
+					db.execSQL("CREATE TABLE " + InventorySummaryTable.TABLE + " (" +
+							InventorySummaryTable.COL_OWNER + " TEXT PRIMARY KEY, " +
+							InventorySummaryTable.COL_ITEM_COUNT + " INTEGER NOT NULL, " +
+							InventorySummaryTable.COL_TOTAL_QUANTITY + " INTEGER NOT NULL, " +
+							InventorySummaryTable.COL_OUT_OF_STOCK_COUNT + " INTEGER NOT NULL, " +
+							InventorySummaryTable.COL_LOW_STOCK_COUNT + " INTEGER NOT NULL)");
+
+					String quantity = "IFNULL(" + InventoryTable.COL_QUANTITY + ", 0)";
+					db.execSQL("INSERT INTO " + InventorySummaryTable.TABLE + " SELECT " + InventoryTable.COL_OWNER +
+							", COUNT(*), SUM(" + quantity + "), SUM(" + quantity + " <= 0), SUM(" +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + " IS NOT NULL AND " + quantity + " <= " +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + ") FROM " + InventoryTable.TABLE + " GROUP BY " +
+							InventoryTable.COL_OWNER);
+
+					db.execSQL("CREATE TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_INSERT + " AFTER INSERT ON " +
+							InventoryTable.TABLE + " BEGIN " + InventorySummaryTable.addRow("new") + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_UPDATE + " AFTER UPDATE OF " +
+							InventoryTable.COL_QUANTITY + ", " + InventoryTable.COL_LOW_STOCK_THRESHOLD + ", " +
+							InventoryTable.COL_OWNER + " ON " + InventoryTable.TABLE + " BEGIN " +
+							InventorySummaryTable.removeRow("old") + InventorySummaryTable.addRow("new") + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySummaryTable.TRIGGER_AFTER_DELETE + " AFTER DELETE ON " +
+							InventoryTable.TABLE + " BEGIN " + InventorySummaryTable.removeRow("old") + "END");
+				}
+			},
+			// Search each owner's names on their own. An external content table reads the language ID
+			// back from the inventory table on delete, and the inventory only has the owner's name,
+			// so the index now keeps its own copy of the names instead.
+			new Migration(12) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("DROP TRIGGER " + InventorySearchTable.TRIGGER_AFTER_INSERT);
+					db.execSQL("DROP TRIGGER " + InventorySearchTable.TRIGGER_BEFORE_UPDATE);
+					db.execSQL("DROP TRIGGER " + InventorySearchTable.TRIGGER_AFTER_UPDATE);
+					db.execSQL("DROP TRIGGER " + InventorySearchTable.TRIGGER_BEFORE_DELETE);
+					db.execSQL("DROP TABLE " + InventorySearchTable.TABLE);
+					db.execSQL("CREATE VIRTUAL TABLE " + InventorySearchTable.TABLE + " USING fts4(" +
+							InventorySearchTable.COL_NAME + ", languageid=\"" + InventorySearchTable.COL_OWNER_ID +
+							"\", prefix=\"1,2\")");
+
+					String deleteOld = "DELETE FROM " + InventorySearchTable.TABLE + " WHERE " +
+							InventorySearchTable.COL_DOCID + " = old." + InventoryTable.COL_ID + "; ";
+					String insertNew = "INSERT INTO " + InventorySearchTable.TABLE + " (" +
+							InventorySearchTable.COL_DOCID + ", " + InventorySearchTable.COL_NAME + ", " +
+							InventorySearchTable.COL_OWNER_ID + ") VALUES (new." + InventoryTable.COL_ID + ", new." +
+							InventoryTable.COL_NAME + ", " + InventorySearchTable.ownerId("new." + InventoryTable.COL_OWNER) +
+							"); ";
+					db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_AFTER_INSERT + " AFTER INSERT ON " +
+							InventoryTable.TABLE + " BEGIN " + insertNew + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_AFTER_UPDATE + " AFTER UPDATE OF " +
+							InventoryTable.COL_NAME + ", " + InventoryTable.COL_OWNER + " ON " + InventoryTable.TABLE +
+							" BEGIN " + deleteOld + insertNew + "END");
+					db.execSQL("CREATE TRIGGER " + InventorySearchTable.TRIGGER_AFTER_DELETE + " AFTER DELETE ON " +
+							InventoryTable.TABLE + " BEGIN " + deleteOld + "END");
+
+					db.execSQL("INSERT INTO " + InventorySearchTable.TABLE + " (" + InventorySearchTable.COL_DOCID +
+							", " + InventorySearchTable.COL_NAME + ", " + InventorySearchTable.COL_OWNER_ID + ") SELECT " +
+							InventoryTable.COL_ID + ", " + InventoryTable.COL_NAME + ", " +
+							InventorySearchTable.ownerId(InventoryTable.COL_OWNER) + " FROM " + InventoryTable.TABLE);
+				}
+			},
+			// Low stock alerts belong to the owner of the item that ran low. Events and queued alerts
+			// already recorded are given to whoever owns the item now, or nobody if it's been deleted.
+			new Migration(13) {
+				@Override
+				public void migrate(SQLiteDatabase db) {
+					db.execSQL("ALTER TABLE " + LowStockEventsTable.TABLE + " ADD COLUMN " +
+							LowStockEventsTable.COL_OWNER + " TEXT NOT NULL DEFAULT ''");
+					db.execSQL("UPDATE " + LowStockEventsTable.TABLE + " SET " + LowStockEventsTable.COL_OWNER +
+							" = IFNULL((SELECT " + InventoryTable.COL_OWNER + " FROM " + InventoryTable.TABLE +
+							" WHERE " + InventoryTable.COL_ID + " = " + LowStockEventsTable.COL_ITEM_ID + "), '')");
+					db.execSQL("CREATE INDEX " + LowStockEventsTable.IDX_OWNER + " ON " + LowStockEventsTable.TABLE +
+							" (" + LowStockEventsTable.COL_OWNER + ")");
+
+					db.execSQL("ALTER TABLE " + NotificationQueueTable.TABLE + " ADD COLUMN " +
+							NotificationQueueTable.COL_OWNER + " TEXT NOT NULL DEFAULT ''");
+					db.execSQL("UPDATE " + NotificationQueueTable.TABLE + " SET " + NotificationQueueTable.COL_OWNER +
+							" = IFNULL((SELECT " + InventoryTable.COL_OWNER + " FROM " + InventoryTable.TABLE +
+							" WHERE " + InventoryTable.COL_ID + " = " + NotificationQueueTable.COL_ITEM_ID + "), '')");
+					db.execSQL("CREATE INDEX " + NotificationQueueTable.IDX_OWNER + " ON " +
+							NotificationQueueTable.TABLE + " (" + NotificationQueueTable.COL_OWNER + ")");
+
+					db.execSQL("DROP TRIGGER " + LowStockEventsTable.TRIGGER_CROSSING);
+					db.execSQL("CREATE TRIGGER " + LowStockEventsTable.TRIGGER_CROSSING + " AFTER UPDATE OF " +
+							InventoryTable.COL_QUANTITY + " ON " + InventoryTable.TABLE + " WHEN new." +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + " IS NOT NULL AND IFNULL(old." +
+							InventoryTable.COL_QUANTITY + ", 0) > new." + InventoryTable.COL_LOW_STOCK_THRESHOLD +
+							" AND IFNULL(new." + InventoryTable.COL_QUANTITY + ", 0) <= new." +
+							InventoryTable.COL_LOW_STOCK_THRESHOLD + " BEGIN INSERT INTO " + LowStockEventsTable.TABLE +
+							" (" + LowStockEventsTable.COL_ITEM_ID + ", " + LowStockEventsTable.COL_NAME + ", " +
+							LowStockEventsTable.COL_QUANTITY + ", " + LowStockEventsTable.COL_THRESHOLD + ", " +
+							LowStockEventsTable.COL_CREATED_AT + ", " + LowStockEventsTable.COL_OWNER + ") VALUES (new." +
+							InventoryTable.COL_ID + ", new." + InventoryTable.COL_NAME + ", IFNULL(new." +
+							InventoryTable.COL_QUANTITY + ", 0), new." + InventoryTable.COL_LOW_STOCK_THRESHOLD +
+							", CAST(strftime('%s', 'now') AS INTEGER) * 1000, new." + InventoryTable.COL_OWNER + "); END");
+				}
+			},
+	};
+
 	@Override
 	public void onCreate(SQLiteDatabase db) {
 		Log.i(LOG, "Create database");
@@ -79,157 +813,1604 @@ public class InventoryDatabase extends SQLiteOpenHelper {
 				UsersTable.COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
 				UsersTable.COL_USERNAME + " TEXT, " +
 				UsersTable.COL_PASSWORD + " TEXT)");
+
+		// Build the rest of the schema the same way an upgraded database gets it
+		onUpgrade(db, 1, DATABASE_VERSION);
 	}
 
+	/**
+	 * Run every migration between the two versions in order. SQLiteOpenHelper wraps this in a
+	 * transaction, so the database either ends up fully upgraded or exactly as it was.
+	 */
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		db.execSQL("DROP TABLE IF EXISTS " + UsersTable.TABLE);
-		db.execSQL("DROP TABLE IF EXISTS " + InventoryTable.TABLE);
-		onCreate(db);
+		for (Migration migration : MIGRATIONS) {
+			if (migration.getVersion() > oldVersion && migration.getVersion() <= newVersion) {
+				Log.i(LOG, "Migrate database to version " + migration.getVersion());
+				migration.migrate(db);
+			}
+		}
 	}
 
 	/**
-	 * Get all inventory items
+	 * Limit reads of the inventory to a user's items. Only sets a field, so it can be called on the
+	 * main thread to make sure every read that follows sees the new user's items. Writes keep going
+	 * to the previous user until {@link #setCurrentUser(String)} runs.
 	 *
-	 * @return List of inventory items
+	 * @param username The user's username, or `null` when nobody is logged in
+	 */
+	public void setOwner(String username) {
+		String owner = username != null ? username : NO_OWNER;
+		if (!owner.equals(mOwner)) {
+			mOwner = owner;
+
+			// The cache is keyed by ID alone, so the last user's items mustn't be left in it
+			mItemCache.clear();
+		}
+	}
+
+	/**
+	 * Get the user whose items are being listed
+	 *
+	 * @return The user's username, or an empty string when nobody is logged in
+	 */
+	public String getOwner() {
+		return mOwner;
+	}
+
+	/**
+	 * Get all of the logged in user's inventory items
+	 *
+	 * @return List of inventory items, in ID order
 	 */
 	public List<Item> getItems() {
-		List<Item> items = new ArrayList<Item>();
-		SQLiteDatabase db = getReadableDatabase();
+		long start = System.nanoTime();
+		try {
+			List<Item> items = new ArrayList<Item>();
+			SQLiteDatabase db = getReadableDatabase();
 
-		String sql = "SELECT * FROM " + InventoryTable.TABLE;
-		Cursor cursor = db.rawQuery(sql, new String[]{});
-		if (cursor.moveToFirst()) {
-			do {
-				long id = cursor.getLong(0);
-				String name = cursor.getString(1);
-				int quantity = cursor.getInt(2);
-				items.add(new Item(id, name, quantity));
-			} while (cursor.moveToNext());
+			String sql = "SELECT * FROM " + InventoryTable.TABLE + " WHERE " + InventoryTable.COL_OWNER +
+					" = ? ORDER BY " + InventoryTable.COL_ID;
+			Cursor cursor = db.rawQuery(sql, new String[]{mOwner});
+			if (cursor.moveToFirst()) {
+				do {
+					long id = cursor.getLong(0);
+					String name = cursor.getString(1);
+					int quantity = cursor.getInt(2);
+					items.add(new Item(id, name, quantity));
+				} while (cursor.moveToNext());
+			}
+			cursor.close();
+
+			return items;
+		} finally {
+			METRIC_GET_ITEMS.recordSince(start);
 		}
-		cursor.close();
+	}
+
+	/**
+	 * Start telling a listener about changes to inventory items
+	 *
+	 * @param listener The listener
+	 */
+	public void addChangeListener(ChangeListener listener) {
+		mChangeListeners.add(listener);
+	}
 
-		return items;
+	/**
+	 * Stop telling a listener about changes to inventory items
+	 *
+	 * @param listener The listener
+	 */
+	public void removeChangeListener(ChangeListener listener) {
+		mChangeListeners.remove(listener);
 	}
 
 	/**
-	 * Create a new user - failing if the user already exists in the database.
+	 * Tell every listener about a committed change
 	 *
-	 * @param username The username of the user to create
-	 * @param password The hashed password of the user to create
-	 * @return `true` if user was created, `false` otherwise
+	 * @param changes The items that changed
 	 */
-	public boolean addUser(String username, String password) {
-		// Guard against registering an existing user
-		if (usernameExists(username)) {
-			return false;
+	private void publish(ItemChanges changes) {
+		// Some writes update the cache before their transaction commits, so reads that started before
+		// the commit could still cache the old rows without this
+		if (changes.everything) {
+			mItemCache.clear();
+		} else {
+			mItemCache.markWritten(changes.updated);
+			mItemCache.markWritten(changes.deleted);
 		}
 
-		// Fetch an instance of database to write to
-		SQLiteDatabase db = this.getWritableDatabase();
+		for (ChangeListener listener : mChangeListeners) {
+			listener.onItemsChanged(changes);
+		}
+	}
 
-		// Set the username and password values to insert into their columns
-		ContentValues values = new ContentValues();
-		values.put(UsersTable.COL_USERNAME, username);
-		values.put(UsersTable.COL_PASSWORD, password);
+	/**
+	 * Get one of the logged in user's items, from the item cache when it's there
+	 *
+	 * @param id The ID of the item
+	 * @return The item, or `null` if the user has no item with that ID
+	 */
+	public Item getItem(long id) {
+		long start = System.nanoTime();
+		try {
+			Item item = mItemCache.get(id);
+			if (item != null) {
+				return item;
+			}
 
-		// Insert row
-		long userId = db.insert(UsersTable.TABLE, null, values);
+			// Started before the query, so an update that lands while it runs keeps this copy out of the cache
+			long readStart = mItemCache.startRead();
+			try {
+				Cursor cursor = getReadableDatabase().rawQuery(InventoryTable.SQL_GET_ITEM,
+						new String[]{String.valueOf(id), mOwner});
+				try {
+					if (!cursor.moveToFirst()) {
+						return null;
+					}
+					item = readItem(cursor);
+				} finally {
+					cursor.close();
+				}
 
-		// Check if there was a user ID returned to indicate success.
-		return userId != -1;
+				mItemCache.putRead(readStart, item);
+				return item;
+			} finally {
+				mItemCache.finishRead();
+			}
+		} finally {
+			METRIC_GET_ITEM.recordSince(start);
+		}
 	}
 
 	/**
-	 * Check the given user's credentials against the database to see if they are correct.
+	 * Get the cache of recently used items, for example to read its hit and miss counters
 	 *
-	 * @param username The given username to check
-	 * @param password The given hashed password to check
-	 * @return `true` for a user found, `false` otherwise
+	 * @return The item cache
+	 */
+	public ItemCache getItemCache() {
+		return mItemCache;
+	}
+
+	/**
+	 * Get a page of inventory items using keyset pagination. Items are ordered by ID and only those
+	 * with an ID greater than the given one are returned, so every page costs the same to fetch no
+	 * matter how far into the table it is.
+	 *
+	 * @param afterId The ID of the last item on the previous page (0 for the first page)
+	 * @param limit   The maximum number of items to return
+	 * @return List of inventory items in the page
+	 */
+	public List<Item> getItemsAfter(long afterId, int limit) {
+		return getItemsAfter(ItemQuery.ALL, idKey(afterId), limit);
+	}
+
+	/**
+	 * Get a page of the items matching a query using keyset pagination. Only items after the given
+	 * one in the query's order are returned, found by seeking into the index the order uses, so every
+	 * page costs the same to fetch no matter how far into the list it is.
+	 *
+	 * @param query The items to list and their order
+	 * @param after The last item on the previous page, or `null` for the first page
+	 * @param limit The maximum number of items to return
+	 * @return List of inventory items in the page
 	 */
-	public boolean checkUser(String username, String password) {
-		SQLiteDatabase db = this.getWritableDatabase();
-		String sql = "SELECT * FROM " + UsersTable.TABLE + " WHERE username = ? AND password = ?";
+	public List<Item> getItemsAfter(ItemQuery query, Item after, int limit) {
+		long start = System.nanoTime();
+		try {
+			List<Item> items = new ArrayList<Item>(limit);
+			SQLiteDatabase db = getReadableDatabase();
 
-		Cursor cursor = db.rawQuery(sql, new String[]{username, password});
+			List<String> args = new ArrayList<>();
+			String sql = "SELECT " + InventoryTable.ITEM_COLUMNS + " FROM " + InventoryTable.TABLE +
+					itemWhere(query, after, false, args) + itemOrderBy(query) + " LIMIT ?";
+			args.add(String.valueOf(limit));
+			long readStart = mItemCache.startRead();
+			try {
+				Cursor cursor = db.rawQuery(sql, args.toArray(new String[0]));
+				try {
+					while (cursor.moveToNext()) {
+						Item item = readItem(cursor);
+						mItemCache.putRead(readStart, item);
+						items.add(item);
+					}
+				} finally {
+					cursor.close();
+				}
+			} finally {
+				mItemCache.finishRead();
+			}
 
-		return cursor.getCount() > 0;
+			return items;
+		} finally {
+			METRIC_GET_ITEMS_AFTER.recordSince(start);
+		}
 	}
 
 	/**
-	 * Check to see if a user with the given username already exists in the database.
+	 * Find the ID of the item that sits `offset` rows after the given ID. This lets a pager jump
+	 * ahead to a page it hasn't loaded yet without reading the rows in between.
 	 *
-	 * @param username The given username to check
-	 * @return `true` if a user with that username exists, `false` otherwise
+	 * @param afterId The ID to start counting from
+	 * @param offset  The number of rows to skip past the given ID
+	 * @return The item's ID, or -1 if there aren't enough rows
 	 */
-	public boolean usernameExists(String username) {
-		SQLiteDatabase db = this.getWritableDatabase();
-		String sql = "SELECT * FROM " + UsersTable.TABLE + " WHERE username = ?";
+	public long getItemIdAfter(long afterId, int offset) {
+		Item item = getItemAfter(ItemQuery.ALL, idKey(afterId), offset);
+		return item != null ? item.getId() : -1;
+	}
 
-		Cursor cursor = db.rawQuery(sql, new String[]{username});
+	/**
+	 * Find the item that sits `offset` rows after the given one in a query's order. This lets a
+	 * pager jump ahead to a page it hasn't loaded yet without reading the rows in between.
+	 *
+	 * @param query  The items to list and their order
+	 * @param after  The item to start counting from, or `null` to count from the start
+	 * @param offset The number of rows to skip past the given item
+	 * @return The item, or `null` if there aren't enough rows
+	 */
+	public Item getItemAfter(ItemQuery query, Item after, int offset) {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = getReadableDatabase();
 
-		return cursor.getCount() > 0;
+			List<String> args = new ArrayList<>();
+			String sql = "SELECT " + InventoryTable.ITEM_COLUMNS + " FROM " + InventoryTable.TABLE +
+					itemWhere(query, after, false, args) + itemOrderBy(query) + " LIMIT 1 OFFSET ?";
+			args.add(String.valueOf(offset));
+			Cursor cursor = db.rawQuery(sql, args.toArray(new String[0]));
+			try {
+				return cursor.moveToFirst() ? readItem(cursor) : null;
+			} finally {
+				cursor.close();
+			}
+		} finally {
+			METRIC_GET_ITEM_AFTER.recordSince(start);
+		}
 	}
 
 	/**
-	 * Add an item to the database
+	 * Count the items with an ID up to and including the given one, which is the position just
+	 * after that item in the ID-ordered list
 	 *
-	 * @param name     The name of the item
-	 * @param quantity The quantity of the item
-	 * @return Whether the item was successfully inserted into the database or not
+	 * @param id The item ID to count up to
+	 * @return The number of items with that ID or lower
 	 */
-	public boolean addItem(String name, int quantity) {
-		// Get an instance of the writable database
-		SQLiteDatabase db = this.getWritableDatabase();
+	public int countItemsUpTo(long id) {
+		return countItemsUpTo(ItemQuery.ALL, idKey(id));
+	}
 
-		// Set the values according to their columns
-		ContentValues values = new ContentValues();
-		values.put(InventoryTable.COL_NAME, name);
-		values.put(InventoryTable.COL_QUANTITY, quantity);
+	/**
+	 * Count the items matching a query up to and including the given one in the query's order,
+	 * which is the position just after that item in the list
+	 *
+	 * @param query The items to list and their order
+	 * @param item  The item to count up to, or `null` for the start of the list
+	 * @return The number of matching items up to that one
+	 */
+	public int countItemsUpTo(ItemQuery query, Item item) {
+		if (item == null) {
+			return 0;
+		}
 
-		// Insert row
-		long itemId = db.insert(InventoryTable.TABLE, null, values);
+		long start = System.nanoTime();
+		try {
+			List<String> args = new ArrayList<>();
+			String sql = "SELECT COUNT(*) FROM " + InventoryTable.TABLE + itemWhere(query, item, true, args);
+			return (int) DatabaseUtils.longForQuery(getReadableDatabase(), sql, args.toArray(new String[0]));
+		} finally {
+			METRIC_COUNT_ITEMS_UP_TO.recordSince(start);
+		}
+	}
 
-		return itemId != -1;
+	/**
+	 * A stand-in for the item with the given ID, enough to page through items in ID order
+	 *
+	 * @param id The item ID, or 0 for the start of the list
+	 * @return The key, or `null` for the start of the list
+	 */
+	private static Item idKey(long id) {
+		return id == 0 ? null : new Item(id, "");
 	}
 
 	/**
-	 * Update an existing item
+	 * Build the WHERE clause for the logged in user's items, a query's filters and, if an item is
+	 * given, its position in the query's order. Every index leads with the owner, so the rest of the
+	 * clause only ever looks at this user's rows. Each position check compares column by column
+	 * rather than as row values, which older SQLite versions can't parse, and repeats the leading
+	 * column on its own so SQLite can seek into the index with it.
 	 *
-	 * @param item The item to update
-	 * @return Whether the item was successfully updated or not
+	 * @param query     The items to list and their order
+	 * @param key       The item to compare positions with, may be `null`
+	 * @param inclusive `true` to keep the items up to and including the key, `false` to keep the
+	 *                  ones after it
+	 * @param args      Receives the values to bind, in order
+	 * @return The WHERE clause with a leading space
 	 */
-	public boolean updateItem(Item item) {
-		// Get an instance of the writable database
-		SQLiteDatabase db = this.getWritableDatabase();
+	private String itemWhere(ItemQuery query, Item key, boolean inclusive, List<String> args) {
+		List<String> conditions = new ArrayList<>();
+		conditions.add(InventoryTable.COL_OWNER + " = ?");
+		args.add(mOwner);
+		if (query.minQuantity != null) {
+			conditions.add(InventoryTable.COL_QUANTITY + " >= ?");
+			args.add(String.valueOf(query.minQuantity));
+		}
+		if (query.maxQuantity != null) {
+			conditions.add(InventoryTable.COL_QUANTITY + " <= ?");
+			args.add(String.valueOf(query.maxQuantity));
+		}
+		if (query.namePrefix != null) {
+			// A range rather than LIKE, so it always seeks into the name index
+			String lower = foldCase(query.namePrefix);
+			conditions.add(InventoryTable.NAME_NOCASE + " >= ?");
+			args.add(lower);
+			String upper = prefixUpperBound(lower);
+			if (upper != null) {
+				conditions.add(InventoryTable.NAME_NOCASE + " < ?");
+				args.add(upper);
+			}
+		}
 
-		// Set the values according to their columns
-		ContentValues values = new ContentValues();
-		values.put(InventoryTable.COL_NAME, item.getName());
-		values.put(InventoryTable.COL_QUANTITY, item.getQuantity());
+		if (key != null) {
+			// Whether the rows wanted compare greater than the key: the ones after it in ascending
+			// order, or the ones up to it in descending order
+			boolean above = query.descending == inclusive;
+			String strict = above ? ">" : "<";
+			String operator = inclusive ? strict + "=" : strict;
+			String id = String.valueOf(key.getId());
+			String name = key.getName() != null ? key.getName() : "";
+			String quantity = String.valueOf(key.getQuantity());
 
-		// Update the item and check that it successfully updated
-		int rowsUpdated = db.update(InventoryTable.TABLE, values, InventoryTable.COL_ID + " = ?",
-				new String[]{String.valueOf(item.getId())});
+			switch (query.sortKey) {
+				case NAME:
+					conditions.add(InventoryTable.NAME_NOCASE + " " + strict + "= ? AND (" +
+							InventoryTable.NAME_NOCASE + " " + strict + " ? OR (" + InventoryTable.NAME_NOCASE + " = ? AND (" +
+							InventoryTable.COL_QUANTITY + " " + strict + " ? OR (" + InventoryTable.COL_QUANTITY + " = ? AND " +
+							InventoryTable.COL_ID + " " + operator + " ?))))");
+					args.add(name);
+					args.add(name);
+					args.add(name);
+					args.add(quantity);
+					args.add(quantity);
+					args.add(id);
+					break;
+				case QUANTITY:
+					conditions.add(InventoryTable.COL_QUANTITY + " " + strict + "= ? AND (" +
+							InventoryTable.COL_QUANTITY + " " + strict + " ? OR (" + InventoryTable.COL_QUANTITY + " = ? AND " +
+							InventoryTable.COL_ID + " " + operator + " ?))");
+					args.add(quantity);
+					args.add(quantity);
+					args.add(quantity);
+					args.add(id);
+					break;
+				default:
+					conditions.add(InventoryTable.COL_ID + " " + operator + " ?");
+					args.add(id);
+			}
+		}
 
-		return rowsUpdated > 0;
+		return " WHERE " + TextUtils.join(" AND ", conditions);
 	}
 
 	/**
-	 * Delete an item from the database
+	 * Build the ORDER BY clause for a query. Each order matches an index column for column after
+	 * the owner, ending with the ID that every index holds, so SQLite reads rows in order instead of
+	 * sorting them.
 	 *
-	 * @param item The item to delete
-	 * @return Whether the item was successfully deleted or not
+	 * @param query The items to list and their order
+	 * @return The ORDER BY clause with a leading space
 	 */
-	public boolean deleteItem(Item item) {
-		// Get a writeable instance of the database
-		SQLiteDatabase db = getWritableDatabase();
+	private static String itemOrderBy(ItemQuery query) {
+		String direction = query.descending ? " DESC" : "";
+		switch (query.sortKey) {
+			case NAME:
+				return " ORDER BY " + InventoryTable.NAME_NOCASE + direction + ", " +
+						InventoryTable.COL_QUANTITY + direction + ", " + InventoryTable.COL_ID + direction;
+			case QUANTITY:
+				return " ORDER BY " + InventoryTable.COL_QUANTITY + direction + ", " +
+						InventoryTable.COL_ID + direction;
+			default:
+				return " ORDER BY " + InventoryTable.COL_ID + direction;
+		}
+	}
+
+	/**
+	 * Lower-case ASCII letters only, which is all SQLite's NOCASE collation folds
+	 */
+	private static String foldCase(String text) {
+		char[] chars = text.toCharArray();
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] >= 'A' && chars[i] <= 'Z') {
+				chars[i] += 'a' - 'A';
+			}
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Get the smallest string that sorts after every string starting with the prefix
+	 *
+	 * @param prefix A case-folded prefix
+	 * @return The bound, or `null` if there isn't one
+	 */
+	private static String prefixUpperBound(String prefix) {
+		int end = prefix.length();
+		while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+			end--;
+		}
+		if (end == 0) {
+			return null;
+		}
+
+		// NOCASE compares upper-case letters as lower case, so the 'A' after '@' would really sort
+		// after '[' to '`' - skip to the next character it compares as
+		char next = (char) (prefix.charAt(end - 1) + 1);
+		if (next >= 'A' && next <= 'Z') {
+			next = '[';
+		}
+		return prefix.substring(0, end - 1) + next;
+	}
+
+	/**
+	 * Open a forward-only cursor over the logged in user's items, ordered by ID. Rows are read from disk
+	 * a window at a time as the cursor moves, so walking it uses the same memory no matter how big
+	 * the table is. The caller must close the cursor.
+	 *
+	 * @param cancellationSignal Cancels the query while it's running, may be `null`
+	 * @return A cursor with the item ID, name and quantity columns, in that order
+	 */
+	public Cursor getItemsCursor(CancellationSignal cancellationSignal) {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = getReadableDatabase();
+
+			String sql = "SELECT " + InventoryTable.COL_ID + ", " + InventoryTable.COL_NAME + ", " +
+					InventoryTable.COL_QUANTITY + " FROM " + InventoryTable.TABLE + " WHERE " +
+					InventoryTable.COL_OWNER + " = ? ORDER BY " + InventoryTable.COL_ID;
+			return db.rawQuery(sql, new String[]{mOwner}, cancellationSignal);
+		} finally {
+			METRIC_GET_ITEMS_CURSOR.recordSince(start);
+		}
+	}
+
+	/**
+	 * Find the logged in user's items whose name contains words starting with each word of the
+	 * query, so "blu wid" matches "Blue Widget". Matches are returned in ID order, the same as the
+	 * full list.
+	 *
+	 * @param query              The text the user typed
+	 * @param cancellationSignal Cancels the query while it's running, may be `null`
+	 * @return The matching items, at most a couple of hundred
+	 */
+	public List<Item> searchItems(String query, CancellationSignal cancellationSignal) {
+		long start = System.nanoTime();
+		try {
+			List<Item> items = new ArrayList<Item>();
+			String match = buildPrefixMatch(query);
+			if (match == null) {
+				return items;
+			}
+
+			SQLiteDatabase db = getReadableDatabase();
+			String sql = "SELECT i." + InventoryTable.COL_ID + ", i." + InventoryTable.COL_NAME + ", i." +
+					InventoryTable.COL_QUANTITY + ", i." + InventoryTable.COL_LOW_STOCK_THRESHOLD + " FROM " +
+					InventorySearchTable.TABLE + " JOIN " +
+					InventoryTable.TABLE + " i ON i." + InventoryTable.COL_ID + " = " + InventorySearchTable.TABLE +
+					"." + InventorySearchTable.COL_DOCID + " WHERE " + InventorySearchTable.TABLE + " MATCH ? AND " +
+					InventorySearchTable.TABLE + "." + InventorySearchTable.COL_OWNER_ID + " = " +
+					InventorySearchTable.ownerId("?") + " AND i." + InventoryTable.COL_OWNER + " = ? LIMIT ?";
+
+			// The language ID picks out this owner's index. Owners without an account share ID 0, so
+			// the owner is checked on the row as well.
+			String owner = mOwner;
+			long readStart = mItemCache.startRead();
+			try {
+				Cursor cursor = db.rawQuery(sql, new String[]{match, owner, owner,
+						String.valueOf(InventorySearchTable.MAX_RESULTS)}, cancellationSignal);
+				try {
+					while (cursor.moveToNext()) {
+						Item item = readItem(cursor);
+						mItemCache.putRead(readStart, item);
+						items.add(item);
+					}
+				} finally {
+					cursor.close();
+				}
+			} finally {
+				mItemCache.finishRead();
+			}
+
+			return items;
+		} finally {
+			METRIC_SEARCH_ITEMS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Turn what the user typed into an FTS prefix query. Anything other than letters and digits is
+	 * treated as a word break, which also keeps FTS operators and quotes out of the query.
+	 *
+	 * @param query The text the user typed
+	 * @return The MATCH expression, or `null` if there's nothing to search for
+	 */
+	@VisibleForTesting
+	static String buildPrefixMatch(String query) {
+		if (query == null) {
+			return null;
+		}
+
+		StringBuilder match = new StringBuilder();
+		for (String term : query.split("[^\\p{L}\\p{N}]+")) {
+			if (term.isEmpty()) {
+				continue;
+			}
+			if (match.length() > 0) {
+				match.append(' ');
+			}
+			match.append('"').append(term).append("*\"");
+		}
+		return match.length() > 0 ? match.toString() : null;
+	}
+
+	/**
+	 * Running totals across a user's inventory
+	 */
+	public static final class Summary {
+		// Number of distinct items
+		public final int itemCount;
+
+		// Sum of every item's quantity
+		public final long totalQuantity;
 
-		// Delete the item matching the given item's ID
-		int rowsDeleted = db.delete(InventoryTable.TABLE, InventoryTable.COL_ID + " = ?",
-				new String[]{String.valueOf(item.getId())});
+		// Number of items with none left
+		public final int outOfStockCount;
 
-		// Check that the row was removed from the database
-		return rowsDeleted > 0;
+		// Number of items at or below their low stock threshold
+		public final int lowStockCount;
+
+		Summary(int itemCount, long totalQuantity, int outOfStockCount, int lowStockCount) {
+			this.itemCount = itemCount;
+			this.totalQuantity = totalQuantity;
+			this.outOfStockCount = outOfStockCount;
+			this.lowStockCount = lowStockCount;
+		}
+	}
+
+	/**
+	 * Get the logged in user's inventory totals. They're kept up to date as items change, so this
+	 * reads a single row no matter how many items there are.
+	 *
+	 * @return The totals
+	 */
+	public Summary getSummary() {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = getReadableDatabase();
+			Cursor cursor = db.rawQuery("SELECT " + InventorySummaryTable.COL_ITEM_COUNT + ", " +
+					InventorySummaryTable.COL_TOTAL_QUANTITY + ", " + InventorySummaryTable.COL_OUT_OF_STOCK_COUNT +
+					", " + InventorySummaryTable.COL_LOW_STOCK_COUNT + " FROM " + InventorySummaryTable.TABLE +
+					" WHERE " + InventorySummaryTable.COL_OWNER + " = ?", new String[]{mOwner});
+			try {
+				if (!cursor.moveToFirst()) {
+					return new Summary(0, 0, 0, 0);
+				}
+				return new Summary(cursor.getInt(0), cursor.getLong(1), cursor.getInt(2), cursor.getInt(3));
+			} finally {
+				cursor.close();
+			}
+		} finally {
+			METRIC_GET_SUMMARY.recordSince(start);
+		}
+	}
+
+	/**
+	 * Count the logged in user's items without loading them
+	 *
+	 * @return The number of items in their inventory
+	 */
+	public int getItemCount() {
+		return getItemCount(ItemQuery.ALL);
+	}
+
+	/**
+	 * Count the items matching a query without loading them
+	 *
+	 * @param query The items to count - only its filters matter
+	 * @return The number of matching items
+	 */
+	public int getItemCount(ItemQuery query) {
+		long start = System.nanoTime();
+		try {
+			List<String> args = new ArrayList<>();
+			return (int) DatabaseUtils.longForQuery(getReadableDatabase(), "SELECT COUNT(*) FROM " +
+					InventoryTable.TABLE + itemWhere(query, null, false, args), args.toArray(new String[0]));
+		} finally {
+			METRIC_GET_ITEM_COUNT.recordSince(start);
+		}
+	}
+
+	/**
+	 * Create a new user - failing if the user already exists in the database. Hashing is slow, so
+	 * this must be called on a background thread.
+	 *
+	 * @param username The username of the user to create
+	 * @param password The plain text password of the user to create
+	 * @param hasher   Hashes the password
+	 * @return `true` if user was created, `false` otherwise
+	 */
+	public boolean addUser(String username, String password, PasswordHasher hasher) {
+		// Guard against registering an existing user before spending time on the hash
+		if (usernameExists(username)) {
+			return false;
+		}
+		return addUser(username, hasher.hash(password));
+	}
+
+	/**
+	 * Create a new user with an already hashed password - failing if the user already exists. The
+	 * first user registered is given any items left without an owner, which only happens when a
+	 * database with items but no accounts is upgraded to per-user inventories.
+	 *
+	 * @param username The username of the user to create
+	 * @param password The hashed password of the user to create
+	 * @return `true` if user was created, `false` otherwise
+	 */
+	public boolean addUser(String username, PasswordHasher.HashedPassword password) {
+		long start = System.nanoTime();
+		try {
+			// Fetch an instance of database to write to
+			SQLiteDatabase db = this.getWritableDatabase();
+
+			// Set the username and password values to insert into their columns
+			ContentValues values = new ContentValues();
+			values.put(UsersTable.COL_USERNAME, username);
+			putPassword(values, password);
+
+			int claimed = 0;
+			db.beginTransaction();
+			try {
+				// Insert row - the unique index on username makes this fail for an existing user
+				long userId = db.insert(UsersTable.TABLE, null, values);
+				if (userId == -1) {
+					return false;
+				}
+
+				if (DatabaseUtils.queryNumEntries(db, UsersTable.TABLE) == 1) {
+					claimed = claimOwnerlessRows(db, username);
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+
+			// Nobody can have been logged in as the new user, but reads made while nobody was
+			// logged in could have cached the items that just changed hands
+			if (claimed > 0) {
+				mItemCache.clear();
+			}
+			return true;
+		} finally {
+			METRIC_ADD_USER.recordSince(start);
+		}
+	}
+
+	/**
+	 * Give the items that have no owner, and the low stock alerts recorded for them, to a user
+	 *
+	 * @param db       The database, in a transaction
+	 * @param username The user who gets them
+	 * @return The number of items given to the user
+	 */
+	private static int claimOwnerlessRows(SQLiteDatabase db, String username) {
+		String[] noOwner = new String[]{NO_OWNER};
+
+		ContentValues values = new ContentValues();
+		values.put(InventoryTable.COL_OWNER, username);
+		int claimed = db.update(InventoryTable.TABLE, values, InventoryTable.COL_OWNER + " = ?", noOwner);
+
+		values = new ContentValues();
+		values.put(LowStockEventsTable.COL_OWNER, username);
+		db.update(LowStockEventsTable.TABLE, values, LowStockEventsTable.COL_OWNER + " = ?", noOwner);
+
+		values = new ContentValues();
+		values.put(NotificationQueueTable.COL_OWNER, username);
+		db.update(NotificationQueueTable.TABLE, values, NotificationQueueTable.COL_OWNER + " = ?", noOwner);
+		return claimed;
+	}
+
+	/**
+	 * Check the given user's credentials against the database to see if they are correct. A user
+	 * whose hash is weaker than the hasher's current cost is rehashed once the password checks
+	 * out. Hashing is slow, so this must be called on a background thread.
+	 *
+	 * @param username The given username to check
+	 * @param password The given plain text password to check
+	 * @param hasher   Checks the password, and hashes it again if needed
+	 * @return `true` for a user found, `false` otherwise
+	 */
+	public boolean checkUser(String username, String password, PasswordHasher hasher) {
+		long start = System.nanoTime();
+		try {
+			PasswordHasher.HashedPassword stored = getPassword(username);
+			if (stored == null || !hasher.verify(password, stored)) {
+				return false;
+			}
+
+			if (hasher.needsRehash(stored)) {
+				updatePassword(username, hasher.hash(password));
+			}
+			return true;
+		} finally {
+			METRIC_CHECK_USER.recordSince(start);
+		}
+	}
+
+	/**
+	 * Look up a user's stored password hash. Goes straight to the one row through the unique
+	 * username index.
+	 *
+	 * @param username The username to look up
+	 * @return The stored hash, or `null` if there's no such user
+	 */
+	public PasswordHasher.HashedPassword getPassword(String username) {
+		long start = System.nanoTime();
+		try {
+			// Only reads, so it can run on a read connection while something else is writing
+			Cursor cursor = getReadableDatabase().rawQuery(UsersTable.SQL_GET_PASSWORD, new String[]{username});
+			try {
+				if (!cursor.moveToFirst()) {
+					return null;
+				}
+				return new PasswordHasher.HashedPassword(cursor.getString(0), cursor.getString(1),
+						cursor.getInt(2));
+			} finally {
+				cursor.close();
+			}
+		} finally {
+			METRIC_GET_PASSWORD.recordSince(start);
+		}
+	}
+
+	/**
+	 * Replace a user's stored password hash
+	 *
+	 * @param username The username of the user
+	 * @param password The new hashed password
+	 * @return `true` if the user was found and updated, `false` otherwise
+	 */
+	public boolean updatePassword(String username, PasswordHasher.HashedPassword password) {
+		long start = System.nanoTime();
+		try {
+			ContentValues values = new ContentValues();
+			putPassword(values, password);
+			return getWritableDatabase().update(UsersTable.TABLE, values,
+					UsersTable.COL_USERNAME + " = ?", new String[]{username}) > 0;
+		} finally {
+			METRIC_UPDATE_PASSWORD.recordSince(start);
+		}
+	}
+
+	/**
+	 * Put a password hash into the values for a users row
+	 */
+	private static void putPassword(ContentValues values, PasswordHasher.HashedPassword password) {
+		values.put(UsersTable.COL_PASSWORD, password.hash);
+		values.put(UsersTable.COL_SALT, password.salt);
+		values.put(UsersTable.COL_ITERATIONS, password.iterations);
+	}
+
+	/**
+	 * Check to see if a user with the given username already exists in the database.
+	 *
+	 * @param username The given username to check
+	 * @return `true` if a user with that username exists, `false` otherwise
+	 */
+	public boolean usernameExists(String username) {
+		long start = System.nanoTime();
+		try {
+			return DatabaseUtils.queryNumEntries(getReadableDatabase(), UsersTable.TABLE,
+					UsersTable.COL_USERNAME + " = ?", new String[]{username}) > 0;
+		} finally {
+			METRIC_USERNAME_EXISTS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Add an item to the logged in user's inventory
+	 *
+	 * @param name     The name of the item
+	 * @param quantity The quantity of the item
+	 * @return Whether the item was successfully inserted into the database or not
+	 */
+	public boolean addItem(String name, int quantity) {
+		return addItem(name, quantity, null);
+	}
+
+	/**
+	 * Add an item to the logged in user's inventory with a low stock threshold
+	 *
+	 * @param name              The name of the item
+	 * @param quantity          The quantity of the item - negative numbers are stored as zero
+	 * @param lowStockThreshold The quantity to alert at, or `null` for no alerts
+	 * @return Whether the item was successfully inserted into the database or not
+	 */
+	public boolean addItem(String name, int quantity, Integer lowStockThreshold) {
+		long start = System.nanoTime();
+		try {
+			// Stored and cached the same way, however the caller passed it
+			int storedQuantity = Math.max(0, quantity);
+
+			// Reuse the compiled insert statement, binding this item's values
+			SQLiteStatement statement = mStatements.acquire(InventoryTable.SQL_INSERT);
+			synchronized (statement) {
+				bindStringOrNull(statement, 1, name);
+				statement.bindLong(2, storedQuantity);
+				bindLongOrNull(statement, 3, lowStockThreshold);
+				statement.bindString(4, mWriteOwner);
+
+				// Insert row
+				long itemId = statement.executeInsert();
+				if (itemId == -1) {
+					return false;
+				}
+
+				cacheWrite(new Item(itemId, name, storedQuantity, lowStockThreshold));
+				publish(ItemChanges.inserted(itemId));
+				return true;
+			}
+		} finally {
+			METRIC_ADD_ITEM.recordSince(start);
+		}
+	}
+
+	/**
+	 * Update one of the logged in user's items
+	 *
+	 * @param item The item to update
+	 * @return Whether the item was successfully updated, `false` if the user has no item with its ID
+	 */
+	public boolean updateItem(Item item) {
+		long start = System.nanoTime();
+		try {
+			// Reuse the compiled update statement, binding this item's values
+			SQLiteStatement statement = mStatements.acquire(InventoryTable.SQL_UPDATE);
+			synchronized (statement) {
+				bindStringOrNull(statement, 1, item.getName());
+				statement.bindLong(2, item.getQuantity());
+				bindLongOrNull(statement, 3, item.getLowStockThreshold());
+				statement.bindLong(4, item.getId());
+				statement.bindString(5, mWriteOwner);
+
+				// Update the item and check that it successfully updated
+				if (statement.executeUpdateDelete() == 0) {
+					mItemCache.remove(item.getId());
+					return false;
+				}
+			}
+
+			cacheWrite(item);
+			publish(ItemChanges.updated(Collections.singleton(item.getId())));
+			return true;
+		} finally {
+			METRIC_UPDATE_ITEM.recordSince(start);
+		}
+	}
+
+	/**
+	 * Set an item's quantity without rewriting the rest of the row
+	 *
+	 * @param id       The ID of the item
+	 * @param quantity The new quantity - negative numbers are stored as zero
+	 * @return Whether the item was successfully updated, `false` if the user has no item with that ID
+	 */
+	public boolean setQuantity(long id, int quantity) {
+		long start = System.nanoTime();
+		try {
+			if (!writeQuantity(id, quantity)) {
+				return false;
+			}
+
+			publish(ItemChanges.updated(Collections.singleton(id)));
+			return true;
+		} finally {
+			METRIC_SET_QUANTITY.recordSince(start);
+		}
+	}
+
+	/**
+	 * Write an item's quantity without telling the change listeners
+	 *
+	 * @param id       The ID of the item
+	 * @param quantity The new quantity - negative numbers are stored as zero
+	 * @return Whether the item was successfully updated or not
+	 */
+	private boolean writeQuantity(long id, int quantity) {
+		SQLiteStatement statement = mStatements.acquire(InventoryTable.SQL_SET_QUANTITY);
+		synchronized (statement) {
+			statement.bindLong(1, Math.max(0, quantity));
+			statement.bindLong(2, id);
+			statement.bindString(3, mWriteOwner);
+
+			if (statement.executeUpdateDelete() == 0) {
+				return false;
+			}
+		}
+
+		mItemCache.updateQuantity(id, Math.max(0, quantity));
+		return true;
+	}
+
+	/**
+	 * Update the quantities of several items in a single transaction
+	 *
+	 * @param quantities New quantities keyed by item ID
+	 * @return The number of items that were updated
+	 */
+	public int updateQuantities(Map<Long, Integer> quantities) {
+		long start = System.nanoTime();
+		try {
+			return applyQuantityChanges(quantities, null).rowsUpdated;
+		} finally {
+			METRIC_UPDATE_QUANTITIES.recordSince(start);
+		}
+	}
+
+	/**
+	 * Add to (or subtract from) an item's quantity in SQL, so concurrent changes to the same item
+	 * can't overwrite each other the way reading, changing and writing back the whole row can.
+	 *
+	 * @param id    The ID of the item
+	 * @param delta The amount to add - negative to subtract, stopping at zero
+	 * @return The item's new quantity, or -1 if the user has no item with that ID
+	 */
+	public int adjustQuantity(long id, int delta) {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = this.getWritableDatabase();
+
+			// Read the new value back in the same transaction as the update
+			int quantity;
+			boolean committed = false;
+			db.beginTransaction();
+			try {
+				quantity = applyQuantityDelta(id, delta);
+				db.setTransactionSuccessful();
+				committed = true;
+			} finally {
+				endTransaction(db, committed);
+			}
+
+			if (quantity >= 0) {
+				publish(ItemChanges.updated(Collections.singleton(id)));
+			}
+			return quantity;
+		} finally {
+			METRIC_ADJUST_QUANTITY.recordSince(start);
+		}
+	}
+
+	/**
+	 * Apply a batch of quantity deltas in a single transaction, for example when receiving a
+	 * shipment of hundreds of items at once
+	 *
+	 * @param deltas The amount to add to each item, keyed by item ID
+	 * @return The new quantity of each of the user's items, keyed by item ID
+	 */
+	public Map<Long, Integer> adjustQuantities(Map<Long, Integer> deltas) {
+		long start = System.nanoTime();
+		try {
+			return applyQuantityChanges(null, deltas).newQuantities;
+		} finally {
+			METRIC_ADJUST_QUANTITIES.recordSince(start);
+		}
+	}
+
+	/**
+	 * Result of applying a batch of quantity changes
+	 */
+	public static final class QuantityChanges {
+		// Number of items whose quantity was set or adjusted
+		public final int rowsUpdated;
+
+		// The new quantity of each adjusted item, keyed by item ID
+		public final Map<Long, Integer> newQuantities;
+
+		QuantityChanges(int rowsUpdated, Map<Long, Integer> newQuantities) {
+			this.rowsUpdated = rowsUpdated;
+			this.newQuantities = newQuantities;
+		}
+	}
+
+	/**
+	 * Set some quantities and adjust others, all in a single transaction
+	 *
+	 * @param quantities New quantities keyed by item ID, may be `null`
+	 * @param deltas     Amounts to add keyed by item ID, may be `null`
+	 * @return The number of rows updated and the new quantity of each adjusted item
+	 */
+	public QuantityChanges applyQuantityChanges(Map<Long, Integer> quantities, Map<Long, Integer> deltas) {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = this.getWritableDatabase();
+			int rowsUpdated = 0;
+			Map<Long, Integer> newQuantities = new LinkedHashMap<>();
+			Set<Long> updatedIds = new LinkedHashSet<>();
+
+			boolean committed = false;
+			db.beginTransaction();
+			try {
+				if (quantities != null) {
+					for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+						if (writeQuantity(entry.getKey(), entry.getValue())) {
+							updatedIds.add(entry.getKey());
+							rowsUpdated++;
+						}
+					}
+				}
+				if (deltas != null) {
+					for (Map.Entry<Long, Integer> entry : deltas.entrySet()) {
+						int quantity = applyQuantityDelta(entry.getKey(), entry.getValue());
+						if (quantity >= 0) {
+							newQuantities.put(entry.getKey(), quantity);
+							updatedIds.add(entry.getKey());
+							rowsUpdated++;
+						}
+					}
+				}
+				db.setTransactionSuccessful();
+				committed = true;
+			} finally {
+				endTransaction(db, committed);
+			}
+
+			if (!updatedIds.isEmpty()) {
+				publish(ItemChanges.updated(updatedIds));
+			}
+			return new QuantityChanges(rowsUpdated, newQuantities);
+		} finally {
+			METRIC_APPLY_QUANTITY_CHANGES.recordSince(start);
+		}
+	}
+
+	/**
+	 * Apply a quantity delta and read back the result. Must be called inside a transaction.
+	 *
+	 * @param id    The ID of the item
+	 * @param delta The amount to add
+	 * @return The item's new quantity, or -1 if the item doesn't exist
+	 */
+	private int applyQuantityDelta(long id, int delta) {
+		SQLiteStatement update = mStatements.acquire(InventoryTable.SQL_ADJUST_QUANTITY);
+		synchronized (update) {
+			update.bindLong(1, delta);
+			update.bindLong(2, id);
+			update.bindString(3, mWriteOwner);
+			if (update.executeUpdateDelete() == 0) {
+				return -1;
+			}
+		}
+
+		int quantity;
+		SQLiteStatement select = mStatements.acquire(InventoryTable.SQL_GET_QUANTITY);
+		synchronized (select) {
+			select.bindLong(1, id);
+			select.bindString(2, mWriteOwner);
+			quantity = (int) select.simpleQueryForLong();
+		}
+
+		mItemCache.updateQuantity(id, quantity);
+		return quantity;
+	}
+
+	/**
+	 * Result of upserting a batch of items
+	 */
+	public static final class UpsertResult {
+		// Number of new items added
+		public final int inserted;
+
+		// Number of existing items whose quantity was replaced
+		public final int updated;
+
+		UpsertResult(int inserted, int updated) {
+			this.inserted = inserted;
+			this.updated = updated;
+		}
+	}
+
+	/**
+	 * Insert or update a batch of the logged in user's items in a single transaction. An item whose
+	 * name matches one of their existing items (ignoring case) replaces that item's quantity instead
+	 * of being added again.
+	 *
+	 * @param names      The names of the items
+	 * @param quantities The quantities of the items, in the same order as the names
+	 * @param count      The number of items to take from the arrays
+	 * @return How many items were inserted and updated
+	 */
+	public UpsertResult upsertItems(String[] names, int[] quantities, int count) {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = this.getWritableDatabase();
+			String owner = mWriteOwner;
+			int inserted = 0;
+			int updated = 0;
+
+			db.beginTransaction();
+			try {
+				SQLiteStatement update = mStatements.acquire(InventoryTable.SQL_SET_QUANTITY_BY_NAME);
+				SQLiteStatement insert = mStatements.acquire(InventoryTable.SQL_INSERT);
+				synchronized (update) {
+					synchronized (insert) {
+						for (int i = 0; i < count; i++) {
+							int quantity = Math.max(0, quantities[i]);
+
+							// Try the existing item first and only insert when there isn't one
+							update.bindLong(1, quantity);
+							update.bindString(2, owner);
+							update.bindString(3, names[i]);
+							if (update.executeUpdateDelete() > 0) {
+								updated++;
+								continue;
+							}
+
+							insert.bindString(1, names[i]);
+							insert.bindLong(2, quantity);
+							insert.bindNull(3);
+							insert.bindString(4, owner);
+							if (insert.executeInsert() != -1) {
+								inserted++;
+							}
+						}
+					}
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+
+				// Items were matched by name, so there's no telling which cached items changed
+				mItemCache.clear();
+			}
+
+			if (inserted + updated > 0) {
+				publish(ItemChanges.everything());
+			}
+			return new UpsertResult(inserted, updated);
+		} finally {
+			METRIC_UPSERT_ITEMS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Hand out the low stock events recorded for the current user's items since the last call,
+	 * oldest first, and remove them so each is only handed out once. Other users' events are kept
+	 * until they're logged in.
+	 *
+	 * @return The events, at most a few hundred at a time
+	 */
+	public List<LowStockEvent> takeLowStockEvents() {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = getWritableDatabase();
+			String owner = mWriteOwner;
+			List<LowStockEvent> events = new ArrayList<>();
+
+			db.beginTransaction();
+			try {
+				Cursor cursor = db.rawQuery("SELECT " + LowStockEventsTable.COL_ID + ", " +
+						LowStockEventsTable.COL_ITEM_ID + ", " + LowStockEventsTable.COL_NAME + ", " +
+						LowStockEventsTable.COL_QUANTITY + ", " + LowStockEventsTable.COL_THRESHOLD + ", " +
+						LowStockEventsTable.COL_CREATED_AT + " FROM " + LowStockEventsTable.TABLE + " WHERE " +
+						LowStockEventsTable.COL_OWNER + " = ? ORDER BY " + LowStockEventsTable.COL_ID + " LIMIT " +
+						LowStockEventsTable.MAX_EVENTS, new String[]{owner});
+				long lastId = -1;
+				try {
+					while (cursor.moveToNext()) {
+						lastId = cursor.getLong(0);
+						events.add(new LowStockEvent(owner, cursor.getLong(1), cursor.getString(2), cursor.getInt(3),
+								cursor.getInt(4), cursor.getLong(5)));
+					}
+				} finally {
+					cursor.close();
+				}
+
+				if (lastId >= 0) {
+					db.execSQL("DELETE FROM " + LowStockEventsTable.TABLE + " WHERE " +
+							LowStockEventsTable.COL_OWNER + " = ? AND " + LowStockEventsTable.COL_ID + " <= ?",
+							new Object[]{owner, lastId});
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+
+			return events;
+		} finally {
+			METRIC_TAKE_LOW_STOCK_EVENTS.recordSince(start);
+		}
+	}
+
+	/**
+	 * A batch of one user's queued notifications, oldest first
+	 */
+	public static final class QueuedNotifications {
+		// The user the alerts are for
+		public final String owner;
+
+		// The queued low stock alerts
+		public final List<LowStockEvent> events;
+
+		// ID of the last queued row in the batch, for removing the batch once it's sent
+		public final long lastId;
+
+		QueuedNotifications(String owner, List<LowStockEvent> events, long lastId) {
+			this.owner = owner;
+			this.events = events;
+			this.lastId = lastId;
+		}
+	}
+
+	/**
+	 * Queue low stock alerts to be sent. An alert for an item that already has one queued replaces
+	 * the older one, so a digest only reports each item's latest quantity. Each alert is queued for
+	 * the owner it was recorded for.
+	 *
+	 * @param events The alerts to queue
+	 */
+	public void queueNotifications(List<LowStockEvent> events) {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = getWritableDatabase();
+			SQLiteStatement statement = mStatements.acquire(NotificationQueueTable.SQL_QUEUE);
+			synchronized (statement) {
+				db.beginTransaction();
+				try {
+					for (LowStockEvent event : events) {
+						statement.bindLong(1, event.itemId);
+						bindStringOrNull(statement, 2, event.name);
+						statement.bindLong(3, event.quantity);
+						statement.bindLong(4, event.threshold);
+						statement.bindLong(5, event.createdAt);
+						statement.bindString(6, event.owner);
+						statement.executeInsert();
+					}
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
+				}
+			}
+		} finally {
+			METRIC_QUEUE_NOTIFICATIONS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Get the current user's oldest queued notifications without removing them
+	 *
+	 * @param limit The maximum number to return
+	 * @return The queued notifications, which may be empty
+	 */
+	public QueuedNotifications getQueuedNotifications(int limit) {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = getReadableDatabase();
+			String owner = mOwner;
+			List<LowStockEvent> events = new ArrayList<>();
+			long lastId = -1;
+
+			Cursor cursor = db.rawQuery("SELECT " + NotificationQueueTable.COL_ID + ", " +
+					NotificationQueueTable.COL_ITEM_ID + ", " + NotificationQueueTable.COL_NAME + ", " +
+					NotificationQueueTable.COL_QUANTITY + ", " + NotificationQueueTable.COL_THRESHOLD + ", " +
+					NotificationQueueTable.COL_CREATED_AT + " FROM " + NotificationQueueTable.TABLE + " WHERE " +
+					NotificationQueueTable.COL_OWNER + " = ? ORDER BY " + NotificationQueueTable.COL_ID + " LIMIT ?",
+					new String[]{owner, String.valueOf(limit)});
+			try {
+				while (cursor.moveToNext()) {
+					lastId = cursor.getLong(0);
+					events.add(new LowStockEvent(owner, cursor.getLong(1), cursor.getString(2), cursor.getInt(3),
+							cursor.getInt(4), cursor.getLong(5)));
+				}
+			} finally {
+				cursor.close();
+			}
+
+			return new QueuedNotifications(owner, events, lastId);
+		} finally {
+			METRIC_GET_QUEUED_NOTIFICATIONS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Remove queued notifications once they've been sent. Alerts queued since the batch was read
+	 * get a newer ID, so they're kept even if they replaced one in the batch.
+	 *
+	 * @param sent The batch that was sent, from {@link #getQueuedNotifications(int)}
+	 */
+	public void removeQueuedNotifications(QueuedNotifications sent) {
+		long start = System.nanoTime();
+		try {
+			getWritableDatabase().delete(NotificationQueueTable.TABLE, NotificationQueueTable.COL_OWNER +
+					" = ? AND " + NotificationQueueTable.COL_ID + " <= ?",
+					new String[]{sent.owner, String.valueOf(sent.lastId)});
+		} finally {
+			METRIC_REMOVE_QUEUED_NOTIFICATIONS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Throw away every user's queued notifications, for example when notifications are turned off
+	 * on this device
+	 */
+	public void clearQueuedNotifications() {
+		long start = System.nanoTime();
+		try {
+			getWritableDatabase().delete(NotificationQueueTable.TABLE, null, null);
+		} finally {
+			METRIC_CLEAR_QUEUED_NOTIFICATIONS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Set who is logged in, so only their items are listed and changed, and the stock movements they
+	 * make are attributed to them. Runs on the writer, after any writes queued for the previous user.
+	 *
+	 * @param username The user's username, or `null` when nobody is logged in
+	 */
+	public void setCurrentUser(String username) {
+		long start = System.nanoTime();
+		try {
+			setOwner(username);
+			mWriteOwner = mOwner;
+
+			ContentValues values = new ContentValues();
+			values.put(LedgerUserTable.COL_ID, LedgerUserTable.ROW_ID);
+			values.put(LedgerUserTable.COL_USERNAME, username);
+			getWritableDatabase().insertWithOnConflict(LedgerUserTable.TABLE, null, values,
+					SQLiteDatabase.CONFLICT_REPLACE);
+		} finally {
+			METRIC_SET_CURRENT_USER.recordSince(start);
+		}
+	}
+
+	/**
+	 * Get an item's quantity at a point in time. Reads the last daily snapshot before that day and
+	 * adds up the movements since, so it never replays the whole history. Movements older than
+	 * {@link #STOCK_MOVEMENT_RETENTION_MS} have been folded into snapshots, so for those days this
+	 * returns the quantity at the start of the day.
+	 *
+	 * @param itemId The ID of the item
+	 * @param time   The point in time, in milliseconds since the epoch
+	 * @return The item's quantity at that time, 0 if it didn't exist yet
+	 */
+	public long getQuantityAt(long itemId, long time) {
+		long start = System.nanoTime();
+		try {
+			SQLiteDatabase db = getReadableDatabase();
+			long quantity = 0;
+			long movementsFrom = 0;
+
+			Cursor cursor = db.rawQuery("SELECT " + StockSnapshotsTable.COL_DAY + ", " + StockSnapshotsTable.COL_QUANTITY +
+					" FROM " + StockSnapshotsTable.TABLE + " WHERE " + StockSnapshotsTable.COL_ITEM_ID + " = ? AND " +
+					StockSnapshotsTable.COL_DAY + " < ? ORDER BY " + StockSnapshotsTable.COL_DAY + " DESC LIMIT 1",
+					new String[]{String.valueOf(itemId), String.valueOf(time / DAY_MS)});
+			try {
+				if (cursor.moveToFirst()) {
+					movementsFrom = (cursor.getLong(0) + 1) * DAY_MS;
+					quantity = cursor.getLong(1);
+				}
+			} finally {
+				cursor.close();
+			}
+
+			return quantity + DatabaseUtils.longForQuery(db, "SELECT IFNULL(SUM(" + StockMovementsTable.COL_DELTA +
+					"), 0) FROM " + StockMovementsTable.TABLE + " WHERE " + StockMovementsTable.COL_ITEM_ID + " = ? AND " +
+					StockMovementsTable.COL_CREATED_AT + " >= ? AND " + StockMovementsTable.COL_CREATED_AT + " <= ?",
+					new String[]{String.valueOf(itemId), String.valueOf(movementsFrom), String.valueOf(time)});
+		} finally {
+			METRIC_GET_QUANTITY_AT.recordSince(start);
+		}
+	}
+
+	/**
+	 * Fold stock movements from whole days before a point in time into daily snapshots and remove
+	 * them, so the ledger doesn't grow without bound
+	 *
+	 * @param before Movements from days that ended before this are folded, in milliseconds since the epoch
+	 * @return The number of movements folded
+	 */
+	public int compactStockMovements(long before) {
+		long start = System.nanoTime();
+		try {
+			// Never split a day between a snapshot and movements
+			long cutoff = (before / DAY_MS) * DAY_MS;
+			SQLiteDatabase db = getWritableDatabase();
+			int folded = 0;
+
+			db.beginTransaction();
+			try {
+				SQLiteStatement snapshot = db.compileStatement("INSERT OR REPLACE INTO " + StockSnapshotsTable.TABLE +
+						" (" + StockSnapshotsTable.COL_ITEM_ID + ", " + StockSnapshotsTable.COL_DAY + ", " +
+						StockSnapshotsTable.COL_QUANTITY + ") VALUES (?, ?, ?)");
+				Cursor cursor = db.rawQuery("SELECT " + StockMovementsTable.COL_ITEM_ID + ", " +
+						StockMovementsTable.COL_DELTA + ", " + StockMovementsTable.COL_CREATED_AT + " FROM " +
+						StockMovementsTable.TABLE + " WHERE " + StockMovementsTable.COL_CREATED_AT + " < ? ORDER BY " +
+						StockMovementsTable.COL_ITEM_ID + ", " + StockMovementsTable.COL_CREATED_AT,
+						new String[]{String.valueOf(cutoff)});
+				try {
+					long itemId = -1;
+					long day = -1;
+					long quantity = 0;
+					while (cursor.moveToNext()) {
+						long rowItemId = cursor.getLong(0);
+						long rowDay = cursor.getLong(2) / DAY_MS;
+
+						// Each item carries on from its last snapshot, and a snapshot is written at the
+						// end of each day the item moved
+						if (rowItemId != itemId || rowDay != day) {
+							if (itemId != -1) {
+								writeSnapshot(snapshot, itemId, day, quantity);
+							}
+							if (rowItemId != itemId) {
+								quantity = latestSnapshotQuantity(db, rowItemId);
+							}
+							itemId = rowItemId;
+							day = rowDay;
+						}
+						quantity += cursor.getLong(1);
+						folded++;
+					}
+					if (itemId != -1) {
+						writeSnapshot(snapshot, itemId, day, quantity);
+					}
+				} finally {
+					cursor.close();
+					snapshot.close();
+				}
+
+				db.delete(StockMovementsTable.TABLE, StockMovementsTable.COL_CREATED_AT + " < ?",
+						new String[]{String.valueOf(cutoff)});
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+
+			if (folded > 0) {
+				Log.i(LOG, "Folded " + folded + " stock movements into daily snapshots");
+			}
+			return folded;
+		} finally {
+			METRIC_COMPACT_STOCK_MOVEMENTS.recordSince(start);
+		}
+	}
+
+	/**
+	 * Get an item's quantity from its most recent daily snapshot
+	 *
+	 * @return The quantity, or 0 if the item has no snapshots
+	 */
+	private static long latestSnapshotQuantity(SQLiteDatabase db, long itemId) {
+		Cursor cursor = db.rawQuery("SELECT " + StockSnapshotsTable.COL_QUANTITY + " FROM " +
+				StockSnapshotsTable.TABLE + " WHERE " + StockSnapshotsTable.COL_ITEM_ID + " = ? ORDER BY " +
+				StockSnapshotsTable.COL_DAY + " DESC LIMIT 1", new String[]{String.valueOf(itemId)});
+		try {
+			return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Write an item's quantity at the end of a day
+	 */
+	private static void writeSnapshot(SQLiteStatement snapshot, long itemId, long day, long quantity) {
+		snapshot.bindLong(1, itemId);
+		snapshot.bindLong(2, day);
+		snapshot.bindLong(3, quantity);
+		snapshot.executeInsert();
+	}
+
+	/**
+	 * Delete one of the logged in user's items from the database
+	 *
+	 * @param item The item to delete
+	 * @return Whether the item was successfully deleted or not
+	 */
+	public boolean deleteItem(Item item) {
+		long start = System.nanoTime();
+		try {
+			// Reuse the compiled delete statement, binding the given item's ID and its owner
+			SQLiteStatement statement = mStatements.acquire(InventoryTable.SQL_DELETE);
+			synchronized (statement) {
+				statement.bindLong(1, item.getId());
+				statement.bindString(2, mWriteOwner);
+
+				// Check that the row was removed from the database
+				boolean deleted = statement.executeUpdateDelete() > 0;
+				mItemCache.remove(item.getId());
+				if (deleted) {
+					publish(ItemChanges.deleted(item.getId()));
+				}
+				return deleted;
+			}
+		} finally {
+			METRIC_DELETE_ITEM.recordSince(start);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		// Compiled statements hold on to the connection, so release them first
+		mStatements.clear();
+		super.close();
+	}
+
+	/**
+	 * Write an item through to the cache, unless it was written for a user who has since logged out
+	 * and so mustn't be read back from the cache
+	 *
+	 * @param item The item as written
+	 */
+	private void cacheWrite(Item item) {
+		if (mWriteOwner.equals(mOwner)) {
+			mItemCache.put(item);
+		} else {
+			mItemCache.remove(item.getId());
+		}
+	}
+
+	/**
+	 * End a transaction, dropping the cached items if it was rolled back, since the cache was
+	 * updated as each statement ran
+	 *
+	 * @param db        The database the transaction is on
+	 * @param committed Whether the transaction was marked successful
+	 */
+	private void endTransaction(SQLiteDatabase db, boolean committed) {
+		db.endTransaction();
+		if (!committed) {
+			mItemCache.clear();
+		}
+	}
+
+	/**
+	 * Read an item from a cursor whose first columns are {@link InventoryTable#ITEM_COLUMNS}
+	 *
+	 * @param cursor The cursor, positioned on the row to read
+	 * @return The item
+	 */
+	private static Item readItem(Cursor cursor) {
+		Integer lowStockThreshold = cursor.isNull(3) ? null : cursor.getInt(3);
+		return new Item(cursor.getLong(0), cursor.getString(1), cursor.getInt(2), lowStockThreshold);
+	}
+
+	/**
+	 * Bind a number argument, binding SQL NULL instead when the value is `null`
+	 *
+	 * @param statement The statement to bind to
+	 * @param index     The 1-based index of the argument
+	 * @param value     The value to bind
+	 */
+	private static void bindLongOrNull(SQLiteStatement statement, int index, Integer value) {
+		if (value == null) {
+			statement.bindNull(index);
+		} else {
+			statement.bindLong(index, value);
+		}
+	}
+
+	/**
+	 * Bind a string argument, binding SQL NULL instead when the value is `null`
+	 *
+	 * @param statement The statement to bind to
+	 * @param index     The 1-based index of the argument
+	 * @param value     The value to bind
+	 */
+	private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+		if (value == null) {
+			statement.bindNull(index);
+		} else {
+			statement.bindString(index, value);
+		}
 	}
 }
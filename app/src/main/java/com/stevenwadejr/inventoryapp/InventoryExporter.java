@@ -0,0 +1,197 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.database.Cursor;
+import android.os.CancellationSignal;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Exports the inventory as CSV or JSON by walking a database cursor and writing each row straight
+ * to the output, so memory use stays the same no matter how many items there are. The CSV format
+ * matches what {@link InventoryImporter} reads.
+ */
+public class InventoryExporter {
+
+	// Logcat tag
+	private static final String TAG = "InventoryExporter";
+
+	// Size of the output buffer
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	// How many rows to write between checks for cancellation
+	private static final int CANCEL_CHECK_INTERVAL = 256;
+
+	/**
+	 * The file formats the inventory can be exported as
+	 */
+	public enum Format {
+		CSV("text/csv", "inventory.csv"),
+		JSON("application/json", "inventory.json");
+
+		// MIME type and suggested file name for the format
+		public final String mimeType;
+		public final String fileName;
+
+		Format(String mimeType, String fileName) {
+			this.mimeType = mimeType;
+			this.fileName = fileName;
+		}
+	}
+
+	// An instance of the app's database
+	private final InventoryDatabase mInventoryDatabase;
+
+	/**
+	 * Constructor that takes an instance of the inventory database
+	 *
+	 * @param inventoryDb An instance of the inventory database
+	 */
+	public InventoryExporter(InventoryDatabase inventoryDb) {
+		mInventoryDatabase = inventoryDb;
+	}
+
+	/**
+	 * Export every item to a channel, such as a FileChannel
+	 *
+	 * @param channel            The channel to write to - left open
+	 * @param format             The format to write
+	 * @param cancellationSignal Stops the export early, may be `null`
+	 * @return The number of items written
+	 * @throws IOException If the output couldn't be written
+	 */
+	public int export(WritableByteChannel channel, Format format, CancellationSignal cancellationSignal)
+			throws IOException {
+		return export(Channels.newOutputStream(channel), format, cancellationSignal);
+	}
+
+	/**
+	 * Export every item to a stream. Must be called on a background thread. Cancelling throws an
+	 * {@link android.os.OperationCanceledException} and leaves a partial file behind.
+	 *
+	 * @param output             The stream to write to - flushed but left open
+	 * @param format             The format to write
+	 * @param cancellationSignal Stops the export early, may be `null`
+	 * @return The number of items written
+	 * @throws IOException If the output couldn't be written
+	 */
+	public int export(OutputStream output, Format format, CancellationSignal cancellationSignal)
+			throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), BUFFER_SIZE);
+		int count = 0;
+
+		Cursor cursor = mInventoryDatabase.getItemsCursor(cancellationSignal);
+		try {
+			if (format == Format.CSV) {
+				writer.write("name,quantity\n");
+			} else {
+				writer.write('[');
+			}
+
+			while (cursor.moveToNext()) {
+				if (cancellationSignal != null && count % CANCEL_CHECK_INTERVAL == 0) {
+					cancellationSignal.throwIfCanceled();
+				}
+
+				long id = cursor.getLong(0);
+				String name = cursor.isNull(1) ? "" : cursor.getString(1);
+				int quantity = cursor.getInt(2);
+
+				if (format == Format.CSV) {
+					writeCsvField(writer, name);
+					writer.write(',');
+					writer.write(Integer.toString(quantity));
+					writer.write('\n');
+				} else {
+					if (count > 0) {
+						writer.write(',');
+					}
+					writer.write("\n  {\"id\": ");
+					writer.write(Long.toString(id));
+					writer.write(", \"name\": ");
+					writeJsonString(writer, name);
+					writer.write(", \"quantity\": ");
+					writer.write(Integer.toString(quantity));
+					writer.write('}');
+				}
+				count++;
+			}
+
+			if (format == Format.JSON) {
+				writer.write(count > 0 ? "\n]\n" : "]\n");
+			}
+			writer.flush();
+		} finally {
+			cursor.close();
+		}
+
+		Log.i(TAG, "Exported " + count + " items as " + format);
+		return count;
+	}
+
+	/**
+	 * Write a CSV field, quoting it if it contains a comma, quote or line break
+	 */
+	private static void writeCsvField(Writer writer, String value) throws IOException {
+		boolean needsQuotes = false;
+		for (int i = 0; i < value.length() && !needsQuotes; i++) {
+			char c = value.charAt(i);
+			needsQuotes = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!needsQuotes) {
+			writer.write(value);
+			return;
+		}
+
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				writer.write('"');
+			}
+			writer.write(c);
+		}
+		writer.write('"');
+	}
+
+	/**
+	 * Write a JSON string literal, escaping quotes, backslashes and control characters
+	 */
+	private static void writeJsonString(Writer writer, String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\\':
+					writer.write("\\\\");
+					break;
+				case '\n':
+					writer.write("\\n");
+					break;
+				case '\r':
+					writer.write("\\r");
+					break;
+				case '\t':
+					writer.write("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						writer.write(String.format("\\u%04x", (int) c));
+					} else {
+						writer.write(c);
+					}
+			}
+		}
+		writer.write('"');
+	}
+}
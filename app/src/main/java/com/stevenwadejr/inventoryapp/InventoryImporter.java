@@ -0,0 +1,240 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports inventory items from a CSV file of `name,quantity` rows. The file is streamed a record at
+ * a time, so only one chunk of rows is ever held in memory, and each chunk is written in a single
+ * transaction. Items whose name already exists (ignoring case) have their quantity replaced instead
+ * of being added twice.
+ */
+public class InventoryImporter {
+
+	// Logcat tag
+	private static final String TAG = "InventoryImporter";
+
+	// Number of rows written per transaction
+	private static final int CHUNK_SIZE = 1000;
+
+	// An instance of the app's database
+	private final InventoryDatabase mInventoryDatabase;
+
+	/**
+	 * Notified after each chunk of rows is written
+	 */
+	public interface ProgressListener {
+		/**
+		 * Called on the importing thread after each chunk is committed
+		 *
+		 * @param rowsImported Number of rows written so far
+		 * @param bytesRead    Number of bytes read from the file so far
+		 */
+		void onProgress(int rowsImported, long bytesRead);
+	}
+
+	/**
+	 * Totals for a finished import
+	 */
+	public static final class Result {
+		// Number of new items added
+		public final int inserted;
+
+		// Number of existing items that were merged with a row from the file
+		public final int updated;
+
+		// Number of rows that couldn't be read as a name and a quantity
+		public final int skipped;
+
+		Result(int inserted, int updated, int skipped) {
+			this.inserted = inserted;
+			this.updated = updated;
+			this.skipped = skipped;
+		}
+	}
+
+	/**
+	 * Constructor that takes an instance of the inventory database
+	 *
+	 * @param inventoryDb An instance of the inventory database
+	 */
+	public InventoryImporter(InventoryDatabase inventoryDb) {
+		mInventoryDatabase = inventoryDb;
+	}
+
+	/**
+	 * Import every row of a CSV file. Must be called on a background thread.
+	 *
+	 * @param input    The CSV file's contents
+	 * @param listener Notified after each chunk is written, may be `null`
+	 * @return Totals for the import
+	 * @throws IOException If the file couldn't be read
+	 */
+	public Result importCsv(InputStream input, ProgressListener listener) throws IOException {
+		CountingInputStream counter = new CountingInputStream(input);
+		Reader reader = new BufferedReader(new InputStreamReader(counter, StandardCharsets.UTF_8));
+
+		String[] names = new String[CHUNK_SIZE];
+		int[] quantities = new int[CHUNK_SIZE];
+		int count = 0;
+		int inserted = 0;
+		int updated = 0;
+		int skipped = 0;
+
+		List<String> record = new ArrayList<>(2);
+		while (readRecord(reader, record)) {
+			// Rows without a name or a whole number for the quantity (like a header row) are skipped
+			String name = record.size() >= 2 ? record.get(0).trim() : "";
+			Integer quantity = record.size() >= 2 ? parseQuantity(record.get(1)) : null;
+			if (name.isEmpty() || quantity == null) {
+				if (!record.isEmpty()) {
+					skipped++;
+				}
+				continue;
+			}
+
+			names[count] = name;
+			quantities[count] = quantity;
+			count++;
+
+			if (count == CHUNK_SIZE) {
+				InventoryDatabase.UpsertResult result = mInventoryDatabase.upsertItems(names, quantities, count);
+				inserted += result.inserted;
+				updated += result.updated;
+				count = 0;
+				if (listener != null) {
+					listener.onProgress(inserted + updated, counter.getCount());
+				}
+			}
+		}
+
+		if (count > 0) {
+			InventoryDatabase.UpsertResult result = mInventoryDatabase.upsertItems(names, quantities, count);
+			inserted += result.inserted;
+			updated += result.updated;
+			if (listener != null) {
+				listener.onProgress(inserted + updated, counter.getCount());
+			}
+		}
+
+		Log.i(TAG, "Imported " + inserted + " new items, merged " + updated + ", skipped " + skipped);
+		return new Result(inserted, updated, skipped);
+	}
+
+	/**
+	 * Parse a quantity field
+	 *
+	 * @param value The raw field
+	 * @return The quantity, or `null` if the field isn't a whole number
+	 */
+	private static Integer parseQuantity(String value) {
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Read the next CSV record. Fields may be wrapped in double quotes to contain commas, line
+	 * breaks or (doubled) quotes.
+	 *
+	 * @param reader The reader to read from
+	 * @param fields Cleared and filled with the record's fields
+	 * @return `false` once the end of the file is reached
+	 * @throws IOException If the file couldn't be read
+	 */
+	static boolean readRecord(Reader reader, List<String> fields) throws IOException {
+		fields.clear();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		boolean sawAnything = false;
+
+		int c;
+		while ((c = reader.read()) != -1) {
+			sawAnything = true;
+			if (quoted) {
+				if (c == '"') {
+					reader.mark(1);
+					int next = reader.read();
+					if (next == '"') {
+						field.append('"');
+					} else {
+						quoted = false;
+						if (next != -1) {
+							reader.reset();
+						}
+					}
+				} else {
+					field.append((char) c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\n') {
+				break;
+			} else if (c != '\r') {
+				field.append((char) c);
+			}
+		}
+
+		if (!sawAnything) {
+			return false;
+		}
+		if (field.length() > 0 || !fields.isEmpty()) {
+			fields.add(field.toString());
+		}
+		return true;
+	}
+
+	/**
+	 * Keeps track of how many bytes have been read so progress can be reported
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+		private long mCount;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		long getCount() {
+			return mCount;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b != -1) {
+				mCount++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read > 0) {
+				mCount += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			mCount += skipped;
+			return skipped;
+		}
+	}
+}
@@ -1,35 +1,110 @@
 package com.stevenwadejr.inventoryapp;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import android.app.AlertDialog;
+import android.content.DialogInterface;
 import android.content.Intent;
+import android.net.Uri;
 import android.nfc.Tag;
 import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
+import android.widget.EditText;
+import android.widget.ProgressBar;
 import android.widget.TextView;
+import android.widget.Toast;
 
+import com.google.android.material.snackbar.Snackbar;
+
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class InventoryListActivity extends AppCompatActivity {
 
 	// Logcat tag
 	private static final String TAG = "InventoryList";
 
-	// List of all inventory items
-	private List<Item> mItemList;
+	// Request code for picking a CSV file to import
+	private static final int REQUEST_IMPORT_CSV = 1;
+
+	// Request codes for picking where to save an export
+	private static final int REQUEST_EXPORT_CSV = 2;
+	private static final int REQUEST_EXPORT_JSON = 3;
+
+	// How long to wait after a keystroke before searching
+	private static final long SEARCH_DEBOUNCE_MS = 150;
+
+	// Paged list of inventory items
+	private PagedItemList mItemList;
 
 	// Instance of the app database
-	InventoryDatabase inventoryDatabase;
+	AsyncInventoryDatabase inventoryDatabase;
+
+	// Adapter for the list of inventory items
+	private ItemAdapter mAdapter;
 
 	// View elements
 	RecyclerView itemListView;
 	TextView emptyListView;
+	TextView summaryView;
+	ProgressBar importProgressBar;
+
+	// Cancels the running export, or `null` when nothing is being exported
+	private CancellationSignal mExportSignal;
+
+	// Alerts about items running low while this screen is open
+	private LowStockMonitor mLowStockMonitor;
+
+	// Shows low stock alerts as they arrive
+	private final LowStockMonitor.Listener mLowStockListener = new LowStockMonitor.Listener() {
+		@Override
+		public void onLowStock(List<LowStockEvent> events) {
+			String message = events.size() == 1
+					? getString(R.string.low_stock_alert, events.get(0).name, events.get(0).quantity)
+					: getString(R.string.low_stock_alert_many, events.size());
+			Toast.makeText(InventoryListActivity.this, message, Toast.LENGTH_LONG).show();
+		}
+	};
+
+	// Refreshes the totals in the header whenever items change
+	private final InventoryDatabase.ChangeListener mSummaryListener = new InventoryDatabase.ChangeListener() {
+		@Override
+		public void onItemsChanged(InventoryDatabase.ItemChanges changes) {
+			loadSummary();
+		}
+	};
+
+	// Runs searches once the user stops typing
+	private final Handler mSearchHandler = new Handler(Looper.getMainLooper());
+
+	// The text being searched for, which is searched once the debounce delay passes
+	private String mPendingQuery;
+
+	// Cancels the search that's running, or `null` when none is
+	private CancellationSignal mSearchSignal;
+
+	// Searches for the pending query
+	private final Runnable mRunSearch = new Runnable() {
+		@Override
+		public void run() {
+			search(mPendingQuery);
+		}
+	};
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -38,9 +113,11 @@ public class InventoryListActivity extends AppCompatActivity {
 		overridePendingTransition(R.anim.slide_in_left, R.anim.slide_out_right);
 		setContentView(R.layout.activity_inventory_list);
 
-		// Initialize the database and fetch all inventory items
-		inventoryDatabase = InventoryDatabase.getInstance(getApplicationContext());
-		mItemList = inventoryDatabase.getItems();
+		// Initialize the database and a paged list of inventory items, starting from the page read
+		// while the user was logging in if it's still fresh. Further pages are fetched in the
+		// background as the user scrolls to them.
+		inventoryDatabase = AsyncInventoryDatabase.getInstance(getApplicationContext());
+		mItemList = new PagedItemList(inventoryDatabase, StartupPrefetcher.getInstance(this).take());
 
 		// Set up the Recycler View, adding dividers between each element
 		LinearLayoutManager layoutManager = new LinearLayoutManager(this);
@@ -50,34 +127,144 @@ public class InventoryListActivity extends AppCompatActivity {
 				layoutManager.getOrientation());
 		itemListView.addItemDecoration(dividerItemDecoration);
 
-		// Find the view when there are no items
+		// Find the view when there are no items, and the progress bar shown while importing
 		emptyListView = findViewById(R.id.emptyListView);
+		summaryView = findViewById(R.id.inventorySummaryView);
+
+		// Long-pressing the totals opens the hidden debug metrics screen
+		summaryView.setOnLongClickListener(new View.OnLongClickListener() {
+			@Override
+			public boolean onLongClick(View v) {
+				startActivity(new Intent(InventoryListActivity.this, MetricsActivity.class));
+				return true;
+			}
+		});
+		importProgressBar = findViewById(R.id.importProgressBar);
 
 		// Send items to recycler view
-		ItemAdapter adapter = new ItemAdapter(mItemList, this, inventoryDatabase);
-		adapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
+		mAdapter = new ItemAdapter(mItemList, this, inventoryDatabase);
+		// Refreshes are diffed, so adding the first item or removing the last one arrives as a range
+		// insert or remove rather than a full change
+		mAdapter.registerAdapterDataObserver(new RecyclerView.AdapterDataObserver() {
 			@Override
 			public void onChanged() {
 				super.onChanged();
 				checkListIsEmpty();
 			}
+
+			@Override
+			public void onItemRangeInserted(int positionStart, int itemCount) {
+				super.onItemRangeInserted(positionStart, itemCount);
+				checkListIsEmpty();
+			}
+
+			@Override
+			public void onItemRangeRemoved(int positionStart, int itemCount) {
+				super.onItemRangeRemoved(positionStart, itemCount);
+				checkListIsEmpty();
+			}
 		});
 
-		itemListView.setAdapter(adapter);
+		itemListView.setAdapter(mAdapter);
+
+		// Keep the list up to date with items added, edited or deleted anywhere in the app, so it
+		// can stay alive while another screen makes changes
+		inventoryDatabase.addChangeListener(mAdapter);
+		inventoryDatabase.addChangeListener(mSummaryListener);
+		loadSummary();
+
+		// Let the user know when a change drops an item to its low stock threshold
+		mLowStockMonitor = LowStockMonitor.getInstance(this);
+		mLowStockMonitor.addListener(mLowStockListener);
+
+		// Keep the stock movement ledger from growing without bound
+		inventoryDatabase.compactStockMovements(null);
 
 		// Check to see if the list is empty - showing the appropriate child view
 		checkListIsEmpty();
 	}
 
+	@Override
+	protected void onPause() {
+		super.onPause();
+		// Don't leave quantity changes sitting in memory when the user leaves this screen
+		mAdapter.flushPendingWrites();
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		inventoryDatabase.removeChangeListener(mAdapter);
+		inventoryDatabase.removeChangeListener(mSummaryListener);
+		mLowStockMonitor.removeListener(mLowStockListener);
+
+		// Nobody is left to report an export or search to
+		if (mExportSignal != null) {
+			mExportSignal.cancel();
+		}
+		mSearchHandler.removeCallbacks(mRunSearch);
+		cancelSearch();
+	}
+
 	@Override
 	public boolean onCreateOptionsMenu(Menu menu) {
 		// Show the app bar menu
 		getMenuInflater().inflate(R.menu.appbar_menu, menu);
+
+		// Search as the user types
+		SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+		searchView.setQueryHint(getString(R.string.search_items));
+		searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+			@Override
+			public boolean onQueryTextSubmit(String query) {
+				// Skip the wait when the user presses search
+				mSearchHandler.removeCallbacks(mRunSearch);
+				search(query);
+				searchView.clearFocus();
+				return true;
+			}
+
+			@Override
+			public boolean onQueryTextChange(String query) {
+				scheduleSearch(query);
+				return true;
+			}
+		});
 		return true;
 	}
 
+	@Override
+	public boolean onPrepareOptionsMenu(Menu menu) {
+		// Check the sort and filter the list is using
+		ItemQuery query = mItemList.getQuery();
+		int sortId;
+		switch (query.sortKey) {
+			case NAME:
+				sortId = R.id.action_sort_name;
+				break;
+			case QUANTITY:
+				sortId = R.id.action_sort_quantity;
+				break;
+			default:
+				sortId = R.id.action_sort_added;
+		}
+		menu.findItem(sortId).setChecked(true);
+		menu.findItem(R.id.action_sort_descending).setChecked(query.descending);
+
+		int stockFilterId = R.id.action_filter_all;
+		if (query.maxQuantity != null && query.maxQuantity == 0) {
+			stockFilterId = R.id.action_filter_out_of_stock;
+		} else if (query.minQuantity != null) {
+			stockFilterId = R.id.action_filter_in_stock;
+		}
+		menu.findItem(stockFilterId).setChecked(true);
+		menu.findItem(R.id.action_filter_name_prefix).setChecked(query.namePrefix != null);
+		return super.onPrepareOptionsMenu(menu);
+	}
+
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
+		ItemQuery query = mItemList.getQuery();
 		Intent intent;
 		switch (item.getItemId()) {
 			case R.id.action_add_item:
@@ -87,6 +274,59 @@ public class InventoryListActivity extends AppCompatActivity {
 				startActivity(intent);
 				return true;
 
+			case R.id.action_import:
+				// Let the user pick a CSV file of name,quantity rows to import
+				Log.d(TAG, "Import CSV");
+				intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+				intent.addCategory(Intent.CATEGORY_OPENABLE);
+				intent.setType("text/*");
+				startActivityForResult(intent, REQUEST_IMPORT_CSV);
+				return true;
+
+			case R.id.action_export_csv:
+				// Let the user pick where to save the inventory as CSV
+				Log.d(TAG, "Export CSV");
+				startActivityForResult(createExportIntent(InventoryExporter.Format.CSV), REQUEST_EXPORT_CSV);
+				return true;
+
+			case R.id.action_export_json:
+				// Let the user pick where to save the inventory as JSON
+				Log.d(TAG, "Export JSON");
+				startActivityForResult(createExportIntent(InventoryExporter.Format.JSON), REQUEST_EXPORT_JSON);
+				return true;
+
+			case R.id.action_sort_added:
+				setQuery(query.withSort(ItemQuery.SortKey.ID, query.descending));
+				return true;
+
+			case R.id.action_sort_name:
+				setQuery(query.withSort(ItemQuery.SortKey.NAME, query.descending));
+				return true;
+
+			case R.id.action_sort_quantity:
+				setQuery(query.withSort(ItemQuery.SortKey.QUANTITY, query.descending));
+				return true;
+
+			case R.id.action_sort_descending:
+				setQuery(query.withSort(query.sortKey, !query.descending));
+				return true;
+
+			case R.id.action_filter_all:
+				setQuery(query.withQuantityRange(null, null));
+				return true;
+
+			case R.id.action_filter_in_stock:
+				setQuery(query.withQuantityRange(1, null));
+				return true;
+
+			case R.id.action_filter_out_of_stock:
+				setQuery(query.withQuantityRange(0, 0));
+				return true;
+
+			case R.id.action_filter_name_prefix:
+				showNamePrefixDialog();
+				return true;
+
 			case R.id.action_toggle_notifications:
 				// Switch to the notifications setting screen
 				Log.d(TAG, "SMS Notifications view");
@@ -95,9 +335,16 @@ public class InventoryListActivity extends AppCompatActivity {
 				return true;
 
 			case R.id.action_logout:
-				// Log the user out by returning to the login screen
+				// Log the user out by revoking their session and returning to the login screen, clearing
+				// the back stack so nothing behind it is still logged in
 				Log.d(TAG, "Logging out");
+				SessionStore.getInstance(this).end();
+
+				// Queue the last quantity changes ahead of the logout, so they're still made for this user
+				mAdapter.flushPendingWrites();
+				inventoryDatabase.setCurrentUser(null, null);
 				intent = new Intent(getApplicationContext(), LoginActivity.class);
+				intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
 				startActivity(intent);
 				return true;
 
@@ -106,12 +353,297 @@ public class InventoryListActivity extends AppCompatActivity {
 		}
 	}
 
+	@Override
+	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+		super.onActivityResult(requestCode, resultCode, data);
+		if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+			return;
+		}
+
+		switch (requestCode) {
+			case REQUEST_IMPORT_CSV:
+				importCsv(data.getData());
+				break;
+			case REQUEST_EXPORT_CSV:
+				export(data.getData(), InventoryExporter.Format.CSV);
+				break;
+			case REQUEST_EXPORT_JSON:
+				export(data.getData(), InventoryExporter.Format.JSON);
+				break;
+		}
+	}
+
+	/**
+	 * Search once the user stops typing. Each keystroke cancels the search that's running, and
+	 * clearing the search box goes straight back to the whole inventory.
+	 *
+	 * @param query The text in the search box
+	 */
+	private void scheduleSearch(String query) {
+		mSearchHandler.removeCallbacks(mRunSearch);
+		cancelSearch();
+
+		if (query == null || query.trim().isEmpty()) {
+			mPendingQuery = null;
+			mAdapter.clearSearchResults();
+			return;
+		}
+
+		mPendingQuery = query;
+		mSearchHandler.postDelayed(mRunSearch, SEARCH_DEBOUNCE_MS);
+	}
+
+	/**
+	 * Search item names in the background and show the matches
+	 *
+	 * @param query The text to search for
+	 */
+	private void search(String query) {
+		mPendingQuery = query;
+		cancelSearch();
+		if (query == null || query.trim().isEmpty()) {
+			mAdapter.clearSearchResults();
+			return;
+		}
+
+		final CancellationSignal signal = new CancellationSignal();
+		mSearchSignal = signal;
+		inventoryDatabase.searchItems(query, signal, new AsyncInventoryDatabase.Callback<List<Item>>() {
+			@Override
+			public void onResult(List<Item> items) {
+				// Ignore results for a query the user has already typed past
+				if (mSearchSignal != signal) {
+					return;
+				}
+				mSearchSignal = null;
+				mAdapter.showSearchResults(items);
+			}
+
+			@Override
+			public void onError(Exception e) {
+				if (mSearchSignal == signal) {
+					mSearchSignal = null;
+				}
+				if (!(e instanceof OperationCanceledException)) {
+					AsyncInventoryDatabase.Callback.super.onError(e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Cancel the search that's running, if any
+	 */
+	private void cancelSearch() {
+		if (mSearchSignal != null) {
+			mSearchSignal.cancel();
+			mSearchSignal = null;
+		}
+	}
+
+	/**
+	 * Build an intent that asks the user where to save an export
+	 *
+	 * @param format The format being exported
+	 * @return The intent
+	 */
+	private Intent createExportIntent(InventoryExporter.Format format) {
+		Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+		intent.addCategory(Intent.CATEGORY_OPENABLE);
+		intent.setType(format.mimeType);
+		intent.putExtra(Intent.EXTRA_TITLE, format.fileName);
+		return intent;
+	}
+
+	/**
+	 * Export the inventory on a background reader thread, streaming rows straight into the file.
+	 * A snackbar lets the user cancel the export while it runs.
+	 *
+	 * @param uri    The file to write
+	 * @param format The format to write
+	 */
+	private void export(Uri uri, InventoryExporter.Format format) {
+		if (mExportSignal != null) {
+			mExportSignal.cancel();
+		}
+		// Flush queued quantity changes first so the export includes them
+		mAdapter.flushPendingWrites();
+
+		final CancellationSignal signal = new CancellationSignal();
+		mExportSignal = signal;
+		final Snackbar snackbar = Snackbar.make(itemListView, R.string.exporting, Snackbar.LENGTH_INDEFINITE);
+		snackbar.setAction(R.string.cancel, new View.OnClickListener() {
+			@Override
+			public void onClick(View view) {
+				signal.cancel();
+			}
+		});
+		snackbar.show();
+
+		InventoryExporter exporter = new InventoryExporter(inventoryDatabase.getBlockingDatabase());
+		inventoryDatabase.read(new Callable<Integer>() {
+			@Override
+			public Integer call() throws Exception {
+				ParcelFileDescriptor file = getContentResolver().openFileDescriptor(uri, "wt");
+				try (FileOutputStream output = new ParcelFileDescriptor.AutoCloseOutputStream(file)) {
+					FileChannel channel = output.getChannel();
+					return exporter.export(channel, format, signal);
+				}
+			}
+		}, new AsyncInventoryDatabase.Callback<Integer>() {
+			@Override
+			public void onResult(Integer count) {
+				finishExport(signal, snackbar);
+				Toast.makeText(InventoryListActivity.this, getString(R.string.export_complete, count),
+						Toast.LENGTH_SHORT).show();
+			}
+
+			@Override
+			public void onError(Exception e) {
+				finishExport(signal, snackbar);
+				if (e instanceof OperationCanceledException) {
+					Log.d(TAG, "Export cancelled");
+					Toast.makeText(InventoryListActivity.this, R.string.export_cancelled, Toast.LENGTH_SHORT).show();
+					return;
+				}
+				AsyncInventoryDatabase.Callback.super.onError(e);
+				Toast.makeText(InventoryListActivity.this, R.string.export_error, Toast.LENGTH_SHORT).show();
+			}
+		});
+	}
+
+	/**
+	 * Tidy up after an export finishes, unless a newer export has replaced it
+	 */
+	private void finishExport(CancellationSignal signal, Snackbar snackbar) {
+		snackbar.dismiss();
+		if (mExportSignal == signal) {
+			mExportSignal = null;
+		}
+	}
+
+	/**
+	 * Import a CSV file on the database's writer thread, showing progress as chunks are written
+	 *
+	 * @param uri The file to import
+	 */
+	private void importCsv(Uri uri) {
+		// Flush queued quantity changes first so the import sees them
+		mAdapter.flushPendingWrites();
+		importProgressBar.setProgress(0);
+		importProgressBar.setIndeterminate(true);
+		importProgressBar.setVisibility(View.VISIBLE);
+
+		InventoryImporter importer = new InventoryImporter(inventoryDatabase.getBlockingDatabase());
+		inventoryDatabase.write(new Callable<InventoryImporter.Result>() {
+			@Override
+			public InventoryImporter.Result call() throws Exception {
+				ParcelFileDescriptor file = getContentResolver().openFileDescriptor(uri, "r");
+				final long totalBytes = file.getStatSize();
+				try (InputStream input = new ParcelFileDescriptor.AutoCloseInputStream(file)) {
+					return importer.importCsv(input, new InventoryImporter.ProgressListener() {
+						@Override
+						public void onProgress(int rowsImported, long bytesRead) {
+							runOnUiThread(new Runnable() {
+								@Override
+								public void run() {
+									showImportProgress(bytesRead, totalBytes);
+								}
+							});
+						}
+					});
+				}
+			}
+		}, new AsyncInventoryDatabase.Callback<InventoryImporter.Result>() {
+			@Override
+			public void onResult(InventoryImporter.Result result) {
+				importProgressBar.setVisibility(View.GONE);
+				Toast.makeText(InventoryListActivity.this,
+						getString(R.string.import_complete, result.inserted, result.updated),
+						Toast.LENGTH_LONG).show();
+			}
+
+			@Override
+			public void onError(Exception e) {
+				AsyncInventoryDatabase.Callback.super.onError(e);
+				importProgressBar.setVisibility(View.GONE);
+				Toast.makeText(InventoryListActivity.this, R.string.import_error, Toast.LENGTH_SHORT).show();
+			}
+		});
+	}
+
+	/**
+	 * Update the import progress bar
+	 *
+	 * @param bytesRead  Number of bytes of the file read so far
+	 * @param totalBytes Size of the file, or a negative number if it isn't known
+	 */
+	private void showImportProgress(long bytesRead, long totalBytes) {
+		if (totalBytes <= 0) {
+			return;
+		}
+		importProgressBar.setIndeterminate(false);
+		importProgressBar.setMax(100);
+		importProgressBar.setProgress((int) Math.min(100, bytesRead * 100 / totalBytes));
+	}
+
+	/**
+	 * Read the inventory totals in the background and show them in the header
+	 */
+	private void loadSummary() {
+		inventoryDatabase.getSummary(new AsyncInventoryDatabase.Callback<InventoryDatabase.Summary>() {
+			@Override
+			public void onResult(InventoryDatabase.Summary summary) {
+				summaryView.setText(getString(R.string.inventory_summary, summary.itemCount,
+						summary.totalQuantity, summary.outOfStockCount, summary.lowStockCount));
+			}
+		});
+	}
+
+	/**
+	 * Sort or filter the list. The database does the work in SQL, and the list reloads from the top.
+	 *
+	 * @param query The items to list and their order
+	 */
+	private void setQuery(ItemQuery query) {
+		mItemList.setQuery(query);
+		itemListView.scrollToPosition(0);
+		invalidateOptionsMenu();
+	}
+
+	/**
+	 * Ask for the start of the item names to show
+	 */
+	private void showNamePrefixDialog() {
+		final EditText input = new EditText(this);
+		input.setSingleLine(true);
+		input.setHint(R.string.filter_name_prefix_hint);
+		input.setText(mItemList.getQuery().namePrefix);
+
+		new AlertDialog.Builder(this).setTitle(R.string.filter_name_prefix).setView(input)
+				.setPositiveButton(R.string.apply, new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						setQuery(mItemList.getQuery().withNamePrefix(input.getText().toString().trim()));
+					}
+				})
+				.setNeutralButton(R.string.clear, new DialogInterface.OnClickListener() {
+					@Override
+					public void onClick(DialogInterface dialog, int which) {
+						setQuery(mItemList.getQuery().withNamePrefix(null));
+					}
+				})
+				.setNegativeButton(R.string.cancel, null).show();
+	}
+
 	/**
 	 * Set the child views to visible or hidden depending on if there are items in the list or not
 	 */
 	public void checkListIsEmpty() {
 		Log.d(TAG, "Inventory size: " + mItemList.size());
-		if (mItemList.isEmpty()) {
+		// Don't claim the inventory is empty before it's been counted
+		if (!mAdapter.isShowingSearchResults() && mItemList.isLoaded() && mItemList.isEmpty()) {
+			emptyListView.setText(mItemList.getQuery().isFiltered() ? R.string.empty_filtered_list : R.string.empty_list);
 			itemListView.setVisibility(View.GONE);
 			emptyListView.setVisibility(View.VISIBLE);
 		} else {
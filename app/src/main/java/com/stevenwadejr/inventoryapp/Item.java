@@ -1,12 +1,36 @@
 package com.stevenwadejr.inventoryapp;
 
-import java.io.Serializable;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+public class Item implements Parcelable {
+
+	/**
+	 * Recreates items written to a parcel
+	 */
+	public static final Parcelable.Creator<Item> CREATOR = new Parcelable.Creator<Item>() {
+		@Override
+		public Item createFromParcel(Parcel source) {
+			long id = source.readLong();
+			String name = source.readString();
+			int quantity = source.readInt();
+			Integer lowStockThreshold = source.readInt() != 0 ? source.readInt() : null;
+			return new Item(id, name, quantity, lowStockThreshold);
+		}
+
+		@Override
+		public Item[] newArray(int size) {
+			return new Item[size];
+		}
+	};
 
-public class Item implements Serializable {
 	private long mId;
 	private String mName;
 	private int mQuantity;
 
+	// Alert when the quantity drops to this level, or `null` for no alerts
+	private Integer mLowStockThreshold;
+
 	/**
 	 * Default constructor
 	 */
@@ -38,6 +62,19 @@ public class Item implements Serializable {
 		mQuantity = quantity;
 	}
 
+	/**
+	 * Constructor that takes id, name, quantity, and low stock threshold
+	 *
+	 * @param id                The ID of the item
+	 * @param name              The name of the item
+	 * @param quantity          The quantity of the item
+	 * @param lowStockThreshold The quantity to alert at, or `null` for no alerts
+	 */
+	public Item(long id, String name, int quantity, Integer lowStockThreshold) {
+		this(id, name, quantity);
+		mLowStockThreshold = lowStockThreshold;
+	}
+
 	public long getId() {
 		return mId;
 	}
@@ -67,6 +104,19 @@ public class Item implements Serializable {
 		this.mQuantity = Math.max(0, quantity);
 	}
 
+	public Integer getLowStockThreshold() {
+		return mLowStockThreshold;
+	}
+
+	/**
+	 * Set the quantity at which the item counts as running low
+	 *
+	 * @param lowStockThreshold The threshold, or `null` for no alerts
+	 */
+	public void setLowStockThreshold(Integer lowStockThreshold) {
+		this.mLowStockThreshold = lowStockThreshold;
+	}
+
 	/**
 	 * Increase the item's quantity by one
 	 */
@@ -80,4 +130,20 @@ public class Item implements Serializable {
 	public void decrementQuantity() {
 		this.mQuantity = Math.max(0, this.mQuantity - 1);
 	}
+
+	@Override
+	public int describeContents() {
+		return 0;
+	}
+
+	@Override
+	public void writeToParcel(Parcel dest, int flags) {
+		dest.writeLong(mId);
+		dest.writeString(mName);
+		dest.writeInt(mQuantity);
+		dest.writeInt(mLowStockThreshold != null ? 1 : 0);
+		if (mLowStockThreshold != null) {
+			dest.writeInt(mLowStockThreshold);
+		}
+	}
 }
@@ -17,113 +17,347 @@ import android.widget.PopupMenu;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
 
-public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemHolder> {
+public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemHolder>
+		implements PagedItemList.Listener, InventoryDatabase.ChangeListener {
 
 	// Logcat tag
 	private static final String TAG = "ItemAdapter";
 
-	// Collection of inventory items in this list/adapter
-	private List<Item> mItems;
+	// Latency of binding a row
+	private static final LatencyHistogram METRIC_BIND = Metrics.histogram("adapter.onBindViewHolder");
+
+	// Time from creating the list to showing its first real row
+	private static final LatencyHistogram METRIC_TIME_TO_FIRST_ROW = Metrics.histogram("startup.timeToFirstRow");
+
+	// Paged collection of inventory items in this list/adapter
+	private PagedItemList mItems;
+
+	// Matches for the current search, or `null` when the whole inventory is shown
+	private List<Item> mSearchResults;
 
 	// A context that this item adapter is running in
 	private Context mCtx;
 
 	// An instance of the app's database
-	InventoryDatabase inventoryDatabase;
+	AsyncInventoryDatabase inventoryDatabase;
+
+	// Batches quantity changes from the list rows into as few database writes as possible
+	private final QuantityWriteCoalescer mQuantityWriter;
+
+	// When the list was created, or 0 once its first row has been shown
+	private long mCreatedAt = System.nanoTime();
 
 	/**
-	 * Constructor that takes in a list of inventory items, an app context, and an instance
+	 * Constructor that takes in a paged list of inventory items, an app context, and an instance
 	 * of the inventory database.
 	 *
-	 * @param items       Inventory items
+	 * @param items       Paged inventory items
 	 * @param ctx         A given app context
 	 * @param inventoryDb An instance of the inventory database
 	 */
-	public ItemAdapter(List<Item> items, Context ctx, InventoryDatabase inventoryDb) {
+	public ItemAdapter(PagedItemList items, Context ctx, AsyncInventoryDatabase inventoryDb) {
 		mItems = items;
 		mCtx = ctx;
 		inventoryDatabase = inventoryDb;
+		mQuantityWriter = new QuantityWriteCoalescer(inventoryDb);
+		mItems.setListener(this);
+
+		// Rows keep their view across refreshes, so only rows that changed are rebound
+		setHasStableIds(true);
+	}
+
+	@Override
+	public void onItemsInvalidated() {
+		if (mSearchResults == null) {
+			notifyDataSetChanged();
+		}
+	}
+
+	@Override
+	public void onItemsLoaded(int positionStart, int itemCount) {
+		if (mSearchResults != null) {
+			return;
+		}
+
+		// Rebind the placeholder rows that were waiting on this page
+		int count = Math.min(itemCount, getItemCount() - positionStart);
+		if (count > 0) {
+			notifyItemRangeChanged(positionStart, count);
+		}
+	}
+
+	@Override
+	public void onItemsRefreshed(PagedItemList.Refresh refresh) {
+		if (mSearchResults == null) {
+			refresh.dispatchUpdatesTo(new AdapterListUpdateCallback(this));
+		}
+	}
+
+	@Override
+	public void onItemsChanged(InventoryDatabase.ItemChanges changes) {
+		if (changes.everything) {
+			mItems.invalidate();
+			return;
+		}
+
+		// Adding or removing rows shifts the positions after them, so diff the loaded rows.
+		// Otherwise only the changed rows need to be read again.
+		if (!changes.inserted.isEmpty() || !changes.deleted.isEmpty()) {
+			mItems.refresh();
+		} else {
+			mItems.reloadItems(withoutPendingWrites(changes.updated));
+		}
+
+		if (mSearchResults != null) {
+			updateSearchResults(changes);
+		}
+	}
+
+	/**
+	 * Leave out items whose row has a quantity change that hasn't been written yet, since reading
+	 * them back would overwrite what the user just typed
+	 *
+	 * @param ids The IDs of changed items
+	 * @return The IDs that are safe to reload
+	 */
+	private List<Long> withoutPendingWrites(Iterable<Long> ids) {
+		List<Long> reload = new ArrayList<>();
+		for (Long id : ids) {
+			if (!mQuantityWriter.hasPending(id)) {
+				reload.add(id);
+			}
+		}
+		return reload;
+	}
+
+	/**
+	 * Drop deleted items from the search results and read changed ones again
+	 *
+	 * @param changes The items that changed
+	 */
+	private void updateSearchResults(InventoryDatabase.ItemChanges changes) {
+		final List<Item> results = mSearchResults;
+		final List<Long> reload = new ArrayList<>();
+		boolean removed = false;
+		for (Iterator<Item> iterator = results.iterator(); iterator.hasNext(); ) {
+			long id = iterator.next().getId();
+			if (changes.deleted.contains(id)) {
+				iterator.remove();
+				removed = true;
+			} else if (changes.updated.contains(id) && !mQuantityWriter.hasPending(id)) {
+				reload.add(id);
+			}
+		}
+		if (removed) {
+			notifyDataSetChanged();
+		}
+		if (reload.isEmpty()) {
+			return;
+		}
+
+		final InventoryDatabase db = inventoryDatabase.getBlockingDatabase();
+		inventoryDatabase.read(new Callable<List<Item>>() {
+			@Override
+			public List<Item> call() {
+				List<Item> items = new ArrayList<>(reload.size());
+				for (Long id : reload) {
+					Item item = db.getItem(id);
+					if (item != null) {
+						items.add(item);
+					}
+				}
+				return items;
+			}
+		}, new AsyncInventoryDatabase.Callback<List<Item>>() {
+			@Override
+			public void onResult(List<Item> items) {
+				// Skip it if the user has searched for something else since
+				if (mSearchResults != results) {
+					return;
+				}
+				for (Item item : items) {
+					for (int i = 0; i < results.size(); i++) {
+						if (results.get(i).getId() == item.getId()) {
+							results.set(i, item);
+							notifyItemChanged(i);
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Show the matches for a search instead of the whole inventory
+	 *
+	 * @param results The matching items
+	 */
+	public void showSearchResults(List<Item> results) {
+		mSearchResults = results;
+		notifyDataSetChanged();
+	}
+
+	/**
+	 * Go back to showing the whole inventory after a search
+	 */
+	public void clearSearchResults() {
+		if (mSearchResults != null) {
+			mSearchResults = null;
+			notifyDataSetChanged();
+		}
+	}
+
+	/**
+	 * Check whether the list is showing search results
+	 *
+	 * @return `true` while search results are shown
+	 */
+	public boolean isShowingSearchResults() {
+		return mSearchResults != null;
+	}
+
+	/**
+	 * Write any quantity changes that are still waiting in the queue
+	 */
+	public void flushPendingWrites() {
+		mQuantityWriter.flush();
 	}
 
 	@Override
 	public ItemHolder onCreateViewHolder(ViewGroup parent, int viewType) {
 		// Create an instance of the child view
 		final View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.inventory_item, parent, false);
-		return new ItemHolder(view, inventoryDatabase);
+		return new ItemHolder(view, mQuantityWriter);
 	}
 
 	@Override
 	public void onBindViewHolder(ItemHolder holder, int position) {
-		// Find the inventory item at the current position and bind its data to the item holder view
-		Item item = mItems.get(position);
-		holder.bind(item);
+		long start = System.nanoTime();
+		try {
+			// Find the inventory item at the current position (fetching its page if it isn't loaded yet)
+			// and bind its data to the item holder view
+			Item item = getItem(position);
+			holder.bind(item);
 
-		// Listen to the click on the child view's "more actions" button
-		holder.mItemActionsBtn.setOnClickListener(new View.OnClickListener() {
-			@Override
-			public void onClick(View v) {
-				// Show a popup menu for this child
-				PopupMenu popup = new PopupMenu(mCtx, holder.mItemActionsBtn);
-				// Inflating menu from xml resource
-				popup.inflate(R.menu.inventory_item_actions_menu);
-				// Adding click listener
-				popup.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
-					@Override
-					public boolean onMenuItemClick(MenuItem menuItem) {
-						switch (menuItem.getItemId()) {
-							case R.id.menu_edit:
-								// Navigate to the edit screen and pass in the current item
-								// as extra data to the destination view.
-								Log.i(TAG, "edit item at position " + position);
-
-								Intent intent = new Intent(mCtx, EditItemActivity.class);
-								intent.putExtra(EditItemActivity.EXTRA_ITEM, item);
-								mCtx.startActivity(intent);
-
-								return true;
-							case R.id.menu_remove:
-								// Delete the current item from the database and the list
-								Log.i(TAG, "remove item at position " + position);
-
-								// Wrap the delete action in a confirmation dialog
-								new AlertDialog.Builder(mCtx).setIcon(android.R.drawable.ic_dialog_alert)
-										.setTitle(R.string.delete_confirmation_title).setMessage(R.string.delete_confirmation)
-										.setPositiveButton("Yes", new DialogInterface.OnClickListener() {
-											@Override
-											public void onClick(DialogInterface dialog, int which) {
-												// Delete the item from the database
-												boolean deleted = inventoryDatabase.deleteItem(item);
-												if (deleted) {
-													// Remove the item from the list and broadcast the change
-													mItems.remove(position);
-													notifyItemRemoved(position);
-													notifyDataSetChanged();
-												} else {
-													// Show an error message to the user
-													Toast.makeText(mCtx, R.string.delete_error, Toast.LENGTH_SHORT).show();
+			// Rows waiting on their page are shown as placeholders without any actions
+			if (item == null) {
+				holder.mItemActionsBtn.setOnClickListener(null);
+				return;
+			}
+
+			if (mCreatedAt != 0) {
+				METRIC_TIME_TO_FIRST_ROW.recordSince(mCreatedAt);
+				mCreatedAt = 0;
+			}
+
+			// Listen to the click on the child view's "more actions" button
+			holder.mItemActionsBtn.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					// Show a popup menu for this child
+					PopupMenu popup = new PopupMenu(mCtx, holder.mItemActionsBtn);
+					// Inflating menu from xml resource
+					popup.inflate(R.menu.inventory_item_actions_menu);
+					// Adding click listener
+					popup.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
+						@Override
+						public boolean onMenuItemClick(MenuItem menuItem) {
+							switch (menuItem.getItemId()) {
+								case R.id.menu_edit:
+									// Navigate to the edit screen and pass in the current item's ID,
+									// which the destination view looks up.
+									Log.i(TAG, "edit item at position " + holder.getAdapterPosition());
+
+									Intent intent = new Intent(mCtx, EditItemActivity.class);
+									intent.putExtra(EditItemActivity.EXTRA_ITEM_ID, item.getId());
+									mCtx.startActivity(intent);
+
+									return true;
+								case R.id.menu_remove:
+									// Delete the current item from the database and the list
+									Log.i(TAG, "remove item at position " + holder.getAdapterPosition());
+
+									// Wrap the delete action in a confirmation dialog
+									new AlertDialog.Builder(mCtx).setIcon(android.R.drawable.ic_dialog_alert)
+											.setTitle(R.string.delete_confirmation_title).setMessage(R.string.delete_confirmation)
+											.setPositiveButton("Yes", new DialogInterface.OnClickListener() {
+												@Override
+												public void onClick(DialogInterface dialog, int which) {
+													// Drop any queued change for this item and write out the rest, since
+													// the list is refreshed from the database once the item is gone
+													mQuantityWriter.discard(item.getId());
+													mQuantityWriter.flush();
+
+													// Delete the item from the database in the background
+													inventoryDatabase.deleteItem(item, new AsyncInventoryDatabase.Callback<Boolean>() {
+														@Override
+														public void onResult(Boolean deleted) {
+															// The list hears about the deletion from the database and
+															// animates the row away
+															if (!deleted) {
+																showDeleteError();
+															}
+														}
+
+														@Override
+														public void onError(Exception e) {
+															AsyncInventoryDatabase.Callback.super.onError(e);
+															showDeleteError();
+														}
+													});
 												}
-											}
-										}).setNegativeButton("No", null).show();
+											}).setNegativeButton("No", null).show();
 
-								return true;
-							default:
-								return false;
+									return true;
+								default:
+									return false;
+							}
 						}
-					}
-				});
-				//displaying the popup
-				popup.show();
-			}
-		});
+					});
+					//displaying the popup
+					popup.show();
+				}
+			});
+		} finally {
+			METRIC_BIND.recordSince(start);
+		}
 	}
 
 	@Override
 	public int getItemCount() {
-		return mItems.size();
+		return mSearchResults != null ? mSearchResults.size() : mItems.size();
+	}
+
+	@Override
+	public long getItemId(int position) {
+		// Placeholders get a negative ID that can't clash with a real item's
+		Item item = mSearchResults != null ? mSearchResults.get(position) : mItems.peek(position);
+		return item != null ? item.getId() : -1 - position;
+	}
+
+	/**
+	 * Get the item shown at a position
+	 *
+	 * @param position The position in the list
+	 * @return The item, or `null` if its page hasn't loaded yet
+	 */
+	private Item getItem(int position) {
+		return mSearchResults != null ? mSearchResults.get(position) : mItems.get(position);
+	}
+
+	/**
+	 * Show an error message to the user when an item couldn't be deleted
+	 */
+	private void showDeleteError() {
+		Toast.makeText(mCtx, R.string.delete_error, Toast.LENGTH_SHORT).show();
 	}
 
 	/**
@@ -136,22 +370,25 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemHolder> {
 		private TextView mNameTextView;
 		private EditText mQuantityView;
 
-		// Instance of the database
-		InventoryDatabase inventoryDatabase;
+		// Queue for quantity changes made in this row
+		QuantityWriteCoalescer quantityWriter;
+
+		// Set while the quantity field is being updated from code so the change isn't written back
+		private boolean mUpdatingQuantityView;
 
 		ImageButton mDecreaseQuantityBtnInline;
 		ImageButton mIncreaseQuantityBtnInline;
 		ImageButton mItemActionsBtn;
 
 		/**
-		 * Constructor that requires the view and an instance of the database
+		 * Constructor that requires the view and a queue for quantity changes
 		 *
-		 * @param itemView    The view associated with this controller
-		 * @param inventoryDb Instance of the app database
+		 * @param itemView       The view associated with this controller
+		 * @param quantityWriter Queue that writes quantity changes to the database
 		 */
-		public ItemHolder(View itemView, InventoryDatabase inventoryDb) {
+		public ItemHolder(View itemView, QuantityWriteCoalescer quantityWriter) {
 			super(itemView);
-			inventoryDatabase = inventoryDb;
+			this.quantityWriter = quantityWriter;
 			mNameTextView = itemView.findViewById(R.id.itemName);
 			mQuantityView = itemView.findViewById(R.id.editQuantity);
 			mDecreaseQuantityBtnInline = itemView.findViewById(R.id.decreaseQuantityBtnInline);
@@ -162,11 +399,11 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemHolder> {
 			mDecreaseQuantityBtnInline.setOnClickListener(new View.OnClickListener() {
 				@Override
 				public void onClick(View v) {
-					mItem.decrementQuantity();
-					boolean updated = inventoryDatabase.updateItem(mItem);
-					if (updated) {
-						mQuantityView.setText(String.valueOf(mItem.getQuantity()));
+					if (mItem == null) {
+						return;
 					}
+					quantityWriter.adjustQuantity(mItem, -1);
+					showQuantity();
 				}
 			});
 
@@ -174,15 +411,15 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemHolder> {
 			mIncreaseQuantityBtnInline.setOnClickListener(new View.OnClickListener() {
 				@Override
 				public void onClick(View v) {
-					mItem.incrementQuantity();
-					boolean updated = inventoryDatabase.updateItem(mItem);
-					if (updated) {
-						mQuantityView.setText(String.valueOf(mItem.getQuantity()));
+					if (mItem == null) {
+						return;
 					}
+					quantityWriter.adjustQuantity(mItem, 1);
+					showQuantity();
 				}
 			});
 
-			// Listen for changes on the quantity text field, updating the item and database
+			// Listen for changes on the quantity text field, updating the item and queueing the write
 			mQuantityView.addTextChangedListener(new TextWatcher() {
 				@Override
 				public void beforeTextChanged(CharSequence s, int start, int count, int after) {
@@ -190,10 +427,9 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemHolder> {
 
 				@Override
 				public void onTextChanged(CharSequence charSequence, int start, int before, int count) {
-					mItem.setQuantity(getItemQuantity());
-					boolean updated = inventoryDatabase.updateItem(mItem);
-					Log.d(TAG, "Item quantity updated: " + updated);
-
+					if (!mUpdatingQuantityView && mItem != null) {
+						quantityWriter.setQuantity(mItem, getItemQuantity());
+					}
 				}
 
 				@Override
@@ -205,13 +441,36 @@ public class ItemAdapter extends RecyclerView.Adapter<ItemAdapter.ItemHolder> {
 		/**
 		 * Bind the model to the controller
 		 *
-		 * @param item Model for this view
+		 * @param item Model for this view, or `null` to show a placeholder while it loads
 		 */
 		public void bind(Item item) {
 			mItem = item;
+			boolean loaded = item != null;
+			mDecreaseQuantityBtnInline.setEnabled(loaded);
+			mIncreaseQuantityBtnInline.setEnabled(loaded);
+			mQuantityView.setEnabled(loaded);
+			mItemActionsBtn.setEnabled(loaded);
+
+			if (!loaded) {
+				mNameTextView.setText("");
+				mUpdatingQuantityView = true;
+				mQuantityView.setText("");
+				mUpdatingQuantityView = false;
+				return;
+			}
+
 			Log.d("ItemHolder", "Bind item: " + mItem.getName());
 			mNameTextView.setText(mItem.getName());
+			showQuantity();
+		}
+
+		/**
+		 * Show the item's quantity in the text field without treating it as a user edit
+		 */
+		private void showQuantity() {
+			mUpdatingQuantityView = true;
 			mQuantityView.setText(String.valueOf(mItem.getQuantity()));
+			mUpdatingQuantityView = false;
 		}
 
 		/**
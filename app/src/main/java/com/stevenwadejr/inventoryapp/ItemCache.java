@@ -0,0 +1,260 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.util.LruCache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A size-bounded cache of inventory items keyed by ID, kept up to date by the database as items
+ * are read and written. The least recently used items are dropped once it's full.
+ *
+ * Items are mutable, so the cache stores its own copies and hands out copies - changing an item
+ * returned from here doesn't change the cache. Safe to use from any thread.
+ *
+ * Writes go straight into the cache, but a read can finish after a write that its snapshot of the
+ * database doesn't include. Reads are therefore bracketed by {@link #startRead()} and
+ * {@link #finishRead()}, and an item read is only cached if nothing wrote it since the read began
+ * and it isn't cached already.
+ */
+public class ItemCache {
+
+	// Maximum number of items held at once
+	public static final int MAX_ITEMS = 512;
+
+	// Most item IDs remembered as written while reads are running, before giving up on those reads
+	private static final int MAX_TRACKED_WRITES = 4 * MAX_ITEMS;
+
+	// Cached copies of items keyed by ID. Also the lock for the fields below.
+	private final LruCache<Long, Item> mItems;
+
+	// Lookups that found the item and that didn't - counted here so the cache's own checks don't count
+	private final AtomicInteger mHits = new AtomicInteger();
+	private final AtomicInteger mMisses = new AtomicInteger();
+
+	// Number of writes so far, which a read records when it starts
+	private long mWriteCount;
+
+	// The write count each item was last written at, only kept while reads are running
+	private final Map<Long, Long> mWrittenAt = new HashMap<>();
+
+	// Reads that started before this write count don't cache anything, for example after a clear
+	private long mDropReadsBefore;
+
+	// Number of reads started and not yet finished
+	private int mOpenReads;
+
+	/**
+	 * Constructor that creates a cache holding up to the default number of items
+	 */
+	public ItemCache() {
+		this(MAX_ITEMS);
+	}
+
+	/**
+	 * Constructor that takes the number of items to hold
+	 *
+	 * @param maxItems The maximum number of items
+	 */
+	public ItemCache(int maxItems) {
+		mItems = new LruCache<>(maxItems);
+	}
+
+	/**
+	 * Get a copy of a cached item
+	 *
+	 * @param id The ID of the item
+	 * @return A copy of the item, or `null` if it isn't cached
+	 */
+	public Item get(long id) {
+		Item item = mItems.get(id);
+		if (item == null) {
+			mMisses.incrementAndGet();
+			return null;
+		}
+		mHits.incrementAndGet();
+		return copy(item);
+	}
+
+	/**
+	 * Cache a copy of an item that was just written, replacing any older copy
+	 *
+	 * @param item The item
+	 */
+	public void put(Item item) {
+		synchronized (mItems) {
+			markWritten(item.getId());
+			mItems.put(item.getId(), copy(item));
+		}
+	}
+
+	/**
+	 * Note that a read is about to query the database. Must be followed by {@link #finishRead()}.
+	 *
+	 * @return The read's start, to pass to {@link #putRead(long, Item)}
+	 */
+	public long startRead() {
+		synchronized (mItems) {
+			mOpenReads++;
+			return mWriteCount;
+		}
+	}
+
+	/**
+	 * Cache a copy of an item a read found, unless it's already cached or was written after the read
+	 * started - the read may have seen the row from before that write
+	 *
+	 * @param readStart The value {@link #startRead()} returned
+	 * @param item      The item as read
+	 */
+	public void putRead(long readStart, Item item) {
+		synchronized (mItems) {
+			if (readStart < mDropReadsBefore) {
+				return;
+			}
+			Long writtenAt = mWrittenAt.get(item.getId());
+			if (writtenAt != null && writtenAt > readStart) {
+				return;
+			}
+			if (mItems.get(item.getId()) == null) {
+				mItems.put(item.getId(), copy(item));
+			}
+		}
+	}
+
+	/**
+	 * Note that a read has finished caching what it found. Once no reads are running, past writes no
+	 * longer need remembering.
+	 */
+	public void finishRead() {
+		synchronized (mItems) {
+			mOpenReads--;
+			if (mOpenReads == 0) {
+				mWrittenAt.clear();
+			}
+		}
+	}
+
+	/**
+	 * Note that items were written without updating the cache, for example once a transaction that
+	 * changed them commits, so reads that started before then don't cache the old rows
+	 *
+	 * @param ids The IDs of the items
+	 */
+	public void markWritten(Collection<Long> ids) {
+		synchronized (mItems) {
+			for (long id : ids) {
+				markWritten(id);
+			}
+		}
+	}
+
+	/**
+	 * Update the quantity of a cached item. Items that aren't cached are left alone.
+	 *
+	 * @param id       The ID of the item
+	 * @param quantity The item's new quantity
+	 */
+	public void updateQuantity(long id, int quantity) {
+		synchronized (mItems) {
+			markWritten(id);
+			Item item = mItems.get(id);
+			if (item != null) {
+				mItems.put(id, new Item(id, item.getName(), quantity, item.getLowStockThreshold()));
+			}
+		}
+	}
+
+	/**
+	 * Drop an item from the cache
+	 *
+	 * @param id The ID of the item
+	 */
+	public void remove(long id) {
+		synchronized (mItems) {
+			markWritten(id);
+			mItems.remove(id);
+		}
+	}
+
+	/**
+	 * Drop every item, for example after a bulk change that touched unknown rows
+	 */
+	public void clear() {
+		synchronized (mItems) {
+			dropOpenReads();
+			mItems.evictAll();
+		}
+	}
+
+	/**
+	 * Get the number of items currently cached
+	 *
+	 * @return Number of items
+	 */
+	public int size() {
+		return mItems.size();
+	}
+
+	/**
+	 * Get the number of lookups that found the item in the cache
+	 *
+	 * @return Number of hits
+	 */
+	public int getHitCount() {
+		return mHits.get();
+	}
+
+	/**
+	 * Get the number of lookups that had to go to the database
+	 *
+	 * @return Number of misses
+	 */
+	public int getMissCount() {
+		return mMisses.get();
+	}
+
+	/**
+	 * Get the number of items dropped to make room or by {@link #clear()}
+	 *
+	 * @return Number of evictions
+	 */
+	public int getEvictionCount() {
+		return mItems.evictionCount();
+	}
+
+	/**
+	 * Count a write to an item, remembering it if a read that's running could have missed it. Must
+	 * hold the lock.
+	 */
+	private void markWritten(long id) {
+		mWriteCount++;
+		if (mOpenReads == 0) {
+			return;
+		}
+		if (mWrittenAt.size() >= MAX_TRACKED_WRITES) {
+			// Reads have overlapped for too long to keep track of, so stop them caching anything
+			dropOpenReads();
+			return;
+		}
+		mWrittenAt.put(id, mWriteCount);
+	}
+
+	/**
+	 * Stop every read that's running from caching what it finds. Must hold the lock.
+	 */
+	private void dropOpenReads() {
+		mWriteCount++;
+		mDropReadsBefore = mWriteCount;
+		mWrittenAt.clear();
+	}
+
+	/**
+	 * Copy an item so the cached copy can't be changed from outside
+	 */
+	private static Item copy(Item item) {
+		return new Item(item.getId(), item.getName(), item.getQuantity(), item.getLowStockThreshold());
+	}
+}
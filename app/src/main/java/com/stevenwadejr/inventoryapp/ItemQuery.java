@@ -0,0 +1,120 @@
+package com.stevenwadejr.inventoryapp;
+
+import java.util.Objects;
+
+/**
+ * Which inventory items to list and in what order: a sort key and direction, an optional quantity
+ * range and an optional name prefix. The database turns it into SQL, so sorting and filtering
+ * happen in SQLite using an index rather than over a list in memory. Queries are immutable - the
+ * `with` methods return a changed copy.
+ */
+public final class ItemQuery {
+
+	/**
+	 * What the items are sorted by. Ties are broken by the columns that follow in the index the
+	 * sort uses, ending with the item ID, so every item has a fixed position.
+	 */
+	public enum SortKey {
+		// The order items were added in
+		ID,
+		// Name, case-insensitively, then quantity
+		NAME,
+		// Quantity
+		QUANTITY
+	}
+
+	// Every item, oldest first
+	public static final ItemQuery ALL = new ItemQuery(SortKey.ID, false, null, null, null);
+
+	// What the items are sorted by, and whether the order is reversed
+	public final SortKey sortKey;
+	public final boolean descending;
+
+	// The smallest and largest quantity to include, `null` for no limit
+	public final Integer minQuantity;
+	public final Integer maxQuantity;
+
+	// Only include items whose name starts with this, ignoring case, or `null` for every name
+	public final String namePrefix;
+
+	private ItemQuery(SortKey sortKey, boolean descending, Integer minQuantity, Integer maxQuantity,
+			String namePrefix) {
+		this.sortKey = sortKey;
+		this.descending = descending;
+		this.minQuantity = minQuantity;
+		this.maxQuantity = maxQuantity;
+		this.namePrefix = namePrefix;
+	}
+
+	/**
+	 * Copy this query with a different order
+	 *
+	 * @param sortKey    What to sort by
+	 * @param descending Whether to reverse the order
+	 * @return The changed query
+	 */
+	public ItemQuery withSort(SortKey sortKey, boolean descending) {
+		return new ItemQuery(sortKey, descending, minQuantity, maxQuantity, namePrefix);
+	}
+
+	/**
+	 * Copy this query with a different quantity range
+	 *
+	 * @param minQuantity The smallest quantity to include, `null` for no limit
+	 * @param maxQuantity The largest quantity to include, `null` for no limit
+	 * @return The changed query
+	 */
+	public ItemQuery withQuantityRange(Integer minQuantity, Integer maxQuantity) {
+		return new ItemQuery(sortKey, descending, minQuantity, maxQuantity, namePrefix);
+	}
+
+	/**
+	 * Copy this query with a different name prefix
+	 *
+	 * @param namePrefix The start of the names to include, `null` or empty for every name
+	 * @return The changed query
+	 */
+	public ItemQuery withNamePrefix(String namePrefix) {
+		return new ItemQuery(sortKey, descending, minQuantity, maxQuantity,
+				namePrefix == null || namePrefix.isEmpty() ? null : namePrefix);
+	}
+
+	/**
+	 * Check whether the query leaves any items out
+	 *
+	 * @return `true` if there's a quantity range or name prefix
+	 */
+	public boolean isFiltered() {
+		return minQuantity != null || maxQuantity != null || namePrefix != null;
+	}
+
+	/**
+	 * Check whether changing an item's name or quantity can move it or take it out of the results.
+	 * Only the plain ID order is safe to update in place.
+	 *
+	 * @return `true` if an edited item may need to move
+	 */
+	public boolean dependsOnItemContents() {
+		return sortKey != SortKey.ID || isFiltered();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ItemQuery)) {
+			return false;
+		}
+		ItemQuery other = (ItemQuery) o;
+		return sortKey == other.sortKey && descending == other.descending
+				&& Objects.equals(minQuantity, other.minQuantity)
+				&& Objects.equals(maxQuantity, other.maxQuantity)
+				&& Objects.equals(namePrefix, other.namePrefix);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(sortKey, descending, minQuantity, maxQuantity, namePrefix);
+	}
+}
@@ -0,0 +1,190 @@
+package com.stevenwadejr.inventoryapp;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long an operation takes in buckets that grow with the value, so percentiles can be
+ * read back to within about 12%. Recording takes a few atomic increments and never allocates,
+ * so it's cheap enough for every database call. Safe to use from any thread.
+ */
+public class LatencyHistogram {
+
+	// Values below this many nanoseconds each get their own bucket
+	private static final int LINEAR_BUCKETS = 16;
+
+	// Each power of two above that is split into this many buckets (as a power of two)
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// Largest power of two tracked. Anything slower - over 18 minutes - lands in the last bucket.
+	private static final int MAX_EXPONENT = 40;
+
+	private static final int FIRST_EXPONENT = Long.numberOfTrailingZeros(LINEAR_BUCKETS);
+	private static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - FIRST_EXPONENT + 1) * SUB_BUCKETS;
+
+	// The name the histogram is reported under
+	private final String mName;
+
+	// Number of values recorded in each bucket
+	private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+	// Total and largest of the values, in nanoseconds
+	private final AtomicLong mTotal = new AtomicLong();
+	private final AtomicLong mMax = new AtomicLong();
+
+	/**
+	 * Constructor that takes the name to report the histogram under
+	 *
+	 * @param name The name of the operation being timed
+	 */
+	LatencyHistogram(String name) {
+		mName = name;
+	}
+
+	/**
+	 * Get the name the histogram is reported under
+	 *
+	 * @return The name
+	 */
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * Record the time since a start time
+	 *
+	 * @param startNanos The start time from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Record a duration
+	 *
+	 * @param nanos The duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		mBuckets.incrementAndGet(bucketFor(nanos));
+		mTotal.addAndGet(nanos);
+
+		long max = mMax.get();
+		while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+			max = mMax.get();
+		}
+	}
+
+	/**
+	 * Take a copy of the current numbers for reporting
+	 *
+	 * @return The copy
+	 */
+	public Snapshot snapshot() {
+		long[] buckets = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			buckets[i] = mBuckets.get(i);
+			count += buckets[i];
+		}
+		return new Snapshot(mName, buckets, count, mTotal.get(), mMax.get());
+	}
+
+	/**
+	 * Forget everything recorded so far
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			mBuckets.set(i, 0);
+		}
+		mTotal.set(0);
+		mMax.set(0);
+	}
+
+	/**
+	 * Find the bucket a duration belongs in
+	 */
+	private static int bucketFor(long nanos) {
+		if (nanos < LINEAR_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		if (exponent > MAX_EXPONENT) {
+			return BUCKET_COUNT - 1;
+		}
+		int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return LINEAR_BUCKETS + (exponent - FIRST_EXPONENT) * SUB_BUCKETS + subBucket;
+	}
+
+	/**
+	 * Get the smallest duration that lands in a bucket
+	 */
+	private static long bucketLowerBound(int bucket) {
+		if (bucket < LINEAR_BUCKETS) {
+			return bucket;
+		}
+		int exponent = FIRST_EXPONENT + (bucket - LINEAR_BUCKETS) / SUB_BUCKETS;
+		int subBucket = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * The numbers recorded by a histogram at one point in time
+	 */
+	public static final class Snapshot {
+		// The name of the operation
+		public final String name;
+
+		// Number of values recorded, their total and the largest, in nanoseconds
+		public final long count;
+		public final long totalNanos;
+		public final long maxNanos;
+
+		// Number of values in each bucket
+		private final long[] mBuckets;
+
+		Snapshot(String name, long[] buckets, long count, long totalNanos, long maxNanos) {
+			this.name = name;
+			this.count = count;
+			this.totalNanos = totalNanos;
+			this.maxNanos = maxNanos;
+			mBuckets = buckets;
+		}
+
+		/**
+		 * Get the duration that the given fraction of values were at or below
+		 *
+		 * @param fraction The percentile as a fraction, such as 0.95
+		 * @return The duration in nanoseconds, the middle of the bucket it falls in, or 0 if
+		 * nothing was recorded
+		 */
+		public long percentile(double fraction) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1, (long) Math.ceil(fraction * count));
+			long seen = 0;
+			for (int i = 0; i < mBuckets.length; i++) {
+				seen += mBuckets[i];
+				if (seen >= rank) {
+					long lower = bucketLowerBound(i);
+					long upper = i + 1 < mBuckets.length ? bucketLowerBound(i + 1) : lower;
+					return Math.min(lower + (upper - lower) / 2, maxNanos);
+				}
+			}
+			return maxNanos;
+		}
+
+		/**
+		 * Get the average duration
+		 *
+		 * @return The mean in nanoseconds, or 0 if nothing was recorded
+		 */
+		public long mean() {
+			return count == 0 ? 0 : totalNanos / count;
+		}
+	}
+}
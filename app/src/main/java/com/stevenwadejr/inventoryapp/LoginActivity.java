@@ -12,12 +12,10 @@ import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 
-import java.security.MessageDigest;
-
 public class LoginActivity extends AppCompatActivity {
 
 	// Instance of the database
-	InventoryDatabase inventoryDatabase;
+	AsyncInventoryDatabase inventoryDatabase;
 
 	// Cached view elements
 	EditText usernameInput;
@@ -26,13 +24,26 @@ public class LoginActivity extends AppCompatActivity {
 	Button loginBtn;
 	Button registerBtn;
 
+	// Remembers the logged in user between launches
+	private SessionStore mSessionStore;
+
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
-		setContentView(R.layout.activity_login);
 
 		// Get the singleton instance of the app database
-		inventoryDatabase = InventoryDatabase.getInstance(this);
+		inventoryDatabase = AsyncInventoryDatabase.getInstance(this);
+		mSessionStore = SessionStore.getInstance(this);
+
+		// A user who is still logged in from last time goes straight to the inventory list, without
+		// looking them up or hashing a password
+		String sessionUsername = mSessionStore.getUsername();
+		if (sessionUsername != null) {
+			openInventoryList(sessionUsername);
+			return;
+		}
+
+		setContentView(R.layout.activity_login);
 
 		// Cache the view elements
 		usernameInput = findViewById(R.id.usernameInput);
@@ -83,19 +94,26 @@ public class LoginActivity extends AppCompatActivity {
 			return;
 		}
 
-		try {
-			// Log the user in
-			boolean isLoggedIn = inventoryDatabase.checkUser(getUsername(), hash(getPassword()));
-
-			// Navigate to the inventory list if logged in, otherwise, show an error
-			if (isLoggedIn) {
-				handleLoggedInUser();
-			} else {
-				showError(view.getContext().getResources().getString(R.string.invalid_login));
-			}
-		} catch (Exception e) {
-			showError(view.getContext().getResources().getString(R.string.invalid_login));
-		}
+		String errorMessage = view.getContext().getResources().getString(R.string.invalid_login);
+		// Log the user in, checking the credentials in the background - hashing is slow on purpose
+		inventoryDatabase.checkUser(getUsername(), getPassword(),
+				new AsyncInventoryDatabase.Callback<Boolean>() {
+					@Override
+					public void onResult(Boolean isLoggedIn) {
+						// Navigate to the inventory list if logged in, otherwise, show an error
+						if (isLoggedIn) {
+							handleLoggedInUser();
+						} else {
+							showError(errorMessage);
+						}
+					}
+
+					@Override
+					public void onError(Exception e) {
+						AsyncInventoryDatabase.Callback.super.onError(e);
+						showError(errorMessage);
+					}
+				});
 	}
 
 	/**
@@ -109,27 +127,52 @@ public class LoginActivity extends AppCompatActivity {
 			showError(view.getContext().getResources().getString(R.string.registration_error));
 		}
 
-		try {
-			// Try to create a user
-			boolean userCreated = inventoryDatabase.addUser(getUsername(), hash(getPassword()));
-
-			// If the user was created, navigate to the inventory list, otherwise, show an error.
-			if (userCreated) {
-				handleLoggedInUser();
-			} else {
-				showError(view.getContext().getResources().getString(R.string.registration_error));
-			}
-		} catch (Exception e) {
-			showError(view.getContext().getResources().getString(R.string.registration_error));
-		}
+		String errorMessage = view.getContext().getResources().getString(R.string.registration_error);
+		// Try to create a user in the background
+		inventoryDatabase.addUser(getUsername(), getPassword(),
+				new AsyncInventoryDatabase.Callback<Boolean>() {
+					@Override
+					public void onResult(Boolean userCreated) {
+						// If the user was created, navigate to the inventory list, otherwise, show an error.
+						if (userCreated) {
+							handleLoggedInUser();
+						} else {
+							showError(errorMessage);
+						}
+					}
+
+					@Override
+					public void onError(Exception e) {
+						AsyncInventoryDatabase.Callback.super.onError(e);
+						showError(errorMessage);
+					}
+				});
 	}
 
 	/**
-	 * Navigate to the inventory list screen
+	 * Start a session for the user who just logged in and navigate to the inventory list screen
 	 */
 	private void handleLoggedInUser() {
+		mSessionStore.start(getUsername());
+		openInventoryList(getUsername());
+	}
+
+	/**
+	 * Navigate to the inventory list screen as the given user, closing the login screen so back
+	 * doesn't return to it
+	 *
+	 * @param username The logged in user's username
+	 */
+	private void openInventoryList(String username) {
+		// Only this user's items are listed from here on, and stock changes are recorded against them
+		inventoryDatabase.setCurrentUser(username, null);
+
+		// Start reading their first page now, so it's usually ready by the time the list opens
+		StartupPrefetcher.getInstance(this).prefetch();
+
 		Intent intent = new Intent(getApplicationContext(), InventoryListActivity.class);
 		startActivity(intent);
+		finish();
 	}
 
 	/**
@@ -161,25 +204,6 @@ public class LoginActivity extends AppCompatActivity {
 		return password != null ? password.toString().trim() : "";
 	}
 
-	/**
-	 * Hash the given password string using MD5
-	 *
-	 * @param password The given plain text password to hash
-	 * @return A hashed password as a string
-	 * @throws Exception If something went wrong, bail
-	 */
-	private String hash(String password) throws Exception {
-		MessageDigest md = MessageDigest.getInstance("MD5");
-		md.update(password.getBytes());
-		byte[] digest = md.digest();
-		StringBuffer sb = new StringBuffer();
-		for (byte b : digest) {
-			sb.append(String.format("%02x", b & 0xff));
-		}
-
-		return sb.toString();
-	}
-
 	/**
 	 * Helper function to show a Toast error
 	 *
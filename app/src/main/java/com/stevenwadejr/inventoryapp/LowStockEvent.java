@@ -0,0 +1,29 @@
+package com.stevenwadejr.inventoryapp;
+
+/**
+ * Records an item's quantity dropping to or below its low stock threshold
+ */
+public final class LowStockEvent {
+	// Username of the item's owner
+	public final String owner;
+
+	// The item that's running low, and its name when it crossed the threshold
+	public final long itemId;
+	public final String name;
+
+	// The quantity it dropped to, and the threshold it crossed
+	public final int quantity;
+	public final int threshold;
+
+	// When it crossed, in milliseconds since the epoch
+	public final long createdAt;
+
+	LowStockEvent(String owner, long itemId, String name, int quantity, int threshold, long createdAt) {
+		this.owner = owner;
+		this.itemId = itemId;
+		this.name = name;
+		this.quantity = quantity;
+		this.threshold = threshold;
+		this.createdAt = createdAt;
+	}
+}
@@ -0,0 +1,170 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Tells listeners when items drop to or below their low stock threshold. The database records a
+ * crossing as part of the write that caused it, so this never rescans the inventory - it only
+ * collects the recorded crossings after quantities change. Collecting removes them, so it's queued
+ * on the database's writer like any other write. A burst of writes is collected in one go rather
+ * than once per write. Only the logged in user's crossings are collected, so listeners are never
+ * told about another user's items.
+ *
+ * Alerts are only delivered while the user has notifications turned on. Crossings that happen
+ * while they're off are dropped rather than delivered later.
+ */
+public class LowStockMonitor implements InventoryDatabase.ChangeListener {
+
+	// Logcat tag
+	private static final String TAG = "LowStockMonitor";
+
+	// Singleton of the monitor
+	private static LowStockMonitor sLowStockMonitor;
+
+	// The database the crossings are recorded in
+	private final AsyncInventoryDatabase mInventoryDatabase;
+
+	// Where the notifications preference is stored
+	private final SharedPreferences mSharedPrefs;
+
+	// Whether a collection is queued but hasn't started yet
+	private final AtomicBoolean mDrainPending = new AtomicBoolean();
+
+	// Told about low stock on the main thread
+	private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Receives low stock alerts on the main thread
+	 */
+	public interface Listener {
+		/**
+		 * Called when one or more items dropped to or below their threshold
+		 *
+		 * @param events The crossings, oldest first
+		 */
+		void onLowStock(List<LowStockEvent> events);
+	}
+
+	/**
+	 * Factory method to get the singleton and create a new one if needed
+	 *
+	 * @param context The app's context
+	 * @return The singleton
+	 */
+	public static LowStockMonitor getInstance(Context context) {
+		if (sLowStockMonitor == null) {
+			Context appContext = context.getApplicationContext();
+			sLowStockMonitor = new LowStockMonitor(AsyncInventoryDatabase.getInstance(appContext),
+					PreferenceManager.getDefaultSharedPreferences(appContext));
+		}
+		return sLowStockMonitor;
+	}
+
+	/**
+	 * Stop the singleton so tests start from a fresh monitor
+	 */
+	@VisibleForTesting
+	static void resetInstance() {
+		if (sLowStockMonitor != null) {
+			sLowStockMonitor.mInventoryDatabase.getBlockingDatabase().removeChangeListener(sLowStockMonitor);
+			sLowStockMonitor = null;
+		}
+	}
+
+	/**
+	 * Constructor that starts watching the database for quantity changes
+	 *
+	 * @param inventoryDb An instance of the async inventory database
+	 * @param sharedPrefs Where the notifications preference is stored
+	 */
+	private LowStockMonitor(AsyncInventoryDatabase inventoryDb, SharedPreferences sharedPrefs) {
+		mInventoryDatabase = inventoryDb;
+		mSharedPrefs = sharedPrefs;
+
+		// Listen on the blocking database, so a collection is queued right behind the write
+		mInventoryDatabase.getBlockingDatabase().addChangeListener(this);
+
+		// Pick up crossings recorded before the app was last closed
+		mDrainPending.set(true);
+		drain();
+	}
+
+	/**
+	 * Add a listener to be told about low stock on the main thread
+	 *
+	 * @param listener The listener
+	 */
+	public void addListener(Listener listener) {
+		mListeners.add(listener);
+	}
+
+	/**
+	 * Stop telling a listener about low stock
+	 *
+	 * @param listener The listener
+	 */
+	public void removeListener(Listener listener) {
+		mListeners.remove(listener);
+	}
+
+	/**
+	 * Queue a collection of recorded crossings when quantities may have gone down. New items can't
+	 * have crossed, so inserts and deletes are ignored.
+	 */
+	@Override
+	public void onItemsChanged(InventoryDatabase.ItemChanges changes) {
+		if (changes.updated.isEmpty() && !changes.everything) {
+			return;
+		}
+
+		// Writes that land before the queued collection starts are picked up by it
+		if (mDrainPending.compareAndSet(false, true)) {
+			drain();
+		}
+	}
+
+	/**
+	 * Collect the recorded crossings on the writer and hand them to the listeners, or drop them if
+	 * the user has notifications turned off. Collects again until there are none left.
+	 */
+	@VisibleForTesting
+	void drain() {
+		mInventoryDatabase.write(new Callable<List<LowStockEvent>>() {
+			@Override
+			public List<LowStockEvent> call() {
+				mDrainPending.set(false);
+				return mInventoryDatabase.getBlockingDatabase().takeLowStockEvents();
+			}
+		}, new AsyncInventoryDatabase.Callback<List<LowStockEvent>>() {
+			@Override
+			public void onResult(List<LowStockEvent> events) {
+				if (events.isEmpty()) {
+					return;
+				}
+
+				// A collection hands out a limited number at a time, so look for more
+				if (mDrainPending.compareAndSet(false, true)) {
+					drain();
+				}
+
+				if (!mSharedPrefs.getBoolean(SmsNotifcationsActivity.PREFERENCE_RECEIVE_NOTIFICATIONS, false)) {
+					Log.d(TAG, "Notifications are off, dropping " + events.size() + " low stock alerts");
+					return;
+				}
+				for (Listener listener : mListeners) {
+					listener.onLowStock(events);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,112 @@
+package com.stevenwadejr.inventoryapp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of the app's latency histograms. Code that's timed looks its histogram up once and
+ * keeps it in a static field, so recording never touches the registry.
+ */
+public final class Metrics {
+
+	// Every histogram, sorted by name
+	private static final ConcurrentMap<String, LatencyHistogram> sHistograms = new ConcurrentSkipListMap<>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * Get the histogram with a name, creating it if needed
+	 *
+	 * @param name The name of the operation, such as "db.getItems"
+	 * @return The histogram
+	 */
+	public static LatencyHistogram histogram(String name) {
+		LatencyHistogram histogram = sHistograms.get(name);
+		if (histogram == null) {
+			LatencyHistogram created = new LatencyHistogram(name);
+			histogram = sHistograms.putIfAbsent(name, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Take a copy of every histogram that has recorded something
+	 *
+	 * @return The copies, sorted by name
+	 */
+	public static List<LatencyHistogram.Snapshot> snapshot() {
+		List<LatencyHistogram.Snapshot> snapshots = new ArrayList<>();
+		for (LatencyHistogram histogram : sHistograms.values()) {
+			LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+			if (snapshot.count > 0) {
+				snapshots.add(snapshot);
+			}
+		}
+		return snapshots;
+	}
+
+	/**
+	 * Forget everything recorded so far
+	 */
+	public static void reset() {
+		for (LatencyHistogram histogram : sHistograms.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Write the current numbers as JSON, with times in microseconds
+	 *
+	 * @return The JSON text
+	 */
+	public static String toJson() {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n  \"operations\": [");
+		List<LatencyHistogram.Snapshot> snapshots = snapshot();
+		for (int i = 0; i < snapshots.size(); i++) {
+			LatencyHistogram.Snapshot snapshot = snapshots.get(i);
+			json.append(i > 0 ? ",\n    " : "\n    ")
+					.append("{\"name\": \"").append(snapshot.name)
+					.append("\", \"count\": ").append(snapshot.count)
+					.append(", \"meanUs\": ").append(micros(snapshot.mean()))
+					.append(", \"p50Us\": ").append(micros(snapshot.percentile(0.50)))
+					.append(", \"p95Us\": ").append(micros(snapshot.percentile(0.95)))
+					.append(", \"p99Us\": ").append(micros(snapshot.percentile(0.99)))
+					.append(", \"maxUs\": ").append(micros(snapshot.maxNanos))
+					.append('}');
+		}
+		json.append(snapshots.isEmpty() ? "]\n}\n" : "\n  ]\n}\n");
+		return json.toString();
+	}
+
+	/**
+	 * Write the current numbers as a plain text table, with times in microseconds
+	 *
+	 * @return The table
+	 */
+	public static String toText() {
+		StringBuilder text = new StringBuilder();
+		text.append(String.format(Locale.US, "%-28s %8s %9s %9s %9s %9s%n", "operation", "count", "p50", "p95",
+				"p99", "max"));
+		for (LatencyHistogram.Snapshot snapshot : snapshot()) {
+			text.append(String.format(Locale.US, "%-28s %8d %9s %9s %9s %9s%n", snapshot.name, snapshot.count,
+					micros(snapshot.percentile(0.50)), micros(snapshot.percentile(0.95)),
+					micros(snapshot.percentile(0.99)), micros(snapshot.maxNanos)));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Format nanoseconds as microseconds with one decimal place
+	 */
+	private static String micros(long nanos) {
+		return String.format(Locale.US, "%.1f", nanos / 1000.0);
+	}
+}
@@ -0,0 +1,65 @@
+package com.stevenwadejr.inventoryapp;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * Debug screen showing how long database calls and list binding have taken, with p50, p95 and
+ * p99 per operation in microseconds. Opened by long-pressing the totals above the inventory list.
+ */
+public class MetricsActivity extends AppCompatActivity {
+
+	// Shows the metrics table
+	TextView metricsText;
+
+	@Override
+	protected void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		overridePendingTransition(R.anim.slide_in_right, R.anim.slide_out_left);
+		setContentView(R.layout.activity_metrics);
+
+		metricsText = findViewById(R.id.metricsText);
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		showMetrics();
+	}
+
+	/**
+	 * Send the metrics as JSON to another app, such as email or a file manager
+	 *
+	 * @param view Instance of the current view
+	 */
+	public void shareMetrics(View view) {
+		Intent intent = new Intent(Intent.ACTION_SEND);
+		intent.setType("application/json");
+		intent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.metrics_title));
+		intent.putExtra(Intent.EXTRA_TEXT, Metrics.toJson());
+		startActivity(Intent.createChooser(intent, getString(R.string.share_metrics)));
+	}
+
+	/**
+	 * Forget the metrics recorded so far, to measure from a clean slate
+	 *
+	 * @param view Instance of the current view
+	 */
+	public void resetMetrics(View view) {
+		Metrics.reset();
+		showMetrics();
+	}
+
+	/**
+	 * Show the current metrics and the item cache's hit rate
+	 */
+	private void showMetrics() {
+		ItemCache cache = InventoryDatabase.getInstance(this).getItemCache();
+		metricsText.setText(Metrics.toText() + "\n" + getString(R.string.metrics_cache, cache.getHitCount(),
+				cache.getMissCount(), cache.getEvictionCount(), cache.size()));
+	}
+}
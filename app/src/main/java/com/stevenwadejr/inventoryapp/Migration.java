@@ -0,0 +1,34 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * A single, ordered step in the database schema's history. Each migration upgrades the schema
+ * from the version before it to its own version without losing any data.
+ */
+public abstract class Migration {
+
+	// The schema version this migration upgrades the database to
+	private final int mVersion;
+
+	/**
+	 * Constructor that takes the version this migration upgrades the database to
+	 *
+	 * @param version The schema version after this migration runs
+	 */
+	public Migration(int version) {
+		mVersion = version;
+	}
+
+	public int getVersion() {
+		return mVersion;
+	}
+
+	/**
+	 * Apply this step to the database. Runs inside the upgrade's transaction, so a failure rolls
+	 * back every step that ran before it.
+	 *
+	 * @param db The database to migrate
+	 */
+	public abstract void migrate(SQLiteDatabase db);
+}
@@ -0,0 +1,631 @@
+package com.stevenwadejr.inventoryapp;
+
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * A positional view over the inventory that only keeps a bounded number of pages in memory.
+ * Pages are fetched in the background with keyset pagination, and the least recently used page is
+ * dropped once too many are resident. The items listed and their order come from an
+ * {@link ItemQuery}, which the database applies in SQL. All methods must be called on the main
+ * thread.
+ */
+public class PagedItemList {
+
+	// Number of items fetched per query
+	public static final int PAGE_SIZE = 50;
+
+	// Maximum number of pages kept in memory at once
+	private static final int MAX_RESIDENT_PAGES = 5;
+
+	// Start fetching the neighbouring page when this close to the edge of a page
+	private static final int PREFETCH_DISTANCE = PAGE_SIZE / 4;
+
+	/**
+	 * Notified on the main thread when the contents of the list change
+	 */
+	public interface Listener {
+		/**
+		 * Called when the list was re-counted and every position may hold a different item
+		 */
+		void onItemsInvalidated();
+
+		/**
+		 * Called when a page finished loading, or a loaded item was reloaded
+		 *
+		 * @param positionStart The position of the first item that was loaded
+		 * @param itemCount     The number of items that were loaded
+		 */
+		void onItemsLoaded(int positionStart, int itemCount);
+
+		/**
+		 * Called when the list was refreshed in place. Only the rows that actually changed are
+		 * reported, so views for the rest can be kept as they are.
+		 *
+		 * @param refresh The changes, which can be dispatched to an adapter
+		 */
+		void onItemsRefreshed(Refresh refresh);
+	}
+
+	// The app's database
+	private final AsyncInventoryDatabase mInventoryDatabase;
+
+	// The items listed and their order
+	private ItemQuery mQuery = ItemQuery.ALL;
+
+	// Notified when the contents change
+	private Listener mListener;
+
+	// Total number of items in the inventory, and whether it has been counted yet
+	private int mSize;
+	private boolean mLoaded;
+
+	// Incremented on every invalidation so results of older loads are thrown away
+	private int mGeneration;
+
+	// Loaded pages keyed by page index, ordered from least to most recently used
+	private final LinkedHashMap<Integer, List<Item>> mPages =
+			new LinkedHashMap<Integer, List<Item>>(MAX_RESIDENT_PAGES + 1, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, List<Item>> eldest) {
+					return size() > MAX_RESIDENT_PAGES;
+				}
+			};
+
+	// Pages currently being fetched
+	private final Set<Integer> mLoadingPages = new HashSet<>();
+
+	// The last item before each known page - the key used to fetch that page. The first page's key
+	// is `null`, for the start of the list.
+	private final TreeMap<Integer, Item> mPageKeys = new TreeMap<>();
+
+	/**
+	 * Result of loading a page in the background
+	 */
+	private static final class PageResult {
+		// Whether the page exists, and the last item before it
+		final boolean found;
+		final Item after;
+
+		final List<Item> items;
+
+		PageResult(boolean found, Item after, List<Item> items) {
+			this.found = found;
+			this.after = after;
+			this.items = items;
+		}
+	}
+
+	/**
+	 * The difference between the list before and after a refresh. Rows inside the window of
+	 * loaded pages are diffed item by item, and rows past the window are reported as a single
+	 * insertion or removal at its end.
+	 */
+	public static final class Refresh {
+		// The first page of the refreshed window and the key used to fetch it
+		final int firstPage;
+		final Item after;
+
+		// The window's new contents, and the total number of items after the refresh
+		final List<Item> items;
+		final int size;
+
+		// Changes inside the window, relative to its first row
+		final DiffUtil.DiffResult diff;
+
+		// Number of rows added (or removed, if negative) after the window
+		final int tailDelta;
+
+		Refresh(int firstPage, Item after, List<Item> items, int size, DiffUtil.DiffResult diff, int tailDelta) {
+			this.firstPage = firstPage;
+			this.after = after;
+			this.items = items;
+			this.size = size;
+			this.diff = diff;
+			this.tailDelta = tailDelta;
+		}
+
+		/**
+		 * Report the changes as positions in the whole list
+		 *
+		 * @param callback Receives the changes, usually an adapter
+		 */
+		public void dispatchUpdatesTo(final ListUpdateCallback callback) {
+			final int offset = firstPage * PAGE_SIZE;
+			diff.dispatchUpdatesTo(new ListUpdateCallback() {
+				@Override
+				public void onInserted(int position, int count) {
+					callback.onInserted(position + offset, count);
+				}
+
+				@Override
+				public void onRemoved(int position, int count) {
+					callback.onRemoved(position + offset, count);
+				}
+
+				@Override
+				public void onMoved(int fromPosition, int toPosition) {
+					callback.onMoved(fromPosition + offset, toPosition + offset);
+				}
+
+				@Override
+				public void onChanged(int position, int count, Object payload) {
+					callback.onChanged(position + offset, count, payload);
+				}
+			});
+
+			int tailStart = offset + items.size();
+			if (tailDelta > 0) {
+				callback.onInserted(tailStart, tailDelta);
+			} else if (tailDelta < 0) {
+				callback.onRemoved(tailStart, -tailDelta);
+			}
+		}
+	}
+
+	/**
+	 * Compares the old and new contents of a refreshed window by item ID, name and quantity
+	 */
+	private static final class WindowDiff extends DiffUtil.Callback {
+		private final List<Item> mOldItems;
+		private final List<Item> mNewItems;
+
+		WindowDiff(List<Item> oldItems, List<Item> newItems) {
+			mOldItems = oldItems;
+			mNewItems = newItems;
+		}
+
+		@Override
+		public int getOldListSize() {
+			return mOldItems.size();
+		}
+
+		@Override
+		public int getNewListSize() {
+			return mNewItems.size();
+		}
+
+		@Override
+		public boolean areItemsTheSame(int oldPosition, int newPosition) {
+			return mOldItems.get(oldPosition).getId() == mNewItems.get(newPosition).getId();
+		}
+
+		@Override
+		public boolean areContentsTheSame(int oldPosition, int newPosition) {
+			Item oldItem = mOldItems.get(oldPosition);
+			Item newItem = mNewItems.get(newPosition);
+			return oldItem.getQuantity() == newItem.getQuantity()
+					&& Objects.equals(oldItem.getName(), newItem.getName());
+		}
+	}
+
+	/**
+	 * Constructor that takes an instance of the inventory database and starts counting the items
+	 *
+	 * @param inventoryDb An instance of the inventory database
+	 */
+	public PagedItemList(AsyncInventoryDatabase inventoryDb) {
+		this(inventoryDb, null);
+	}
+
+	/**
+	 * Constructor that starts from a first page read ahead of time, so the list has rows straight
+	 * away. Counts the items in the background as usual if there's no page.
+	 *
+	 * @param inventoryDb An instance of the inventory database
+	 * @param firstPage   The prefetched first page, may be `null`
+	 */
+	public PagedItemList(AsyncInventoryDatabase inventoryDb, StartupPrefetcher.FirstPage firstPage) {
+		mInventoryDatabase = inventoryDb;
+		if (firstPage == null) {
+			invalidate();
+			return;
+		}
+
+		mSize = firstPage.size;
+		mLoaded = true;
+		mPageKeys.put(0, null);
+		if (!firstPage.items.isEmpty()) {
+			mPages.put(0, new ArrayList<>(firstPage.items));
+			mPageKeys.put(1, keyOf(firstPage.items.get(firstPage.items.size() - 1)));
+		}
+	}
+
+	/**
+	 * Get the items listed and their order
+	 *
+	 * @return The query
+	 */
+	public ItemQuery getQuery() {
+		return mQuery;
+	}
+
+	/**
+	 * Change the items listed or their order, reloading the list from the top
+	 *
+	 * @param query The new query
+	 */
+	public void setQuery(ItemQuery query) {
+		if (query.equals(mQuery)) {
+			return;
+		}
+		mQuery = query;
+		invalidate();
+	}
+
+	/**
+	 * Set the listener that's notified when the contents change
+	 *
+	 * @param listener The listener
+	 */
+	public void setListener(Listener listener) {
+		mListener = listener;
+	}
+
+	/**
+	 * Get the total number of items, including the ones that aren't loaded
+	 *
+	 * @return Number of items
+	 */
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Check whether there are any items at all
+	 *
+	 * @return `true` if there are no items
+	 */
+	public boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/**
+	 * Check whether the items have been counted yet
+	 *
+	 * @return `true` once the size is known
+	 */
+	public boolean isLoaded() {
+		return mLoaded;
+	}
+
+	/**
+	 * Get the item at the given position. If its page isn't loaded yet, it's fetched in the
+	 * background and `null` is returned until the listener is told the page has arrived.
+	 *
+	 * @param position The position of the item in the list
+	 * @return The item, or `null` if it isn't loaded yet
+	 */
+	public Item get(int position) {
+		int page = position / PAGE_SIZE;
+		int index = position % PAGE_SIZE;
+
+		List<Item> items = mPages.get(page);
+		if (items == null) {
+			loadPage(page);
+		}
+
+		// Fetch the neighbouring page early so it's ready by the time the user scrolls to it
+		if (index >= PAGE_SIZE - PREFETCH_DISTANCE && (page + 1) * PAGE_SIZE < mSize) {
+			loadPage(page + 1);
+		} else if (index < PREFETCH_DISTANCE && page > 0) {
+			loadPage(page - 1);
+		}
+
+		return items != null && index < items.size() ? items.get(index) : null;
+	}
+
+	/**
+	 * Get the item at the given position if its page is loaded, without fetching anything
+	 *
+	 * @param position The position of the item in the list
+	 * @return The item, or `null` if it isn't loaded
+	 */
+	public Item peek(int position) {
+		List<Item> items = mPages.get(position / PAGE_SIZE);
+		int index = position % PAGE_SIZE;
+		return items != null && index < items.size() ? items.get(index) : null;
+	}
+
+	/**
+	 * Reload the given items if they're loaded, rebinding only the ones whose name or quantity
+	 * actually changed. Items that aren't loaded are skipped, since they'll be read fresh when
+	 * their page is. Use {@link #refresh()} instead when items were added or deleted.
+	 *
+	 * @param ids The IDs of the changed items
+	 */
+	public void reloadItems(Collection<Long> ids) {
+		// In a sorted or filtered list an edit can move an item or take it out, which only a
+		// refresh picks up
+		if (mQuery.dependsOnItemContents()) {
+			if (!ids.isEmpty()) {
+				refresh();
+			}
+			return;
+		}
+
+		final List<Long> loaded = new ArrayList<>();
+		for (Long id : ids) {
+			if (findPosition(id) >= 0) {
+				loaded.add(id);
+			}
+		}
+		if (loaded.isEmpty()) {
+			return;
+		}
+
+		final int generation = mGeneration;
+		final InventoryDatabase db = mInventoryDatabase.getBlockingDatabase();
+		mInventoryDatabase.read(new Callable<List<Item>>() {
+			@Override
+			public List<Item> call() {
+				// Items that were just written are usually still in the item cache
+				List<Item> items = new ArrayList<>(loaded.size());
+				for (Long id : loaded) {
+					Item item = db.getItem(id);
+					if (item != null) {
+						items.add(item);
+					}
+				}
+				return items;
+			}
+		}, new AsyncInventoryDatabase.Callback<List<Item>>() {
+			@Override
+			public void onResult(List<Item> items) {
+				if (generation != mGeneration) {
+					return;
+				}
+				for (Item item : items) {
+					int position = findPosition(item.getId());
+					if (position < 0) {
+						continue;
+					}
+
+					Item current = peek(position);
+					if (current.getQuantity() == item.getQuantity()
+							&& Objects.equals(current.getName(), item.getName())) {
+						continue;
+					}
+					mPages.get(position / PAGE_SIZE).set(position % PAGE_SIZE, item);
+					if (mListener != null) {
+						mListener.onItemsLoaded(position, 1);
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Find the position of a loaded item
+	 *
+	 * @param id The ID of the item
+	 * @return The item's position, or -1 if it isn't loaded
+	 */
+	private int findPosition(long id) {
+		for (Map.Entry<Integer, List<Item>> page : mPages.entrySet()) {
+			List<Item> items = page.getValue();
+			for (int i = 0; i < items.size(); i++) {
+				if (items.get(i).getId() == id) {
+					return page.getKey() * PAGE_SIZE + i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Reload the pages around the one the user looked at last and work out what changed on a
+	 * background thread, so only the rows that changed are rebound. Call this after an item is
+	 * added or deleted. Falls back to {@link #invalidate()} when rows before those pages
+	 * were added or removed, since every loaded position would have shifted.
+	 */
+	public void refresh() {
+		// The most recently used page is the last one in access order
+		int anchor = -1;
+		for (Integer page : mPages.keySet()) {
+			anchor = page;
+		}
+		if (!mLoaded || anchor < 0) {
+			invalidate();
+			return;
+		}
+
+		// Take the run of loaded pages around it as the window to diff
+		int first = anchor;
+		while (mPages.containsKey(first - 1)) {
+			first--;
+		}
+		int last = anchor;
+		while (mPages.containsKey(last + 1)) {
+			last++;
+		}
+		if (!mPageKeys.containsKey(first)) {
+			invalidate();
+			return;
+		}
+		final Item after = mPageKeys.get(first);
+
+		// Copy the window, since rows can change the items in it while the diff is running
+		final List<Item> oldItems = new ArrayList<>();
+		for (int page = first; page <= last; page++) {
+			for (Item item : mPages.get(page)) {
+				oldItems.add(new Item(item.getId(), item.getName(), item.getQuantity(), item.getLowStockThreshold()));
+			}
+		}
+
+		final int firstPage = first;
+		final int windowSize = (last - first + 1) * PAGE_SIZE;
+		final int oldStart = first * PAGE_SIZE;
+		final int oldTail = mSize - oldStart - oldItems.size();
+		final int generation = ++mGeneration;
+		final ItemQuery query = mQuery;
+		final InventoryDatabase db = mInventoryDatabase.getBlockingDatabase();
+		mLoadingPages.clear();
+
+		mInventoryDatabase.read(new Callable<Refresh>() {
+			@Override
+			public Refresh call() {
+				int size = db.getItemCount(query);
+				int start = after == null ? 0 : db.countItemsUpTo(query, after);
+				if (start != oldStart) {
+					return null;
+				}
+
+				List<Item> items = db.getItemsAfter(query, after, windowSize);
+				int tail = size - start - items.size();
+				if (tail < 0) {
+					return null;
+				}
+
+				DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new WindowDiff(oldItems, items), false);
+				return new Refresh(firstPage, after, items, size, diff, tail - oldTail);
+			}
+		}, new AsyncInventoryDatabase.Callback<Refresh>() {
+			@Override
+			public void onResult(Refresh refresh) {
+				if (generation != mGeneration) {
+					return;
+				}
+				if (refresh == null) {
+					invalidate();
+					return;
+				}
+
+				applyRefresh(refresh);
+				if (mListener != null) {
+					mListener.onItemsRefreshed(refresh);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Replace the loaded pages with the refreshed window
+	 *
+	 * @param refresh The result of the refresh
+	 */
+	private void applyRefresh(Refresh refresh) {
+		// Throw away pages that started loading while the refresh was running
+		mGeneration++;
+		mLoadingPages.clear();
+		mPages.clear();
+		mPageKeys.clear();
+		mPageKeys.put(0, null);
+		mPageKeys.put(refresh.firstPage, refresh.after);
+		mSize = refresh.size;
+
+		int page = refresh.firstPage;
+		for (int start = 0; start < refresh.items.size(); start += PAGE_SIZE, page++) {
+			List<Item> items = new ArrayList<>(refresh.items.subList(start,
+					Math.min(start + PAGE_SIZE, refresh.items.size())));
+			mPages.put(page, items);
+			mPageKeys.put(page + 1, keyOf(items.get(items.size() - 1)));
+		}
+	}
+
+	/**
+	 * Drop every loaded page and re-count the items in the background. Call this after changes that
+	 * may touch rows anywhere in the list, like an import, since every loaded position may shift.
+	 */
+	public void invalidate() {
+		final int generation = ++mGeneration;
+		mPages.clear();
+		mLoadingPages.clear();
+		mPageKeys.clear();
+		mPageKeys.put(0, null);
+
+		mInventoryDatabase.getItemCount(mQuery, new AsyncInventoryDatabase.Callback<Integer>() {
+			@Override
+			public void onResult(Integer count) {
+				if (generation != mGeneration) {
+					return;
+				}
+				mSize = count;
+				mLoaded = true;
+				if (mListener != null) {
+					mListener.onItemsInvalidated();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Fetch a page in the background unless it's already loaded or on its way
+	 *
+	 * @param page The index of the page to load
+	 */
+	private void loadPage(int page) {
+		if (mPages.containsKey(page) || !mLoadingPages.add(page)) {
+			return;
+		}
+
+		// Start from the closest page whose key is known, skipping ahead in the database if the user
+		// has jumped past pages that were never loaded
+		final Map.Entry<Integer, Item> known = mPageKeys.floorEntry(page);
+		final int generation = mGeneration;
+		final ItemQuery query = mQuery;
+		final InventoryDatabase db = mInventoryDatabase.getBlockingDatabase();
+
+		mInventoryDatabase.read(new Callable<PageResult>() {
+			@Override
+			public PageResult call() {
+				Item after = known.getValue();
+				if (known.getKey() != page) {
+					after = db.getItemAfter(query, after, (page - known.getKey()) * PAGE_SIZE - 1);
+					if (after == null) {
+						return new PageResult(false, null, new ArrayList<Item>());
+					}
+				}
+				return new PageResult(true, after, db.getItemsAfter(query, after, PAGE_SIZE));
+			}
+		}, new AsyncInventoryDatabase.Callback<PageResult>() {
+			@Override
+			public void onResult(PageResult result) {
+				if (generation != mGeneration) {
+					return;
+				}
+				mLoadingPages.remove(page);
+				if (result.found) {
+					mPageKeys.put(page, result.after != null ? keyOf(result.after) : null);
+				}
+				if (!result.items.isEmpty()) {
+					mPageKeys.put(page + 1, keyOf(result.items.get(result.items.size() - 1)));
+				}
+				mPages.put(page, result.items);
+
+				if (mListener != null) {
+					mListener.onItemsLoaded(page * PAGE_SIZE, result.items.size());
+				}
+			}
+
+			@Override
+			public void onError(Exception e) {
+				AsyncInventoryDatabase.Callback.super.onError(e);
+				if (generation == mGeneration) {
+					mLoadingPages.remove(page);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Copy an item to use as a page key, so editing the listed item can't move the key
+	 *
+	 * @param item The last item before a page
+	 * @return The key
+	 */
+	private static Item keyOf(Item item) {
+		return new Item(item.getId(), item.getName(), item.getQuantity(), item.getLowStockThreshold());
+	}
+}
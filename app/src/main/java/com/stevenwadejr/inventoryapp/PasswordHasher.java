@@ -0,0 +1,165 @@
+package com.stevenwadejr.inventoryapp;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.security.spec.KeySpec;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes passwords with PBKDF2 and a random salt per user. The number of iterations is stored with
+ * each hash, so it can be raised over time - a user whose hash used fewer iterations is rehashed
+ * the next time they log in. Hashing is deliberately slow, so never call this on the main thread.
+ *
+ * Passwords from before salting were stored as a bare MD5 hash, recorded with 0 iterations. They
+ * can still be checked so those users can log in and be rehashed.
+ */
+public class PasswordHasher {
+
+	// Iterations used for new hashes. Raise this as devices get faster.
+	public static final int DEFAULT_ITERATIONS = 100_000;
+
+	// Iterations recorded for the old unsalted MD5 hashes
+	public static final int LEGACY_MD5_ITERATIONS = 0;
+
+	private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+	private static final int SALT_BYTES = 16;
+	private static final int KEY_BITS = 256;
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	// Iterations used for new hashes
+	private final int mIterations;
+
+	// Source of salts
+	private final SecureRandom mRandom = new SecureRandom();
+
+	/**
+	 * A password hash with everything needed to check a password against it
+	 */
+	public static final class HashedPassword {
+		// The hash, as hex
+		public final String hash;
+
+		// The salt, as hex, or `null` for a legacy MD5 hash
+		public final String salt;
+
+		// Iterations the hash was made with
+		public final int iterations;
+
+		public HashedPassword(String hash, String salt, int iterations) {
+			this.hash = hash;
+			this.salt = salt;
+			this.iterations = iterations;
+		}
+	}
+
+	/**
+	 * Constructor that takes the cost of new hashes
+	 *
+	 * @param iterations PBKDF2 iterations for new hashes
+	 */
+	public PasswordHasher(int iterations) {
+		mIterations = iterations;
+	}
+
+	/**
+	 * Hash a password with a new random salt
+	 *
+	 * @param password The plain text password
+	 * @return The hash
+	 */
+	public HashedPassword hash(String password) {
+		byte[] salt = new byte[SALT_BYTES];
+		mRandom.nextBytes(salt);
+		return new HashedPassword(toHex(pbkdf2(password, salt, mIterations)), toHex(salt), mIterations);
+	}
+
+	/**
+	 * Check a password against a stored hash, taking the same time whether or not it matches
+	 *
+	 * @param password The plain text password
+	 * @param stored   The stored hash
+	 * @return Whether the password matches
+	 */
+	public boolean verify(String password, HashedPassword stored) {
+		byte[] expected = fromHex(stored.hash);
+		if (expected == null) {
+			return false;
+		}
+
+		byte[] actual;
+		if (stored.iterations == LEGACY_MD5_ITERATIONS) {
+			actual = md5(password);
+		} else {
+			byte[] salt = fromHex(stored.salt);
+			if (salt == null) {
+				return false;
+			}
+			actual = pbkdf2(password, salt, stored.iterations);
+		}
+		return MessageDigest.isEqual(expected, actual);
+	}
+
+	/**
+	 * Check whether a stored hash is weaker than new hashes and should be replaced
+	 *
+	 * @param stored The stored hash
+	 * @return Whether the password should be hashed again
+	 */
+	public boolean needsRehash(HashedPassword stored) {
+		return stored.iterations < mIterations;
+	}
+
+	private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+		KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, KEY_BITS);
+		try {
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		} catch (GeneralSecurityException e) {
+			// Every supported Android version has this algorithm
+			throw new IllegalStateException(ALGORITHM + " is not available", e);
+		}
+	}
+
+	private static byte[] md5(String password) {
+		try {
+			return MessageDigest.getInstance("MD5").digest(password.getBytes(StandardCharsets.UTF_8));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("MD5 is not available", e);
+		}
+	}
+
+	/**
+	 * Encode bytes as lower case hex
+	 */
+	static String toHex(byte[] bytes) {
+		char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Decode hex, returning `null` if it isn't valid hex
+	 */
+	private static byte[] fromHex(String hex) {
+		if (hex == null || hex.length() % 2 != 0) {
+			return null;
+		}
+		byte[] bytes = new byte[hex.length() / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			int high = Character.digit(hex.charAt(i * 2), 16);
+			int low = Character.digit(hex.charAt(i * 2 + 1), 16);
+			if (high < 0 || low < 0) {
+				return null;
+			}
+			bytes[i] = (byte) ((high << 4) | low);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,206 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects quantity changes made in the inventory list and writes them to the database in the
+ * background. Rapid changes to the same item are collapsed into a single write, changes that end
+ * up back at the stored value are skipped, and everything pending is flushed in one transaction on
+ * the database's writer thread.
+ *
+ * Taps on the + and - buttons are sent as deltas that SQL applies to whatever is stored, so they
+ * can't overwrite a change made somewhere else in the meantime. Typing a quantity sets it outright.
+ */
+public class QuantityWriteCoalescer {
+
+	// Logcat tag
+	private static final String TAG = "QuantityWriteCoalescer";
+
+	// How long to wait after the first change before writing it out
+	private static final long FLUSH_DELAY_MS = 500;
+
+	// An instance of the app's database
+	private final AsyncInventoryDatabase mInventoryDatabase;
+
+	// Used to schedule flushes on the main thread
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+	// Changes waiting to be written, keyed by item ID
+	private final Map<Long, PendingWrite> mPending = new LinkedHashMap<>();
+
+	// Number of rows written and number of writes that were collapsed or skipped
+	private long mWriteCount;
+	private long mAvoidedWriteCount;
+
+	private final Runnable mFlushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * A quantity change waiting to be written
+	 */
+	private static final class PendingWrite {
+		// The quantity shown before the first pending change
+		final int storedQuantity;
+
+		// The latest quantity requested
+		int quantity;
+
+		// Whether the quantity was typed in (and should be set) rather than adjusted with the buttons
+		boolean absolute;
+
+		PendingWrite(int storedQuantity, int quantity, boolean absolute) {
+			this.storedQuantity = storedQuantity;
+			this.quantity = quantity;
+			this.absolute = absolute;
+		}
+	}
+
+	/**
+	 * Constructor that takes an instance of the inventory database
+	 *
+	 * @param inventoryDb An instance of the inventory database
+	 */
+	public QuantityWriteCoalescer(AsyncInventoryDatabase inventoryDb) {
+		mInventoryDatabase = inventoryDb;
+	}
+
+	/**
+	 * Set an item's quantity, queueing the database write. The in-memory item is updated right away.
+	 *
+	 * @param item     The item to update
+	 * @param quantity The new quantity - negative numbers are treated as zero
+	 */
+	public void setQuantity(Item item, int quantity) {
+		queue(item, quantity, true);
+	}
+
+	/**
+	 * Add to (or subtract from) an item's quantity, queueing the database write. The in-memory item
+	 * is updated right away.
+	 *
+	 * @param item  The item to update
+	 * @param delta The amount to add - negative to subtract, stopping at zero
+	 */
+	public void adjustQuantity(Item item, int delta) {
+		queue(item, item.getQuantity() + delta, false);
+	}
+
+	/**
+	 * Queue a change to an item's quantity
+	 *
+	 * @param item     The item to update
+	 * @param quantity The new quantity - negative numbers are treated as zero
+	 * @param absolute Whether the quantity should be set outright rather than applied as a delta
+	 */
+	private void queue(Item item, int quantity, boolean absolute) {
+		quantity = Math.max(0, quantity);
+		if (item.getQuantity() == quantity) {
+			// Nothing changed, so there's nothing to write
+			mAvoidedWriteCount++;
+			return;
+		}
+
+		PendingWrite pending = mPending.get(item.getId());
+		if (pending == null) {
+			mPending.put(item.getId(), new PendingWrite(item.getQuantity(), quantity, absolute));
+		} else {
+			// Replace the queued value instead of writing twice. Once a quantity has been typed in,
+			// later taps build on it, so the write stays absolute.
+			pending.quantity = quantity;
+			pending.absolute |= absolute;
+			mAvoidedWriteCount++;
+		}
+		item.setQuantity(quantity);
+
+		// Start the timer with the first pending change so writes are never held back for long
+		if (pending == null && mPending.size() == 1) {
+			mHandler.postDelayed(mFlushRunnable, FLUSH_DELAY_MS);
+		}
+	}
+
+	/**
+	 * Forget any pending write for the given item, for example when it's being deleted
+	 *
+	 * @param itemId The ID of the item
+	 */
+	public void discard(long itemId) {
+		if (mPending.remove(itemId) != null) {
+			mAvoidedWriteCount++;
+		}
+	}
+
+	/**
+	 * Check whether an item has a change that hasn't been written yet
+	 *
+	 * @param itemId The ID of the item
+	 * @return `true` if a change is waiting to be written
+	 */
+	public boolean hasPending(long itemId) {
+		return mPending.containsKey(itemId);
+	}
+
+	/**
+	 * Write every pending change to the database in a single transaction
+	 */
+	public void flush() {
+		mHandler.removeCallbacks(mFlushRunnable);
+		if (mPending.isEmpty()) {
+			return;
+		}
+
+		Map<Long, Integer> quantities = new LinkedHashMap<>();
+		Map<Long, Integer> deltas = new LinkedHashMap<>();
+		for (Map.Entry<Long, PendingWrite> entry : mPending.entrySet()) {
+			PendingWrite pending = entry.getValue();
+			if (pending.quantity == pending.storedQuantity) {
+				// The item was changed and then changed back
+				mAvoidedWriteCount++;
+			} else if (pending.absolute) {
+				quantities.put(entry.getKey(), pending.quantity);
+			} else {
+				deltas.put(entry.getKey(), pending.quantity - pending.storedQuantity);
+			}
+		}
+		mPending.clear();
+
+		if (quantities.isEmpty() && deltas.isEmpty()) {
+			return;
+		}
+		mInventoryDatabase.applyQuantityChanges(quantities, deltas,
+				new AsyncInventoryDatabase.Callback<InventoryDatabase.QuantityChanges>() {
+					@Override
+					public void onResult(InventoryDatabase.QuantityChanges changes) {
+						mWriteCount += changes.rowsUpdated;
+						Log.d(TAG, "Flushed " + changes.rowsUpdated + " quantity changes (" + mWriteCount
+								+ " written, " + mAvoidedWriteCount + " avoided)");
+					}
+				});
+	}
+
+	/**
+	 * Get the number of rows written to the database
+	 *
+	 * @return Number of writes
+	 */
+	public long getWriteCount() {
+		return mWriteCount;
+	}
+
+	/**
+	 * Get the number of writes that were collapsed into a later one or skipped because nothing changed
+	 *
+	 * @return Number of avoided writes
+	 */
+	public long getAvoidedWriteCount() {
+		return mAvoidedWriteCount;
+	}
+}
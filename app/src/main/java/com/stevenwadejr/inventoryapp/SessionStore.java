@@ -0,0 +1,170 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the last user to log in, so they go straight to the inventory list on the next launch
+ * without checking their password again. A session is the username, an expiry time and a random
+ * token, kept in the app's private preferences apart from the user's settings. Only a hash of the
+ * token is kept as the record of the session, in a preferences file of its own, and a session is
+ * only restored if its token still matches that record - so a session file copied from elsewhere or
+ * left behind after logging out isn't enough to get in. Logging out deletes both.
+ */
+public class SessionStore {
+
+	// How long a session lasts after logging in
+	public static final long SESSION_LIFETIME_MS = TimeUnit.DAYS.toMillis(30);
+
+	// Names of the preferences files the session and the hash of its token are kept in
+	private static final String PREFERENCES_NAME = "session";
+	private static final String TOKEN_HASH_PREFERENCES_NAME = "session_token_hash";
+
+	// Keys for the parts of the session
+	private static final String KEY_USERNAME = "username";
+	private static final String KEY_EXPIRES_AT = "expires_at";
+	private static final String KEY_TOKEN = "token";
+	private static final String KEY_TOKEN_HASH = "token_hash";
+
+	// Number of random bytes in a token
+	private static final int TOKEN_BYTES = 32;
+
+	// Singleton of the session store
+	private static SessionStore sSessionStore;
+
+	// Where the session is kept
+	private final SharedPreferences mPrefs;
+
+	// Where the hash of the session's token is kept
+	private final SharedPreferences mTokenHashPrefs;
+
+	// Generates the tokens
+	private final SecureRandom mRandom = new SecureRandom();
+
+	/**
+	 * Factory method to get the singleton and create a new one if needed
+	 *
+	 * @param context The app's context
+	 * @return The singleton
+	 */
+	public static synchronized SessionStore getInstance(Context context) {
+		if (sSessionStore == null) {
+			Context appContext = context.getApplicationContext();
+			sSessionStore = new SessionStore(appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE),
+					appContext.getSharedPreferences(TOKEN_HASH_PREFERENCES_NAME, Context.MODE_PRIVATE));
+		}
+		return sSessionStore;
+	}
+
+	/**
+	 * Constructor that takes where to keep the session, for tests
+	 *
+	 * @param prefs          Where the session is kept
+	 * @param tokenHashPrefs Where the hash of the session's token is kept
+	 */
+	@VisibleForTesting
+	SessionStore(SharedPreferences prefs, SharedPreferences tokenHashPrefs) {
+		mPrefs = prefs;
+		mTokenHashPrefs = tokenHashPrefs;
+	}
+
+	/**
+	 * Start a session for a user who just logged in, replacing any other session
+	 *
+	 * @param username The user's username
+	 */
+	public void start(String username) {
+		start(username, System.currentTimeMillis());
+	}
+
+	/**
+	 * Start a session at the given time
+	 */
+	@VisibleForTesting
+	void start(String username, long now) {
+		byte[] bytes = new byte[TOKEN_BYTES];
+		mRandom.nextBytes(bytes);
+		String token = PasswordHasher.toHex(bytes);
+
+		mTokenHashPrefs.edit()
+				.putString(KEY_TOKEN_HASH, hashToken(username, token))
+				.apply();
+		mPrefs.edit()
+				.putString(KEY_USERNAME, username)
+				.putLong(KEY_EXPIRES_AT, now + SESSION_LIFETIME_MS)
+				.putString(KEY_TOKEN, token)
+				.apply();
+	}
+
+	/**
+	 * Get the user with a valid session. An expired session, or one whose token doesn't match, is
+	 * revoked.
+	 *
+	 * @return The logged in user's username, or `null` if there's no valid session
+	 */
+	public String getUsername() {
+		return getUsername(System.currentTimeMillis());
+	}
+
+	/**
+	 * Get the user with a session that's valid at the given time
+	 */
+	@VisibleForTesting
+	String getUsername(long now) {
+		String username = mPrefs.getString(KEY_USERNAME, null);
+		if (username == null) {
+			return null;
+		}
+		if (now >= mPrefs.getLong(KEY_EXPIRES_AT, 0) || !tokenMatches(username)) {
+			end();
+			return null;
+		}
+		return username;
+	}
+
+	/**
+	 * Revoke the current session and delete its token, if there is one
+	 */
+	public void end() {
+		mPrefs.edit().clear().apply();
+		mTokenHashPrefs.edit().clear().apply();
+	}
+
+	/**
+	 * Check the session's token against the hash kept when it started
+	 *
+	 * @param username The session's username, which the hash covers too
+	 */
+	private boolean tokenMatches(String username) {
+		String token = mPrefs.getString(KEY_TOKEN, null);
+		String expected = mTokenHashPrefs.getString(KEY_TOKEN_HASH, null);
+		if (token == null || expected == null) {
+			return false;
+		}
+		return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+				hashToken(username, token).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Hash a token together with the username it was issued to
+	 */
+	private static String hashToken(String username, String token) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(username.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(token.getBytes(StandardCharsets.UTF_8));
+			return PasswordHasher.toHex(digest.digest());
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+}
@@ -0,0 +1,33 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.telephony.SmsManager;
+import android.util.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Sends text messages through the phone's {@link SmsManager}
+ */
+public class SmsManagerSender implements SmsSender {
+
+	// Logcat tag
+	private static final String TAG = "SmsManagerSender";
+
+	@Override
+	public boolean send(String phoneNumber, String message) {
+		try {
+			SmsManager smsManager = SmsManager.getDefault();
+			ArrayList<String> parts = smsManager.divideMessage(message);
+			if (parts.size() == 1) {
+				smsManager.sendTextMessage(phoneNumber, null, message, null, null);
+			} else {
+				smsManager.sendMultipartTextMessage(phoneNumber, null, parts, null, null);
+			}
+			return true;
+		} catch (RuntimeException e) {
+			// Thrown when the permission was revoked or the number is invalid
+			Log.e(TAG, "Couldn't send text message", e);
+			return false;
+		}
+	}
+}
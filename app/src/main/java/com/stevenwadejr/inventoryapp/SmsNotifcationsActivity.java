@@ -12,8 +12,11 @@ import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.widget.CompoundButton;
+import android.widget.EditText;
 
 import com.google.android.material.switchmaterial.SwitchMaterial;
 
@@ -25,11 +28,16 @@ public class SmsNotifcationsActivity extends AppCompatActivity {
 	// Name of the app preference to store whether the user wants to receive notifications or not
 	public static String PREFERENCE_RECEIVE_NOTIFICATIONS = "pref_receive_notifications";
 
+	// Name of the app preference to store the phone number low stock alerts are texted to
+	public static String PREFERENCE_PHONE_NUMBER = "pref_notification_phone_number";
+
 	// Permissions code
 	private final int REQUEST_SEND_SMS_CODE = 0;
 
 	SwitchMaterial notificationsToggle;
 
+	EditText phoneNumberField;
+
 	SharedPreferences sharedPrefs;
 
 	boolean receiveNotifications = false;
@@ -41,6 +49,7 @@ public class SmsNotifcationsActivity extends AppCompatActivity {
 		setContentView(R.layout.activity_sms_notifcations);
 
 		notificationsToggle = findViewById(R.id.notificationsToggle);
+		phoneNumberField = findViewById(R.id.notificationPhoneNumber);
 
 		// Listen for changes to the toggle switch
 		notificationsToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
@@ -65,6 +74,23 @@ public class SmsNotifcationsActivity extends AppCompatActivity {
 		// Access the default shared prefs
 		sharedPrefs = PreferenceManager.getDefaultSharedPreferences(this);
 		receiveNotifications = sharedPrefs.getBoolean(PREFERENCE_RECEIVE_NOTIFICATIONS, false);
+		phoneNumberField.setText(sharedPrefs.getString(PREFERENCE_PHONE_NUMBER, ""));
+
+		// Save the phone number as it's typed
+		phoneNumberField.addTextChangedListener(new TextWatcher() {
+			@Override
+			public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+			}
+
+			@Override
+			public void onTextChanged(CharSequence s, int start, int before, int count) {
+			}
+
+			@Override
+			public void afterTextChanged(Editable s) {
+				sharedPrefs.edit().putString(PREFERENCE_PHONE_NUMBER, s.toString().trim()).apply();
+			}
+		});
 
 		// Set the initial state of the toggle switch based on the permissions and preferences selected
 		if (receiveNotifications
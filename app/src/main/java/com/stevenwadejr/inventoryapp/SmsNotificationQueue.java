@@ -0,0 +1,263 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends low stock alerts to the user as text messages. Alerts are queued in the database so none
+ * are lost if the app is closed, and sent as a digest covering every item that ran low during
+ * the digest interval rather than one message per item.
+ *
+ * Digests are rate limited with a token bucket so a burst of alerts can't flood the carrier, and a
+ * digest that fails to send is retried with exponential backoff. Nothing is sent unless the user
+ * has notifications turned on and has entered a phone number. Only the logged in user's alerts are
+ * sent - other users' alerts wait in the queue until they log in again.
+ *
+ * Reading the queue happens on this class's own thread, but adding to and removing from it is left
+ * to the database's writer, which this thread waits on.
+ */
+public class SmsNotificationQueue implements LowStockMonitor.Listener {
+
+	// Logcat tag
+	private static final String TAG = "SmsNotificationQueue";
+
+	// How long alerts are gathered into one digest, and the shortest gap between digests
+	@VisibleForTesting
+	static final long DIGEST_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+	// Largest burst of digests, and how often the allowance grows back by one
+	@VisibleForTesting
+	static final int RATE_LIMIT_BURST = 4;
+	@VisibleForTesting
+	static final long RATE_LIMIT_REFILL_MS = TimeUnit.MINUTES.toMillis(15);
+
+	// Delay before the first retry of a failed digest, doubling on each failure up to the maximum
+	@VisibleForTesting
+	static final long RETRY_BASE_MS = TimeUnit.SECONDS.toMillis(30);
+	private static final long RETRY_MAX_MS = TimeUnit.MINUTES.toMillis(30);
+
+	// Most alerts covered by one digest, and how many of them are named in the message
+	private static final int MAX_DIGEST_ALERTS = 500;
+	private static final int MAX_NAMED_ALERTS = 5;
+
+	// Singleton of the queue
+	private static SmsNotificationQueue sSmsNotificationQueue;
+
+	// The app's context, used for message text
+	private final Context mContext;
+
+	// Where alerts are queued
+	private final AsyncInventoryDatabase mInventoryDatabase;
+
+	// Where the notification preferences are stored
+	private final SharedPreferences mSharedPrefs;
+
+	// Sends the digests
+	private final SmsSender mSmsSender;
+
+	// Queues and sends alerts off the main thread
+	private final ScheduledExecutorService mExecutor;
+
+	// Limits how often digests are sent
+	private final TokenBucket mRateLimit;
+
+	// Number of digests in a row that failed to send
+	private int mFailures;
+
+	// No digest is sent before this time, to wait out the digest interval or a retry delay
+	private long mNextSendAt;
+
+	// The next scheduled attempt, or `null` if none is scheduled. Only used on the executor.
+	private ScheduledFuture<?> mScheduled;
+
+	// Sends whatever is due and schedules the next attempt
+	private final Runnable mRunDispatch = new Runnable() {
+		@Override
+		public void run() {
+			if (mScheduled != null) {
+				mScheduled.cancel(false);
+				mScheduled = null;
+			}
+			try {
+				long delay = dispatch(System.currentTimeMillis());
+				if (delay >= 0) {
+					mScheduled = mExecutor.schedule(this, delay, TimeUnit.MILLISECONDS);
+				}
+			} catch (RuntimeException e) {
+				Log.e(TAG, "Couldn't send queued notifications", e);
+			}
+		}
+	};
+
+	/**
+	 * Factory method to get the singleton and create a new one if needed. Creating it starts
+	 * listening for low stock alerts and sends anything left queued from before.
+	 *
+	 * @param context The app's context
+	 * @return The singleton
+	 */
+	public static SmsNotificationQueue getInstance(Context context) {
+		if (sSmsNotificationQueue == null) {
+			Context appContext = context.getApplicationContext();
+			sSmsNotificationQueue = new SmsNotificationQueue(appContext, AsyncInventoryDatabase.getInstance(appContext),
+					PreferenceManager.getDefaultSharedPreferences(appContext), new SmsManagerSender());
+			LowStockMonitor.getInstance(appContext).addListener(sSmsNotificationQueue);
+			sSmsNotificationQueue.mExecutor.execute(sSmsNotificationQueue.mRunDispatch);
+		}
+		return sSmsNotificationQueue;
+	}
+
+	/**
+	 * Constructor that takes everything the queue uses, so tests can swap in a fake sender
+	 *
+	 * @param context     The app's context
+	 * @param inventoryDb An instance of the async inventory database
+	 * @param sharedPrefs Where the notification preferences are stored
+	 * @param smsSender   Sends the digests
+	 */
+	@VisibleForTesting
+	SmsNotificationQueue(Context context, AsyncInventoryDatabase inventoryDb, SharedPreferences sharedPrefs,
+			SmsSender smsSender) {
+		mContext = context;
+		mInventoryDatabase = inventoryDb;
+		mSharedPrefs = sharedPrefs;
+		mSmsSender = smsSender;
+		mRateLimit = new TokenBucket(RATE_LIMIT_BURST, RATE_LIMIT_REFILL_MS, System.currentTimeMillis());
+		mExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "sms-notification-queue");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queue alerts in the background and send them once the digest interval has passed
+	 */
+	@Override
+	public void onLowStock(List<LowStockEvent> events) {
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					mInventoryDatabase.awaitWrite(new Callable<Void>() {
+						@Override
+						public Void call() {
+							mInventoryDatabase.getBlockingDatabase().queueNotifications(events);
+							return null;
+						}
+					});
+				} catch (RuntimeException e) {
+					Log.e(TAG, "Couldn't queue low stock alerts", e);
+				}
+				mRunDispatch.run();
+			}
+		});
+	}
+
+	/**
+	 * Send a digest of the queued alerts if one is due
+	 *
+	 * @param now The current time in milliseconds
+	 * @return Milliseconds until this should be called again, or -1 if there's nothing to send
+	 */
+	@VisibleForTesting
+	synchronized long dispatch(long now) {
+		// Alerts queued before notifications were turned off shouldn't be sent once they're back on
+		if (!mSharedPrefs.getBoolean(SmsNotifcationsActivity.PREFERENCE_RECEIVE_NOTIFICATIONS, false)) {
+			mInventoryDatabase.awaitWrite(new Callable<Void>() {
+				@Override
+				public Void call() {
+					mInventoryDatabase.getBlockingDatabase().clearQueuedNotifications();
+					return null;
+				}
+			});
+			mFailures = 0;
+			return -1;
+		}
+
+		final InventoryDatabase.QueuedNotifications queued =
+				mInventoryDatabase.getBlockingDatabase().getQueuedNotifications(MAX_DIGEST_ALERTS);
+		if (queued.events.isEmpty()) {
+			return -1;
+		}
+
+		// Keep the alerts until there's somewhere to send them
+		String phoneNumber = mSharedPrefs.getString(SmsNotifcationsActivity.PREFERENCE_PHONE_NUMBER, "").trim();
+		if (phoneNumber.isEmpty()) {
+			Log.w(TAG, "No phone number to send " + queued.events.size() + " low stock alerts to");
+			return -1;
+		}
+
+		// Give alerts that arrive shortly after the first one a chance to join the same digest
+		long sendAt = Math.max(mNextSendAt, queued.events.get(0).createdAt + DIGEST_INTERVAL_MS);
+		if (now < sendAt) {
+			return sendAt - now;
+		}
+		if (!mRateLimit.tryAcquire(now)) {
+			return mRateLimit.millisUntilAvailable(now);
+		}
+
+		if (!mSmsSender.send(phoneNumber, buildDigest(queued.events))) {
+			mFailures++;
+			long delay = Math.min(RETRY_BASE_MS << Math.min(mFailures - 1, 16), RETRY_MAX_MS);
+			Log.w(TAG, "Couldn't send low stock digest, retrying in " + delay + "ms");
+			mNextSendAt = now + delay;
+			return delay;
+		}
+
+		mFailures = 0;
+		mInventoryDatabase.awaitWrite(new Callable<Void>() {
+			@Override
+			public Void call() {
+				mInventoryDatabase.getBlockingDatabase().removeQueuedNotifications(queued);
+				return null;
+			}
+		});
+		mNextSendAt = now + DIGEST_INTERVAL_MS;
+
+		// Alerts that arrived while sending wait for the next interval
+		return dispatch(now);
+	}
+
+	/**
+	 * Build the text of a digest, naming the first few items and counting the rest
+	 *
+	 * @param events The alerts in the digest
+	 * @return The message text
+	 */
+	@VisibleForTesting
+	String buildDigest(List<LowStockEvent> events) {
+		if (events.size() == 1) {
+			LowStockEvent event = events.get(0);
+			return mContext.getString(R.string.low_stock_sms_one, event.name, event.quantity);
+		}
+
+		StringBuilder items = new StringBuilder();
+		int named = Math.min(events.size(), MAX_NAMED_ALERTS);
+		for (int i = 0; i < named; i++) {
+			if (i > 0) {
+				items.append(", ");
+			}
+			items.append(events.get(i).name).append(" (").append(events.get(i).quantity).append(')');
+		}
+		if (events.size() > named) {
+			items.append(mContext.getString(R.string.low_stock_sms_more, events.size() - named));
+		}
+		return mContext.getString(R.string.low_stock_sms_many, events.size(), items.toString());
+	}
+}
@@ -0,0 +1,15 @@
+package com.stevenwadejr.inventoryapp;
+
+/**
+ * Sends a text message. Lets the notification queue be tested without a real phone.
+ */
+public interface SmsSender {
+	/**
+	 * Send a text message, splitting it into parts if it's too long for one
+	 *
+	 * @param phoneNumber The number to send to
+	 * @param message     The message
+	 * @return Whether the message was handed off for sending
+	 */
+	boolean send(String phoneNumber, String message);
+}
@@ -0,0 +1,172 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Gets the inventory list ready before it opens. As soon as the process starts, the database is
+ * opened (running any migrations) on a reader thread, and the item count and first page of the
+ * logged in user's items are read, which also warms SQLite's page cache. A cold start only knows the
+ * user when a session was restored, so the login screen prefetches again once someone logs in. The
+ * inventory list takes the result when it opens, so it can show rows on its first frame instead of
+ * waiting on the database after login.
+ *
+ * The prefetched page is thrown away as soon as any item changes, and is only handed over while
+ * the same user is logged in, so the list never starts out stale. All methods must be called on the
+ * main thread.
+ */
+public class StartupPrefetcher {
+
+	// Logcat tag
+	private static final String TAG = "StartupPrefetcher";
+
+	// Time spent opening the database and reading the first page in the background
+	private static final LatencyHistogram METRIC_PREFETCH = Metrics.histogram("startup.prefetch");
+
+	// Singleton of the prefetcher
+	private static StartupPrefetcher sStartupPrefetcher;
+
+	// The app's database
+	private final AsyncInventoryDatabase mInventoryDatabase;
+
+	// The prefetched first page, or `null` if there isn't one ready
+	private FirstPage mFirstPage;
+
+	// The user whose page is prefetched or on its way
+	private String mOwner;
+
+	// Whether a prefetch is running
+	private boolean mLoading;
+
+	// Incremented whenever items change so a prefetch that was running is thrown away
+	private int mGeneration;
+
+	/**
+	 * The item count and first page of the inventory, read together in the background
+	 */
+	public static final class FirstPage {
+		// The user whose items these are
+		public final String owner;
+
+		// Total number of items
+		public final int size;
+
+		// The first page of items, in list order
+		public final List<Item> items;
+
+		FirstPage(String owner, int size, List<Item> items) {
+			this.owner = owner;
+			this.size = size;
+			this.items = items;
+		}
+	}
+
+	/**
+	 * Factory method to get the singleton and create a new one if needed
+	 *
+	 * @param context The app's context
+	 * @return The singleton
+	 */
+	public static StartupPrefetcher getInstance(Context context) {
+		if (sStartupPrefetcher == null) {
+			sStartupPrefetcher = new StartupPrefetcher(AsyncInventoryDatabase.getInstance(context));
+		}
+		return sStartupPrefetcher;
+	}
+
+	/**
+	 * Create a prefetcher. The app uses the singleton from {@link #getInstance(Context)}, tests
+	 * build their own.
+	 *
+	 * @param inventoryDb The app's database
+	 */
+	@VisibleForTesting
+	StartupPrefetcher(AsyncInventoryDatabase inventoryDb) {
+		mInventoryDatabase = inventoryDb;
+
+		// A change makes the prefetched page stale, so drop it and let the list load its own
+		mInventoryDatabase.addChangeListener(new InventoryDatabase.ChangeListener() {
+			@Override
+			public void onItemsChanged(InventoryDatabase.ItemChanges changes) {
+				mGeneration++;
+				mFirstPage = null;
+				mLoading = false;
+			}
+		});
+	}
+
+	/**
+	 * Open the database and read the logged in user's first page in the background, unless their
+	 * page is already prefetched or on its way. Cheap to call repeatedly.
+	 */
+	public void prefetch() {
+		final InventoryDatabase db = mInventoryDatabase.getBlockingDatabase();
+		final String owner = db.getOwner();
+		if (owner.equals(mOwner) && (mFirstPage != null || mLoading)) {
+			return;
+		}
+
+		// Anything prefetched for another user is no use now
+		final int generation = ++mGeneration;
+		mOwner = owner;
+		mFirstPage = null;
+		mLoading = true;
+
+		mInventoryDatabase.read(new Callable<FirstPage>() {
+			@Override
+			public FirstPage call() {
+				long start = System.nanoTime();
+				try {
+					// The first call opens the database, so the list never pays for it
+					int size = db.getItemCount();
+					List<Item> items = db.getItemsAfter(0, PagedItemList.PAGE_SIZE);
+
+					// Someone else logged in while this was reading, so it may be a mix of both
+					return owner.equals(db.getOwner()) ? new FirstPage(owner, size, items) : null;
+				} finally {
+					METRIC_PREFETCH.recordSince(start);
+				}
+			}
+		}, new AsyncInventoryDatabase.Callback<FirstPage>() {
+			@Override
+			public void onResult(FirstPage firstPage) {
+				if (generation != mGeneration) {
+					return;
+				}
+				mLoading = false;
+				mFirstPage = firstPage;
+				if (firstPage != null) {
+					Log.i(TAG, "Prefetched " + firstPage.items.size() + " of " + firstPage.size + " items");
+				}
+			}
+
+			@Override
+			public void onError(Exception e) {
+				AsyncInventoryDatabase.Callback.super.onError(e);
+				if (generation == mGeneration) {
+					mLoading = false;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Hand over the prefetched page. It's only handed over once - the next caller gets `null` until
+	 * {@link #prefetch()} is called again.
+	 *
+	 * @return The first page, or `null` if it isn't ready, went stale or is another user's
+	 */
+	public FirstPage take() {
+		FirstPage firstPage = mFirstPage;
+		mFirstPage = null;
+		if (firstPage == null || !firstPage.owner.equals(mInventoryDatabase.getBlockingDatabase().getOwner())) {
+			return null;
+		}
+		return firstPage;
+	}
+}
@@ -0,0 +1,73 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps compiled statements for the database's hot write paths, so each call only has to bind new
+ * arguments instead of building a ContentValues and having SQLite parse the SQL again.
+ *
+ * A statement is not safe to use from two threads at once - callers should synchronize on the
+ * statement while binding and executing it, and bind every argument each time, since the cache
+ * never clears a statement that another thread may be holding.
+ */
+public class StatementCache {
+
+	// The helper that owns the database the statements are compiled against
+	private final SQLiteOpenHelper mHelper;
+
+	// The database the cached statements belong to
+	private SQLiteDatabase mDatabase;
+
+	// Compiled statements keyed by their SQL
+	private final Map<String, SQLiteStatement> mStatements = new HashMap<>();
+
+	/**
+	 * Constructor that takes the helper that owns the database
+	 *
+	 * @param helper The database's open helper
+	 */
+	public StatementCache(SQLiteOpenHelper helper) {
+		mHelper = helper;
+	}
+
+	/**
+	 * Get the compiled statement for the given SQL, compiling it the first time it's asked for.
+	 * Arguments bound by a previous caller are left in place - clearing them here could wipe out
+	 * another thread's bindings between its bind and execute.
+	 *
+	 * @param sql The SQL of the statement
+	 * @return The statement, to bind and execute while synchronized on it
+	 */
+	public synchronized SQLiteStatement acquire(String sql) {
+		// Statements can't outlive the database they were compiled against
+		SQLiteDatabase db = mHelper.getWritableDatabase();
+		if (db != mDatabase) {
+			clear();
+			mDatabase = db;
+		}
+
+		SQLiteStatement statement = mStatements.get(sql);
+		if (statement == null) {
+			statement = db.compileStatement(sql);
+			mStatements.put(sql, statement);
+		}
+
+		return statement;
+	}
+
+	/**
+	 * Close and forget every cached statement
+	 */
+	public synchronized void clear() {
+		for (SQLiteStatement statement : mStatements.values()) {
+			statement.close();
+		}
+		mStatements.clear();
+		mDatabase = null;
+	}
+}
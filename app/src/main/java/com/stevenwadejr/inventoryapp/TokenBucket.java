@@ -0,0 +1,77 @@
+package com.stevenwadejr.inventoryapp;
+
+/**
+ * Rate limiter that allows short bursts. The bucket holds up to a fixed number of tokens, each
+ * action takes one, and tokens are added back at a steady rate. Not thread safe.
+ */
+class TokenBucket {
+
+	// Most tokens the bucket can hold, which is the largest burst allowed
+	private final int mCapacity;
+
+	// How long it takes to add one token back, in milliseconds
+	private final long mRefillIntervalMs;
+
+	// Tokens currently in the bucket
+	private int mTokens;
+
+	// When the last token was added back
+	private long mLastRefillAt;
+
+	/**
+	 * Constructor that starts with a full bucket
+	 *
+	 * @param capacity         The most tokens the bucket can hold
+	 * @param refillIntervalMs How long it takes to add one token back, in milliseconds
+	 * @param now              The current time in milliseconds
+	 */
+	TokenBucket(int capacity, long refillIntervalMs, long now) {
+		mCapacity = capacity;
+		mRefillIntervalMs = refillIntervalMs;
+		mTokens = capacity;
+		mLastRefillAt = now;
+	}
+
+	/**
+	 * Take a token if there is one
+	 *
+	 * @param now The current time in milliseconds
+	 * @return Whether a token was taken
+	 */
+	boolean tryAcquire(long now) {
+		refill(now);
+		if (mTokens == 0) {
+			return false;
+		}
+		mTokens--;
+		return true;
+	}
+
+	/**
+	 * Get how long until a token is available
+	 *
+	 * @param now The current time in milliseconds
+	 * @return Milliseconds to wait, or 0 if a token is available now
+	 */
+	long millisUntilAvailable(long now) {
+		refill(now);
+		return mTokens > 0 ? 0 : mLastRefillAt + mRefillIntervalMs - now;
+	}
+
+	/**
+	 * Add back the tokens earned since the last refill
+	 */
+	private void refill(long now) {
+		long earned = (now - mLastRefillAt) / mRefillIntervalMs;
+		if (earned <= 0) {
+			return;
+		}
+		if (mTokens + earned >= mCapacity) {
+			mTokens = mCapacity;
+			mLastRefillAt = now;
+		} else {
+			mTokens += (int) earned;
+			mLastRefillAt += earned * mRefillIntervalMs;
+		}
+	}
+}
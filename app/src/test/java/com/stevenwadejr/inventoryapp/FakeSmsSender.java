@@ -0,0 +1,26 @@
+package com.stevenwadejr.inventoryapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records text messages in memory instead of sending them, and can be told to fail
+ */
+class FakeSmsSender implements SmsSender {
+
+	// Messages that were "sent", in order
+	final List<String> messages = new ArrayList<>();
+
+	// Number of upcoming sends that should fail
+	int failuresLeft;
+
+	@Override
+	public boolean send(String phoneNumber, String message) {
+		if (failuresLeft > 0) {
+			failuresLeft--;
+			return false;
+		}
+		messages.add(message);
+		return true;
+	}
+}
@@ -0,0 +1,281 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Times InventoryDatabase operations against tables of 1k, 10k and 100k items on the JVM, using
+ * Robolectric's SQLite. Skipped unless benchmarks are asked for, since it takes a few minutes:
+ *
+ * <pre>
+ * ./gradlew :app:testDebugUnitTest --tests '*InventoryDatabaseBenchmark' -Pbenchmark
+ * </pre>
+ *
+ * Results are written as JSON to app/build/benchmarks/inventory-database.json, one entry per
+ * operation and table size, so runs from different releases can be compared. The "otherOwner"
+ * entries list a second user's small inventory alongside the big one, and should stay flat as the
+ * table grows.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InventoryDatabaseBenchmark {
+
+	private static final String PROPERTY_ENABLED = "inventory.benchmark";
+	private static final String PROPERTY_OUTPUT = "inventory.benchmark.output";
+	private static final String DEFAULT_OUTPUT = "build/benchmarks/inventory-database.json";
+
+	private static final int[] TABLE_SIZES = {1_000, 10_000, 100_000};
+	private static final int PAGE_SIZE = 50;
+	private static final int BULK_SIZE = 500;
+	private static final int OTHER_OWNER_ROWS = 100;
+
+	private static final String USERNAME = "benchmark";
+	private static final String PASSWORD = "benchmark-password";
+	private static final String OTHER_USERNAME = "benchmark-other";
+
+	/**
+	 * One timed operation
+	 */
+	private interface Operation {
+		void run(int iteration);
+	}
+
+	/**
+	 * Timings of one operation at one table size
+	 */
+	private static final class Result {
+		final String operation;
+		final int rows;
+		final long[] times;
+
+		Result(String operation, int rows, long[] times) {
+			this.operation = operation;
+			this.rows = rows;
+			this.times = times;
+		}
+	}
+
+	private Context mContext;
+	private InventoryDatabase mInventoryDb;
+	private final Random mRandom = new Random(42);
+	private final List<Result> mResults = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		assumeTrue("Run with -Pbenchmark", Boolean.getBoolean(PROPERTY_ENABLED));
+		mContext = ApplicationProvider.getApplicationContext();
+	}
+
+	@After
+	public void tearDown() {
+		InventoryDatabase.resetInstance();
+		if (mContext != null) {
+			mContext.deleteDatabase("inventoryApp.db");
+		}
+	}
+
+	@Test
+	public void benchmarkOperations() throws IOException {
+		for (int rows : TABLE_SIZES) {
+			benchmarkTableSize(rows);
+		}
+		writeResults(new File(System.getProperty(PROPERTY_OUTPUT, DEFAULT_OUTPUT)));
+	}
+
+	/**
+	 * Fill a fresh database with the given number of items and time each operation against it
+	 */
+	private void benchmarkTableSize(final int rows) {
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+		assertTrue(mInventoryDb.addUser(USERNAME, new PasswordHasher(1_000).hash(PASSWORD)));
+		mInventoryDb.setCurrentUser(USERNAME);
+
+		final String[] names = new String[rows];
+		int[] quantities = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			names[i] = "Item " + i;
+			quantities[i] = i % 100;
+		}
+		mInventoryDb.upsertItems(names, quantities, rows);
+		final List<Item> items = mInventoryDb.getItemsAfter(0, rows);
+		assertEquals(rows, items.size());
+
+		// Full scans get slower with the table, so they're run fewer times on bigger tables
+		int scanIterations = Math.max(3, 100_000 / rows);
+
+		measure("getItems", rows, scanIterations, new Operation() {
+			@Override
+			public void run(int iteration) {
+				assertEquals(rows, mInventoryDb.getItems().size());
+			}
+		});
+		measure("getItemsAfter", rows, 500, new Operation() {
+			@Override
+			public void run(int iteration) {
+				mInventoryDb.getItemsAfter(randomItem(items).getId(), PAGE_SIZE);
+			}
+		});
+		measure("searchItems", rows, 200, new Operation() {
+			@Override
+			public void run(int iteration) {
+				mInventoryDb.searchItems("item " + mRandom.nextInt(rows), null);
+			}
+		});
+		measure("getSummary", rows, 1000, new Operation() {
+			@Override
+			public void run(int iteration) {
+				mInventoryDb.getSummary();
+			}
+		});
+		// Only the lookup - hashing cost is measured on devices by LoginBenchmark
+		measure("getPassword", rows, 1000, new Operation() {
+			@Override
+			public void run(int iteration) {
+				assertNotNull(mInventoryDb.getPassword(USERNAME));
+			}
+		});
+		measure("addItem", rows, 500, new Operation() {
+			@Override
+			public void run(int iteration) {
+				assertTrue(mInventoryDb.addItem("Added " + iteration, iteration));
+			}
+		});
+		measure("updateItem", rows, 500, new Operation() {
+			@Override
+			public void run(int iteration) {
+				Item item = randomItem(items);
+				item.setQuantity(mRandom.nextInt(100));
+				assertTrue(mInventoryDb.updateItem(item));
+			}
+		});
+		measure("adjustQuantities", rows, 50, new Operation() {
+			@Override
+			public void run(int iteration) {
+				Map<Long, Integer> deltas = new HashMap<>();
+				for (int i = 0; i < BULK_SIZE; i++) {
+					deltas.put(randomItem(items).getId(), mRandom.nextInt(11) - 5);
+				}
+				mInventoryDb.adjustQuantities(deltas);
+			}
+		});
+		measure("upsertItems", rows, 20, new Operation() {
+			@Override
+			public void run(int iteration) {
+				String[] batchNames = new String[BULK_SIZE];
+				int[] batchQuantities = new int[BULK_SIZE];
+				for (int i = 0; i < BULK_SIZE; i++) {
+					batchNames[i] = names[mRandom.nextInt(rows)];
+					batchQuantities[i] = mRandom.nextInt(100);
+				}
+				mInventoryDb.upsertItems(batchNames, batchQuantities, BULK_SIZE);
+			}
+		});
+		measure("deleteItem", rows, 500, new Operation() {
+			@Override
+			public void run(int iteration) {
+				assertTrue(mInventoryDb.deleteItem(items.get(iteration)));
+			}
+		});
+
+		mInventoryDb.setCurrentUser(OTHER_USERNAME);
+		String[] otherNames = new String[OTHER_OWNER_ROWS];
+		int[] otherQuantities = new int[OTHER_OWNER_ROWS];
+		for (int i = 0; i < OTHER_OWNER_ROWS; i++) {
+			otherNames[i] = "Other " + i;
+			otherQuantities[i] = i;
+		}
+		mInventoryDb.upsertItems(otherNames, otherQuantities, OTHER_OWNER_ROWS);
+
+		measure("getItemsAfter.otherOwner", rows, 500, new Operation() {
+			@Override
+			public void run(int iteration) {
+				assertEquals(PAGE_SIZE, mInventoryDb.getItemsAfter(0, PAGE_SIZE).size());
+			}
+		});
+		measure("getItemCount.otherOwner", rows, 500, new Operation() {
+			@Override
+			public void run(int iteration) {
+				assertEquals(OTHER_OWNER_ROWS, mInventoryDb.getItemCount());
+			}
+		});
+	}
+
+	/**
+	 * Time an operation, after a few untimed runs to warm up
+	 */
+	private void measure(String operation, int rows, int iterations, Operation op) {
+		int warmup = Math.max(1, iterations / 10);
+		for (int i = 0; i < warmup; i++) {
+			op.run(iterations + i);
+		}
+
+		long[] times = new long[iterations];
+		for (int i = 0; i < iterations; i++) {
+			long start = System.nanoTime();
+			op.run(i);
+			times[i] = System.nanoTime() - start;
+		}
+		Arrays.sort(times);
+		mResults.add(new Result(operation, rows, times));
+		System.out.println(operation + " @ " + rows + " rows: p50 " + times[times.length / 2] / 1000 + " us");
+	}
+
+	private Item randomItem(List<Item> items) {
+		return items.get(mRandom.nextInt(items.size()));
+	}
+
+	/**
+	 * Write every result as JSON
+	 */
+	private void writeResults(File output) throws IOException {
+		File dir = output.getAbsoluteFile().getParentFile();
+		assertTrue(dir.isDirectory() || dir.mkdirs());
+
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)) {
+			writer.write("{\n  \"timestamp\": " + System.currentTimeMillis() + ",\n");
+			writer.write("  \"javaVersion\": \"" + System.getProperty("java.version") + "\",\n");
+			writer.write("  \"results\": [");
+			for (int i = 0; i < mResults.size(); i++) {
+				Result result = mResults.get(i);
+				long[] times = result.times;
+				long total = 0;
+				for (long time : times) {
+					total += time;
+				}
+				writer.write(i > 0 ? ",\n    " : "\n    ");
+				writer.write("{\"operation\": \"" + result.operation + "\", \"rows\": " + result.rows +
+						", \"iterations\": " + times.length + ", \"meanNs\": " + total / times.length +
+						", \"p50Ns\": " + times[times.length / 2] + ", \"p95Ns\": " + times[times.length * 95 / 100] +
+						", \"maxNs\": " + times[times.length - 1] + "}");
+			}
+			writer.write("\n  ]\n}\n");
+		}
+		System.out.println("Benchmark results written to " + output.getAbsolutePath());
+	}
+}
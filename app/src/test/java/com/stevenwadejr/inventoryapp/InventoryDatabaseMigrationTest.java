@@ -0,0 +1,198 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upgrades a populated version 1 database and checks that nothing was lost and the new indexes
+ * are used by the queries they were added for.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InventoryDatabaseMigrationTest {
+
+	private static final String DATABASE_NAME = "inventoryApp.db";
+
+	// Cheap enough to keep the tests quick
+	private static final int TEST_ITERATIONS = 1_000;
+
+	private final PasswordHasher mHasher = new PasswordHasher(TEST_ITERATIONS);
+
+	private Context mContext;
+
+	@Before
+	public void setUp() {
+		mContext = ApplicationProvider.getApplicationContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase(DATABASE_NAME);
+	}
+
+	@After
+	public void tearDown() {
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase(DATABASE_NAME);
+	}
+
+	@Test
+	public void upgradeFromVersion1_keepsRows() {
+		createVersion1Database();
+
+		InventoryDatabase inventoryDb = InventoryDatabase.getInstance(mContext);
+
+		// Existing items go to the first account registered
+		inventoryDb.setCurrentUser("alex");
+		assertEquals(0, inventoryDb.getItemCount());
+		inventoryDb.setCurrentUser("steven");
+		List<Item> items = inventoryDb.getItems();
+
+		assertEquals(3, items.size());
+		assertEquals("Widget", items.get(0).getName());
+		assertEquals(5, items.get(0).getQuantity());
+		assertEquals("gadget", items.get(1).getName());
+		assertEquals(0, items.get(2).getQuantity());
+		assertTrue(inventoryDb.checkUser("steven", "secret1", mHasher));
+		assertTrue(inventoryDb.checkUser("alex", "secret3", mHasher));
+	}
+
+	@Test
+	public void upgradeFromVersion1_collapsesDuplicateUsernames() {
+		createVersion1Database();
+
+		InventoryDatabase inventoryDb = InventoryDatabase.getInstance(mContext);
+
+		// The oldest "steven" account wins and the name can't be registered again
+		assertTrue(inventoryDb.checkUser("steven", "secret1", mHasher));
+		assertFalse(inventoryDb.checkUser("steven", "secret2", mHasher));
+		assertFalse(inventoryDb.addUser("steven", "secret4", mHasher));
+	}
+
+	@Test
+	public void upgradeFromVersion1_rehashesLegacyPasswordsOnLogin() {
+		createVersion1Database();
+
+		InventoryDatabase inventoryDb = InventoryDatabase.getInstance(mContext);
+		assertEquals(PasswordHasher.LEGACY_MD5_ITERATIONS, inventoryDb.getPassword("alex").iterations);
+
+		// A wrong password leaves the old hash alone
+		assertFalse(inventoryDb.checkUser("alex", "secret1", mHasher));
+		assertEquals(PasswordHasher.LEGACY_MD5_ITERATIONS, inventoryDb.getPassword("alex").iterations);
+
+		assertTrue(inventoryDb.checkUser("alex", "secret3", mHasher));
+		PasswordHasher.HashedPassword rehashed = inventoryDb.getPassword("alex");
+		assertEquals(TEST_ITERATIONS, rehashed.iterations);
+		assertNotNull(rehashed.salt);
+		assertTrue(inventoryDb.checkUser("alex", "secret3", mHasher));
+	}
+
+	@Test
+	public void upgradeFromVersion1_queriesUseIndexes() {
+		createVersion1Database();
+
+		SQLiteDatabase db = InventoryDatabase.getInstance(mContext).getReadableDatabase();
+
+		assertTrue(queryPlan(db, "SELECT _id FROM users WHERE username = 'steven'")
+				.contains("idx_users_username"));
+		assertTrue(queryPlan(db, "SELECT _id FROM inventory WHERE owner = 'steven' AND name = 'widget' COLLATE NOCASE")
+				.contains("idx_inventory_owner_name"));
+		assertTrue(queryPlan(db, "SELECT _id, name, quantity FROM inventory WHERE owner = 'steven' " +
+				"ORDER BY name COLLATE NOCASE").contains("COVERING INDEX idx_inventory_owner_name"));
+		assertTrue(queryPlan(db, "SELECT _id FROM inventory WHERE owner = 'steven' AND quantity > 0 ORDER BY quantity")
+				.contains("idx_inventory_owner_quantity"));
+		assertTrue(queryPlan(db, "SELECT _id FROM inventory WHERE owner = 'steven' AND _id > 1 ORDER BY _id")
+				.contains("idx_inventory_owner "));
+	}
+
+	@Test
+	public void upgradeFromVersion1_indexesExistingNamesForSearch() {
+		createVersion1Database();
+
+		InventoryDatabase inventoryDb = InventoryDatabase.getInstance(mContext);
+		inventoryDb.setCurrentUser("steven");
+		List<Item> matches = inventoryDb.searchItems("spro", null);
+
+		assertEquals(1, matches.size());
+		assertEquals("Sprocket", matches.get(0).getName());
+	}
+
+	@Test
+	public void upgradeFromVersion1_totalsExistingItems() {
+		createVersion1Database();
+
+		InventoryDatabase inventoryDb = InventoryDatabase.getInstance(mContext);
+		inventoryDb.setCurrentUser("steven");
+		InventoryDatabase.Summary summary = inventoryDb.getSummary();
+
+		assertEquals(3, summary.itemCount);
+		assertEquals(17, summary.totalQuantity);
+		assertEquals(1, summary.outOfStockCount);
+		assertEquals(0, summary.lowStockCount);
+	}
+
+	@Test
+	public void freshInstall_matchesUpgradedSchema() {
+		SQLiteDatabase db = InventoryDatabase.getInstance(mContext).getReadableDatabase();
+
+		assertTrue(queryPlan(db, "SELECT _id FROM users WHERE username = 'steven'")
+				.contains("idx_users_username"));
+		assertTrue(queryPlan(db, "SELECT _id FROM inventory WHERE owner = 'steven' AND name = 'widget' COLLATE NOCASE")
+				.contains("idx_inventory_owner_name"));
+	}
+
+	/**
+	 * Create the database exactly as version 1 of the app did, with a few rows in it
+	 */
+	private void createVersion1Database() {
+		SQLiteOpenHelper helper = new SQLiteOpenHelper(mContext, DATABASE_NAME, null, 1) {
+			@Override
+			public void onCreate(SQLiteDatabase db) {
+				db.execSQL("CREATE TABLE inventory (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT, quantity INTEGER)");
+				db.execSQL("CREATE TABLE users (_id INTEGER PRIMARY KEY AUTOINCREMENT, username TEXT, password TEXT)");
+			}
+
+			@Override
+			public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+			}
+		};
+
+		SQLiteDatabase db = helper.getWritableDatabase();
+		db.execSQL("INSERT INTO inventory (name, quantity) VALUES ('Widget', 5), ('gadget', 12), ('Sprocket', 0)");
+		// Version 1 stored unsalted MD5 hashes of "secret1", "secret2" and "secret3"
+		db.execSQL("INSERT INTO users (username, password) VALUES " +
+				"('steven', 'e52d98c459819a11775936d8dfbb7929'), " +
+				"('steven', 'e54cfb3714f76cedd4b27889e1f6a174'), " +
+				"('alex', 'ee41750a2cd87a6fddd89d8760a5345e')");
+		helper.close();
+	}
+
+	/**
+	 * Get SQLite's query plan for a statement as a single string
+	 */
+	private static String queryPlan(SQLiteDatabase db, String sql) {
+		StringBuilder plan = new StringBuilder();
+		Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, null);
+		try {
+			int detail = cursor.getColumnIndexOrThrow("detail");
+			while (cursor.moveToNext()) {
+				plan.append(cursor.getString(detail)).append('\n');
+			}
+		} finally {
+			cursor.close();
+		}
+		return plan.toString();
+	}
+}
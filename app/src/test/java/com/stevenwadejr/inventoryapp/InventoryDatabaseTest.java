@@ -0,0 +1,660 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InventoryDatabaseTest {
+
+	private Context mContext;
+	private InventoryDatabase mInventoryDb;
+
+	@Before
+	public void setUp() {
+		mContext = ApplicationProvider.getApplicationContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+	}
+
+	@After
+	public void tearDown() {
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+	}
+
+	@Test
+	public void adjustQuantity_appliesDeltaAndReturnsNewValue() {
+		long id = addItem("Widget", 5);
+
+		assertEquals(8, mInventoryDb.adjustQuantity(id, 3));
+		assertEquals(6, mInventoryDb.adjustQuantity(id, -2));
+		assertEquals(6, findItem(id).getQuantity());
+	}
+
+	@Test
+	public void adjustQuantity_clampsAtZero() {
+		long id = addItem("Widget", 2);
+
+		assertEquals(0, mInventoryDb.adjustQuantity(id, -5));
+		assertEquals(0, findItem(id).getQuantity());
+	}
+
+	@Test
+	public void adjustQuantity_missingItem() {
+		assertEquals(-1, mInventoryDb.adjustQuantity(12345, 1));
+	}
+
+	@Test
+	public void adjustQuantities_appliesEveryDelta() {
+		long widget = addItem("Widget", 5);
+		long gadget = addItem("Gadget", 1);
+
+		Map<Long, Integer> deltas = new LinkedHashMap<>();
+		deltas.put(widget, 10);
+		deltas.put(gadget, -4);
+		deltas.put(12345L, 1);
+		Map<Long, Integer> quantities = mInventoryDb.adjustQuantities(deltas);
+
+		assertEquals(2, quantities.size());
+		assertEquals(Integer.valueOf(15), quantities.get(widget));
+		assertEquals(Integer.valueOf(0), quantities.get(gadget));
+	}
+
+	@Test
+	public void addItem_storesNegativeQuantityAsZero() {
+		long id = addItem("Widget", -3);
+
+		assertEquals(0, mInventoryDb.getItem(id).getQuantity());
+		mInventoryDb.getItemCache().clear();
+		assertEquals(0, mInventoryDb.getItem(id).getQuantity());
+	}
+
+	@Test
+	public void setQuantity_keepsName() {
+		long id = addItem("Widget", 5);
+
+		assertTrue(mInventoryDb.setQuantity(id, 9));
+		Item item = findItem(id);
+		assertEquals("Widget", item.getName());
+		assertEquals(9, item.getQuantity());
+	}
+
+	@Test
+	public void searchItems_matchesWordPrefixesIgnoringCase() {
+		addItem("Blue Widget", 1);
+		addItem("Red Widget", 2);
+		addItem("Blue Gadget", 3);
+
+		assertEquals(2, mInventoryDb.searchItems("wid", null).size());
+		List<Item> matches = mInventoryDb.searchItems("BLU wi", null);
+		assertEquals(1, matches.size());
+		assertEquals("Blue Widget", matches.get(0).getName());
+		assertTrue(mInventoryDb.searchItems("  ", null).isEmpty());
+	}
+
+	@Test
+	public void searchItems_followsRenamesAndDeletes() {
+		long id = addItem("Widget", 1);
+		long other = addItem("Gadget", 1);
+
+		assertTrue(mInventoryDb.updateItem(new Item(id, "Sprocket", 1)));
+		assertTrue(mInventoryDb.searchItems("wid", null).isEmpty());
+		assertEquals(1, mInventoryDb.searchItems("spr", null).size());
+
+		// Quantity changes don't touch the index
+		assertTrue(mInventoryDb.setQuantity(id, 7));
+		assertEquals(7, mInventoryDb.searchItems("spr", null).get(0).getQuantity());
+
+		assertTrue(mInventoryDb.deleteItem(findItem(other)));
+		assertTrue(mInventoryDb.searchItems("gad", null).isEmpty());
+	}
+
+	@Test
+	public void owner_scopesReadsAndWritesById() {
+		mInventoryDb.setCurrentUser("steven");
+		long widget = addItem("Widget", 5);
+
+		mInventoryDb.setCurrentUser("alex");
+		assertNull(mInventoryDb.getItem(widget));
+		assertFalse(mInventoryDb.updateItem(new Item(widget, "Gadget", 1)));
+		assertFalse(mInventoryDb.setQuantity(widget, 1));
+		assertEquals(-1, mInventoryDb.adjustQuantity(widget, 1));
+		assertFalse(mInventoryDb.deleteItem(new Item(widget, "Widget")));
+
+		mInventoryDb.setCurrentUser("steven");
+		Item item = findItem(widget);
+		assertEquals("Widget", item.getName());
+		assertEquals(5, item.getQuantity());
+	}
+
+	@Test
+	public void getItem_doesNotServeTheLastUsersItemsFromCache() {
+		mInventoryDb.setCurrentUser("steven");
+		long widget = addItem("Widget", 5);
+		assertNotNull(mInventoryDb.getItem(widget));
+
+		mInventoryDb.setCurrentUser("alex");
+		assertNull(mInventoryDb.getItem(widget));
+
+		// A write that was queued before the switch doesn't put Steven's item back in the cache
+		mInventoryDb.setCurrentUser("steven");
+		mInventoryDb.setOwner("alex");
+		assertTrue(mInventoryDb.updateItem(new Item(widget, "Sprocket", 1)));
+		assertNull(mInventoryDb.getItem(widget));
+	}
+
+	@Test
+	public void owner_writesFollowSetCurrentUserNotSetOwner() {
+		mInventoryDb.setCurrentUser("steven");
+		long widget = addItem("Widget", 5);
+
+		// Reads switch straight away, but a write queued before the logout is still Steven's
+		mInventoryDb.setOwner(null);
+		assertTrue(mInventoryDb.setQuantity(widget, 9));
+
+		mInventoryDb.setCurrentUser("steven");
+		assertEquals(9, findItem(widget).getQuantity());
+	}
+
+	@Test
+	public void addUser_firstUserIsGivenItemsWithoutAnOwner() {
+		// Items from before inventories were per user, on a device nobody had registered on
+		long widget = addItem("Widget", 5);
+
+		PasswordHasher hasher = new PasswordHasher(500);
+		assertTrue(mInventoryDb.addUser("steven", hasher.hash("secret")));
+		assertTrue(mInventoryDb.addUser("alex", hasher.hash("secret")));
+
+		assertNull(mInventoryDb.getItem(widget));
+		mInventoryDb.setCurrentUser("alex");
+		assertTrue(mInventoryDb.getItems().isEmpty());
+		mInventoryDb.setCurrentUser("steven");
+		assertEquals(5, findItem(widget).getQuantity());
+		assertEquals(1, mInventoryDb.getItemCount());
+	}
+
+	@Test
+	public void searchItems_otherOwnersMatchesDontUseUpTheLimit() {
+		PasswordHasher hasher = new PasswordHasher(500);
+		assertTrue(mInventoryDb.addUser("steven", hasher.hash("secret")));
+		assertTrue(mInventoryDb.addUser("alex", hasher.hash("secret")));
+
+		// Alex's matches come first in the index, so a limit applied before the owner filter would
+		// leave none for Steven
+		mInventoryDb.setCurrentUser("alex");
+		String[] names = new String[300];
+		int[] quantities = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = "Widget " + i;
+			quantities[i] = 1;
+		}
+		mInventoryDb.upsertItems(names, quantities, names.length);
+		assertEquals(200, mInventoryDb.searchItems("wid", null).size());
+
+		mInventoryDb.setCurrentUser("steven");
+		addItem("Blue Widget", 1);
+		addItem("Widget Box", 2);
+		List<Item> matches = mInventoryDb.searchItems("wid", null);
+		assertEquals(2, matches.size());
+		assertEquals("Blue Widget", matches.get(0).getName());
+		assertEquals("Widget Box", matches.get(1).getName());
+	}
+
+	@Test
+	public void buildPrefixMatch_dropsQueryOperators() {
+		assertEquals("\"blue*\" \"wid*\"", InventoryDatabase.buildPrefixMatch("blue \"wid*"));
+		assertEquals("\"a*\" \"OR*\" \"b*\"", InventoryDatabase.buildPrefixMatch("a OR-b"));
+		assertNull(InventoryDatabase.buildPrefixMatch("* \" -"));
+	}
+
+	@Test
+	public void countItemsUpTo_givesPositionAfterItem() {
+		long first = addItem("Widget", 1);
+		long second = addItem("Gadget", 1);
+		long third = addItem("Sprocket", 1);
+		assertTrue(mInventoryDb.deleteItem(findItem(second)));
+
+		assertEquals(0, mInventoryDb.countItemsUpTo(0));
+		assertEquals(1, mInventoryDb.countItemsUpTo(first));
+		assertEquals(1, mInventoryDb.countItemsUpTo(second));
+		assertEquals(2, mInventoryDb.countItemsUpTo(third));
+	}
+
+	@Test
+	public void getItemsAfter_pagesSortedAndFilteredQuery() {
+		addItem("bolt", 3);
+		addItem("Washer", 0);
+		addItem("Bracket", 7);
+		addItem("BOLT", 1);
+		addItem("Nut", 5);
+		addItem("bracket", 0);
+
+		ItemQuery byName = ItemQuery.ALL.withSort(ItemQuery.SortKey.NAME, true).withNamePrefix("b");
+		assertEquals(4, mInventoryDb.getItemCount(byName));
+		assertEquals("Bracket7 bracket0 bolt3 BOLT1", walk(byName, 3));
+
+		ItemQuery inStock = ItemQuery.ALL.withSort(ItemQuery.SortKey.QUANTITY, false).withQuantityRange(1, null);
+		assertEquals(4, mInventoryDb.getItemCount(inStock));
+		assertEquals("BOLT1 bolt3 Nut5 Bracket7", walk(inStock, 2));
+
+		Item nut = mInventoryDb.getItemAfter(inStock, null, 2);
+		assertEquals("Nut", nut.getName());
+		assertEquals(3, mInventoryDb.countItemsUpTo(inStock, nut));
+		assertEquals(0, mInventoryDb.countItemsUpTo(inStock, null));
+	}
+
+	@Test
+	public void getItemsAfter_namePrefixEndingInAtSignMatchesOnlyThatPrefix() {
+		addItem("x@1", 1);
+		addItem("x[", 1);
+		addItem("x_", 1);
+		addItem("xa", 1);
+		addItem("X@2", 1);
+
+		ItemQuery query = ItemQuery.ALL.withSort(ItemQuery.SortKey.NAME, false).withNamePrefix("x@");
+		assertEquals(2, mInventoryDb.getItemCount(query));
+		assertEquals("x@11 X@21", walk(query, 10));
+	}
+
+	@Test
+	public void owner_keepsEachUsersItemsApart() {
+		mInventoryDb.setCurrentUser("steven");
+		long widget = addItem("Widget", 5);
+		addItem("Gadget", 0);
+
+		mInventoryDb.setCurrentUser("alex");
+		assertEquals(0, mInventoryDb.getItemCount());
+		assertEquals(0, mInventoryDb.getSummary().itemCount);
+		assertTrue(mInventoryDb.searchItems("wid", null).isEmpty());
+
+		// Importing a name another user has adds a new item rather than changing theirs
+		mInventoryDb.upsertItems(new String[]{"widget"}, new int[]{9}, 1);
+		List<Item> items = mInventoryDb.getItems();
+		assertEquals(1, items.size());
+		assertNotEquals(widget, items.get(0).getId());
+		assertEquals(9, mInventoryDb.getSummary().totalQuantity);
+
+		mInventoryDb.setCurrentUser("steven");
+		assertEquals(2, mInventoryDb.getItemCount());
+		assertEquals(5, findItem(widget).getQuantity());
+		assertEquals(1, mInventoryDb.getSummary().outOfStockCount);
+		assertEquals(1, mInventoryDb.searchItems("wid", null).size());
+		assertEquals("Widget5 Gadget0", walk(ItemQuery.ALL.withSort(ItemQuery.SortKey.QUANTITY, true), 1));
+	}
+
+	@Test
+	public void addItem_keepsBindingsWhileOtherThreadsAcquireTheStatement() throws InterruptedException {
+		final int threads = 4;
+		final int itemsPerThread = 200;
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		Thread[] writers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			writers[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < itemsPerThread; i++) {
+							assertTrue(mInventoryDb.addItem("Item " + thread + "-" + i, i + 1));
+						}
+					} catch (Throwable e) {
+						errors.add(e);
+					}
+				}
+			});
+			writers[t].start();
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals(threads * itemsPerThread, mInventoryDb.getItemCount());
+		assertEquals(0, DatabaseUtils.longForQuery(mInventoryDb.getReadableDatabase(),
+				"SELECT COUNT(*) FROM inventory WHERE name IS NULL OR quantity = 0", null));
+	}
+
+	@Test
+	public void getItem_servesRepeatLookupsFromCache() {
+		long id = addItem("Widget", 5);
+		ItemCache cache = mInventoryDb.getItemCache();
+		cache.clear();
+		int misses = cache.getMissCount();
+		int hits = cache.getHitCount();
+
+		assertEquals("Widget", mInventoryDb.getItem(id).getName());
+		assertEquals("Widget", mInventoryDb.getItem(id).getName());
+
+		assertEquals(misses + 1, cache.getMissCount());
+		assertEquals(hits + 1, cache.getHitCount());
+		assertNull(mInventoryDb.getItem(12345));
+	}
+
+	@Test
+	public void getItem_reflectsWrites() {
+		long id = addItem("Widget", 5);
+
+		// Changing a returned item doesn't change the cached copy
+		mInventoryDb.getItem(id).setQuantity(99);
+		assertEquals(5, mInventoryDb.getItem(id).getQuantity());
+
+		assertTrue(mInventoryDb.updateItem(new Item(id, "Sprocket", 3)));
+		assertEquals("Sprocket", mInventoryDb.getItem(id).getName());
+
+		mInventoryDb.adjustQuantity(id, 4);
+		assertEquals(7, mInventoryDb.getItem(id).getQuantity());
+
+		assertTrue(mInventoryDb.setQuantity(id, 1));
+		assertEquals(1, mInventoryDb.getItem(id).getQuantity());
+
+		assertTrue(mInventoryDb.deleteItem(new Item(id, "Sprocket")));
+		assertNull(mInventoryDb.getItem(id));
+	}
+
+	@Test
+	public void itemCache_evictsLeastRecentlyUsed() {
+		ItemCache cache = new ItemCache(2);
+		cache.put(new Item(1, "Widget", 1));
+		cache.put(new Item(2, "Gadget", 1));
+		cache.get(1);
+		cache.put(new Item(3, "Sprocket", 1));
+
+		assertNotNull(cache.get(1));
+		assertNull(cache.get(2));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void itemCache_dropsReadsThatAWriteOvertook() {
+		ItemCache cache = new ItemCache();
+
+		// The read's snapshot is from before the write, so its copy is stale
+		long readStart = cache.startRead();
+		cache.updateQuantity(1, 7);
+		cache.putRead(readStart, new Item(1, "Widget", 5));
+		cache.finishRead();
+		assertNull(cache.get(1));
+
+		readStart = cache.startRead();
+		cache.putRead(readStart, new Item(1, "Widget", 7));
+		cache.finishRead();
+		assertEquals(7, cache.get(1).getQuantity());
+
+		// A read never replaces what's already cached
+		readStart = cache.startRead();
+		cache.put(new Item(1, "Widget", 9));
+		cache.putRead(readStart, new Item(1, "Widget", 7));
+		cache.finishRead();
+		assertEquals(9, cache.get(1).getQuantity());
+
+		readStart = cache.startRead();
+		cache.clear();
+		cache.putRead(readStart, new Item(2, "Gadget", 1));
+		cache.finishRead();
+		assertNull(cache.get(2));
+	}
+
+	@Test
+	public void changeListener_receivesAffectedIds() {
+		final List<InventoryDatabase.ItemChanges> events = new ArrayList<>();
+		InventoryDatabase.ChangeListener listener = new InventoryDatabase.ChangeListener() {
+			@Override
+			public void onItemsChanged(InventoryDatabase.ItemChanges changes) {
+				events.add(changes);
+			}
+		};
+		mInventoryDb.addChangeListener(listener);
+
+		long id = addItem("Widget", 5);
+		assertEquals(Collections.singleton(id), events.get(0).inserted);
+
+		mInventoryDb.adjustQuantity(id, 2);
+		assertEquals(Collections.singleton(id), events.get(1).updated);
+
+		// A batch is published once, after it commits, and missing items are left out
+		Map<Long, Integer> deltas = new LinkedHashMap<>();
+		deltas.put(id, 1);
+		deltas.put(12345L, 1);
+		mInventoryDb.adjustQuantities(deltas);
+		assertEquals(3, events.size());
+		assertEquals(Collections.singleton(id), events.get(2).updated);
+
+		mInventoryDb.upsertItems(new String[]{"Gadget"}, new int[]{1}, 1);
+		assertTrue(events.get(3).everything);
+
+		assertTrue(mInventoryDb.deleteItem(findItem(id)));
+		assertEquals(Collections.singleton(id), events.get(4).deleted);
+
+		// Writes that change nothing aren't published
+		assertFalse(mInventoryDb.setQuantity(id, 3));
+		assertEquals(5, events.size());
+
+		mInventoryDb.removeChangeListener(listener);
+		addItem("Sprocket", 1);
+		assertEquals(5, events.size());
+	}
+
+	@Test
+	public void lowStock_recordsOnlyDownwardCrossings() {
+		assertTrue(mInventoryDb.addItem("Widget", 10, 5));
+		long id = mInventoryDb.getItems().get(0).getId();
+		long untracked = addItem("Gadget", 10);
+
+		// Above the threshold, then crossing it by each write path
+		assertEquals(8, mInventoryDb.adjustQuantity(id, -2));
+		assertTrue(mInventoryDb.takeLowStockEvents().isEmpty());
+		assertEquals(4, mInventoryDb.adjustQuantity(id, -4));
+		mInventoryDb.setQuantity(untracked, 0);
+
+		List<LowStockEvent> events = mInventoryDb.takeLowStockEvents();
+		assertEquals(1, events.size());
+		assertEquals(id, events.get(0).itemId);
+		assertEquals("Widget", events.get(0).name);
+		assertEquals(4, events.get(0).quantity);
+		assertEquals(5, events.get(0).threshold);
+		assertTrue(mInventoryDb.takeLowStockEvents().isEmpty());
+
+		// Staying low or going back up doesn't alert, dropping again after a restock does
+		mInventoryDb.setQuantity(id, 2);
+		mInventoryDb.setQuantity(id, 20);
+		assertTrue(mInventoryDb.takeLowStockEvents().isEmpty());
+		Item item = mInventoryDb.getItem(id);
+		item.setQuantity(5);
+		assertTrue(mInventoryDb.updateItem(item));
+		assertEquals(1, mInventoryDb.takeLowStockEvents().size());
+	}
+
+	@Test
+	public void lowStock_alertsOnlyReachTheirOwner() {
+		mInventoryDb.setCurrentUser("alex");
+		assertTrue(mInventoryDb.addItem("Alex's widget", 10, 5));
+		long alexs = mInventoryDb.getItems().get(0).getId();
+		assertEquals(0, mInventoryDb.adjustQuantity(alexs, -10));
+
+		mInventoryDb.setCurrentUser("steven");
+		assertTrue(mInventoryDb.addItem("Steven's widget", 10, 5));
+		long stevens = mInventoryDb.getItems().get(0).getId();
+		assertEquals(1, mInventoryDb.adjustQuantity(stevens, -9));
+
+		// Steven only collects his own crossing, and only his alerts are read back from the queue
+		List<LowStockEvent> events = mInventoryDb.takeLowStockEvents();
+		assertEquals(1, events.size());
+		assertEquals(stevens, events.get(0).itemId);
+		assertEquals("steven", events.get(0).owner);
+		mInventoryDb.queueNotifications(events);
+		InventoryDatabase.QueuedNotifications queued = mInventoryDb.getQueuedNotifications(10);
+		assertEquals(1, queued.events.size());
+		assertEquals("Steven's widget", queued.events.get(0).name);
+
+		// Alex's crossing waits for Alex, and sending Steven's digest leaves Alex's alerts queued
+		mInventoryDb.setCurrentUser("alex");
+		events = mInventoryDb.takeLowStockEvents();
+		assertEquals(1, events.size());
+		assertEquals(alexs, events.get(0).itemId);
+		mInventoryDb.queueNotifications(events);
+		mInventoryDb.removeQueuedNotifications(queued);
+		queued = mInventoryDb.getQueuedNotifications(10);
+		assertEquals(1, queued.events.size());
+		assertEquals("Alex's widget", queued.events.get(0).name);
+	}
+
+	@Test
+	public void lowStock_thresholdIsSavedWithItem() {
+		long id = addItem("Widget", 10);
+		Item item = mInventoryDb.getItem(id);
+		assertNull(item.getLowStockThreshold());
+
+		item.setLowStockThreshold(3);
+		assertTrue(mInventoryDb.updateItem(item));
+		mInventoryDb.getItemCache().clear();
+		assertEquals(Integer.valueOf(3), mInventoryDb.getItem(id).getLowStockThreshold());
+
+		// Importing doesn't reuse the threshold bound by the last insert
+		mInventoryDb.addItem("Gadget", 1, 7);
+		mInventoryDb.upsertItems(new String[]{"Sprocket"}, new int[]{1}, 1);
+		for (Item listed : mInventoryDb.getItemsAfter(0, 10)) {
+			if ("Sprocket".equals(listed.getName())) {
+				assertNull(listed.getLowStockThreshold());
+			}
+		}
+	}
+
+	@Test
+	public void summary_followsEveryWritePath() {
+		assertEquals(0, mInventoryDb.getSummary().itemCount);
+
+		assertTrue(mInventoryDb.addItem("Widget", 10, 5));
+		long widget = mInventoryDb.getItems().get(0).getId();
+		long gadget = addItem("Gadget", 0);
+		assertSummary(2, 10, 1, 0);
+
+		mInventoryDb.adjustQuantity(widget, -6);
+		assertSummary(2, 4, 1, 1);
+
+		mInventoryDb.setQuantity(gadget, 3);
+		mInventoryDb.upsertItems(new String[]{"widget", "Sprocket"}, new int[]{0, 2}, 2);
+		assertSummary(3, 5, 1, 1);
+
+		Item item = mInventoryDb.getItem(widget);
+		item.setLowStockThreshold(null);
+		assertTrue(mInventoryDb.updateItem(item));
+		assertSummary(3, 5, 1, 0);
+
+		assertTrue(mInventoryDb.deleteItem(item));
+		assertSummary(2, 5, 0, 0);
+	}
+
+	@Test
+	public void stockLedger_recordsMovementsWithUser() {
+		mInventoryDb.setCurrentUser("steven");
+		long id = addItem("Widget", 10);
+		mInventoryDb.adjustQuantity(id, -3);
+		long now = System.currentTimeMillis();
+
+		assertEquals(7, mInventoryDb.getQuantityAt(id, now + 1000));
+		assertEquals(0, mInventoryDb.getQuantityAt(id, now - TimeUnit.DAYS.toMillis(1)));
+		assertEquals("steven", DatabaseUtils.stringForQuery(mInventoryDb.getReadableDatabase(),
+				"SELECT username FROM stock_movements WHERE item_id = ? AND delta = -3",
+				new String[]{String.valueOf(id)}));
+	}
+
+	@Test
+	public void stockLedger_compactsOldMovementsIntoSnapshots() {
+		long day = TimeUnit.DAYS.toMillis(1);
+		long now = System.currentTimeMillis();
+		long start = (now / day - 40) * day;
+		insertMovement(4, start + 1000);
+		insertMovement(6, start + 2000);
+		insertMovement(-2, start + day + 1000);
+		insertMovement(1, now - 1000);
+
+		assertEquals(3, mInventoryDb.compactStockMovements(now - InventoryDatabase.STOCK_MOVEMENT_RETENTION_MS));
+		assertEquals(0, mInventoryDb.compactStockMovements(now - InventoryDatabase.STOCK_MOVEMENT_RETENTION_MS));
+
+		// Folded days answer with the quantity at the start of the day
+		assertEquals(0, mInventoryDb.getQuantityAt(999, start + 5000));
+		assertEquals(10, mInventoryDb.getQuantityAt(999, start + day + 5000));
+		assertEquals(8, mInventoryDb.getQuantityAt(999, start + 2 * day));
+		assertEquals(8, mInventoryDb.getQuantityAt(999, now - 2000));
+		assertEquals(9, mInventoryDb.getQuantityAt(999, now));
+	}
+
+	/**
+	 * Record a stock movement at a given time
+	 */
+	private void insertMovement(int delta, long createdAt) {
+		mInventoryDb.getWritableDatabase().execSQL("INSERT INTO stock_movements (item_id, delta, created_at) " +
+				"VALUES (999, ?, ?)", new Object[]{delta, createdAt});
+	}
+
+	/**
+	 * Check the summary totals
+	 */
+	private void assertSummary(int itemCount, long totalQuantity, int outOfStockCount, int lowStockCount) {
+		InventoryDatabase.Summary summary = mInventoryDb.getSummary();
+		assertEquals(itemCount, summary.itemCount);
+		assertEquals(totalQuantity, summary.totalQuantity);
+		assertEquals(outOfStockCount, summary.outOfStockCount);
+		assertEquals(lowStockCount, summary.lowStockCount);
+	}
+
+	/**
+	 * Add an item and return its ID
+	 */
+	private long addItem(String name, int quantity) {
+		assertTrue(mInventoryDb.addItem(name, quantity));
+		List<Item> items = mInventoryDb.getItems();
+		return items.get(items.size() - 1).getId();
+	}
+
+	/**
+	 * Page through a query and list each item as its name followed by its quantity
+	 */
+	private String walk(ItemQuery query, int pageSize) {
+		StringBuilder listed = new StringBuilder();
+		Item after = null;
+		List<Item> page;
+		do {
+			page = mInventoryDb.getItemsAfter(query, after, pageSize);
+			for (Item item : page) {
+				listed.append(listed.length() > 0 ? " " : "").append(item.getName()).append(item.getQuantity());
+				after = item;
+			}
+		} while (page.size() == pageSize);
+		return listed.toString();
+	}
+
+	/**
+	 * Find an item by ID
+	 */
+	private Item findItem(long id) {
+		for (Item item : mInventoryDb.getItems()) {
+			if (item.getId() == id) {
+				return item;
+			}
+		}
+		fail("No item with ID " + id);
+		return null;
+	}
+}
@@ -0,0 +1,94 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InventoryExporterTest {
+
+	private Context mContext;
+	private InventoryDatabase mInventoryDb;
+
+	@Before
+	public void setUp() {
+		mContext = ApplicationProvider.getApplicationContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+	}
+
+	@After
+	public void tearDown() {
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+	}
+
+	@Test
+	public void exportCsv_quotesFieldsAndRoundTrips() throws IOException {
+		mInventoryDb.addItem("Widget", 5);
+		mInventoryDb.addItem("Bolts, 10mm", 20);
+		mInventoryDb.addItem("Say \"hi\"", 1);
+
+		String csv = export(InventoryExporter.Format.CSV, null);
+		assertEquals("name,quantity\nWidget,5\n\"Bolts, 10mm\",20\n\"Say \"\"hi\"\"\",1\n", csv);
+
+		// Importing the export into an empty inventory gives back the same items
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+		new InventoryImporter(mInventoryDb).importCsv(
+				new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), null);
+
+		List<Item> items = mInventoryDb.getItems();
+		assertEquals(3, items.size());
+		assertEquals("Bolts, 10mm", items.get(1).getName());
+		assertEquals("Say \"hi\"", items.get(2).getName());
+	}
+
+	@Test
+	public void exportJson_escapesStrings() throws IOException {
+		mInventoryDb.addItem("Back\\slash \"quoted\"", 3);
+
+		String json = export(InventoryExporter.Format.JSON, null);
+		assertEquals("[\n  {\"id\": 1, \"name\": \"Back\\\\slash \\\"quoted\\\"\", \"quantity\": 3}\n]\n", json);
+	}
+
+	@Test
+	public void exportJson_emptyInventory() throws IOException {
+		assertEquals("[]\n", export(InventoryExporter.Format.JSON, null));
+	}
+
+	@Test(expected = OperationCanceledException.class)
+	public void export_stopsWhenCancelled() throws IOException {
+		mInventoryDb.addItem("Widget", 5);
+
+		CancellationSignal signal = new CancellationSignal();
+		signal.cancel();
+		export(InventoryExporter.Format.CSV, signal);
+	}
+
+	private String export(InventoryExporter.Format format, CancellationSignal signal) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new InventoryExporter(mInventoryDb).export(output, format, signal);
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
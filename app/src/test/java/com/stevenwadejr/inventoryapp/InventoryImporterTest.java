@@ -0,0 +1,100 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class InventoryImporterTest {
+
+	private Context mContext;
+	private InventoryDatabase mInventoryDb;
+
+	@Before
+	public void setUp() {
+		mContext = ApplicationProvider.getApplicationContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+	}
+
+	@After
+	public void tearDown() {
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+	}
+
+	@Test
+	public void importCsv_insertsRowsAndSkipsHeader() throws IOException {
+		InventoryImporter.Result result = importCsv("name,quantity\nWidget,5\r\n\"Bolts, 10mm\",20\n\"Say \"\"hi\"\"\",1");
+
+		assertEquals(3, result.inserted);
+		assertEquals(0, result.updated);
+		assertEquals(1, result.skipped);
+
+		List<Item> items = mInventoryDb.getItems();
+		assertEquals(3, items.size());
+		assertEquals("Bolts, 10mm", items.get(1).getName());
+		assertEquals(20, items.get(1).getQuantity());
+		assertEquals("Say \"hi\"", items.get(2).getName());
+	}
+
+	@Test
+	public void importCsv_mergesExistingNamesIgnoringCase() throws IOException {
+		mInventoryDb.addItem("Widget", 5);
+
+		InventoryImporter.Result result = importCsv("widget,12\nGadget,3\nGADGET,4\n");
+
+		assertEquals(1, result.inserted);
+		assertEquals(2, result.updated);
+
+		List<Item> items = mInventoryDb.getItems();
+		assertEquals(2, items.size());
+		assertEquals("Widget", items.get(0).getName());
+		assertEquals(12, items.get(0).getQuantity());
+		assertEquals(4, items.get(1).getQuantity());
+	}
+
+	@Test
+	public void importCsv_writesInChunks() throws IOException {
+		StringBuilder csv = new StringBuilder();
+		for (int i = 0; i < 2500; i++) {
+			csv.append("Item ").append(i).append(',').append(i).append('\n');
+		}
+
+		final int[] progressCalls = {0};
+		InputStream input = new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8));
+		InventoryImporter.Result result = new InventoryImporter(mInventoryDb).importCsv(input,
+				new InventoryImporter.ProgressListener() {
+					@Override
+					public void onProgress(int rowsImported, long bytesRead) {
+						progressCalls[0]++;
+					}
+				});
+
+		assertEquals(2500, result.inserted);
+		assertEquals(3, progressCalls[0]);
+		assertEquals(2500, mInventoryDb.getItemCount());
+	}
+
+	private InventoryImporter.Result importCsv(String csv) throws IOException {
+		InputStream input = new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+		return new InventoryImporter(mInventoryDb).importCsv(input, null);
+	}
+}
@@ -0,0 +1,46 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.os.Parcel;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ItemTest {
+
+	@Test
+	public void parcel_roundTripsEveryField() {
+		Item item = new Item(42, "Cordless drill", 12);
+
+		Parcel parcel = Parcel.obtain();
+		try {
+			item.writeToParcel(parcel, 0);
+			parcel.setDataPosition(0);
+			Item copy = Item.CREATOR.createFromParcel(parcel);
+
+			assertEquals(42, copy.getId());
+			assertEquals("Cordless drill", copy.getName());
+			assertEquals(12, copy.getQuantity());
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	@Test
+	public void parcel_keepsNullName() {
+		Parcel parcel = Parcel.obtain();
+		try {
+			new Item(1, null, 0).writeToParcel(parcel, 0);
+			parcel.setDataPosition(0);
+
+			assertNull(Item.CREATOR.createFromParcel(parcel).getName());
+		} finally {
+			parcel.recycle();
+		}
+	}
+}
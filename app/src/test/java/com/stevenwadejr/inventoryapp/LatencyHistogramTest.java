@@ -0,0 +1,58 @@
+package com.stevenwadejr.inventoryapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+	@Test
+	public void percentiles_areWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1000, snapshot.count);
+		assertEquals(1_000_000, snapshot.maxNanos);
+		assertEquals(500_500, snapshot.mean());
+		assertNear(500_000, snapshot.percentile(0.50));
+		assertNear(950_000, snapshot.percentile(0.95));
+		assertNear(990_000, snapshot.percentile(0.99));
+		assertTrue(snapshot.percentile(1.0) <= snapshot.maxNanos);
+	}
+
+	@Test
+	public void record_handlesSmallAndHugeValues() {
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		histogram.record(-5);
+		histogram.record(3);
+		histogram.record(Long.MAX_VALUE / 2);
+
+		LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(3, snapshot.count);
+		assertEquals(0, snapshot.percentile(0.1));
+		assertEquals(3, snapshot.percentile(0.5));
+	}
+
+	@Test
+	public void reset_forgetsEverything() {
+		LatencyHistogram histogram = Metrics.histogram("test.reset");
+		assertSame(histogram, Metrics.histogram("test.reset"));
+		histogram.record(1000);
+		assertTrue(Metrics.toJson().contains("\"name\": \"test.reset\", \"count\": 1"));
+
+		Metrics.reset();
+		assertEquals(0, histogram.snapshot().count);
+		assertEquals(0, histogram.snapshot().percentile(0.99));
+		assertFalse(Metrics.toJson().contains("test.reset"));
+	}
+
+	/**
+	 * Check a percentile is within the histogram's precision of the exact value
+	 */
+	private static void assertNear(long expected, long actual) {
+		assertTrue("Expected about " + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 8);
+	}
+}
@@ -0,0 +1,61 @@
+package com.stevenwadejr.inventoryapp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PasswordHasherTest {
+
+	// Cheap enough to keep the tests quick
+	private static final int ITERATIONS = 1_000;
+
+	private final PasswordHasher mHasher = new PasswordHasher(ITERATIONS);
+
+	@Test
+	public void hash_verifiesOnlyTheSamePassword() {
+		PasswordHasher.HashedPassword stored = mHasher.hash("secret");
+
+		assertEquals(ITERATIONS, stored.iterations);
+		assertEquals(64, stored.hash.length());
+		assertEquals(32, stored.salt.length());
+		assertTrue(mHasher.verify("secret", stored));
+		assertFalse(mHasher.verify("Secret", stored));
+		assertFalse(mHasher.verify("", stored));
+	}
+
+	@Test
+	public void hash_usesNewSaltEveryTime() {
+		PasswordHasher.HashedPassword first = mHasher.hash("secret");
+		PasswordHasher.HashedPassword second = mHasher.hash("secret");
+
+		assertNotEquals(first.salt, second.salt);
+		assertNotEquals(first.hash, second.hash);
+	}
+
+	@Test
+	public void verify_acceptsLegacyMd5Hashes() {
+		// MD5 of "secret1", as stored before passwords were salted
+		PasswordHasher.HashedPassword legacy = new PasswordHasher.HashedPassword(
+				"e52d98c459819a11775936d8dfbb7929", null, PasswordHasher.LEGACY_MD5_ITERATIONS);
+
+		assertTrue(mHasher.verify("secret1", legacy));
+		assertFalse(mHasher.verify("secret2", legacy));
+		assertTrue(mHasher.needsRehash(legacy));
+	}
+
+	@Test
+	public void verify_usesTheStoredCost() {
+		PasswordHasher.HashedPassword stored = new PasswordHasher(500).hash("secret");
+
+		assertTrue(mHasher.verify("secret", stored));
+		assertTrue(mHasher.needsRehash(stored));
+		assertFalse(new PasswordHasher(500).needsRehash(stored));
+	}
+
+	@Test
+	public void verify_rejectsCorruptHashes() {
+		assertFalse(mHasher.verify("secret", new PasswordHasher.HashedPassword("not hex", "00", ITERATIONS)));
+		assertFalse(mHasher.verify("secret", new PasswordHasher.HashedPassword(null, null, 0)));
+		assertFalse(mHasher.verify("secret", new PasswordHasher.HashedPassword("00", null, ITERATIONS)));
+	}
+}
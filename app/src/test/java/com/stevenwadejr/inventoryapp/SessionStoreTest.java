@@ -0,0 +1,97 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SessionStoreTest {
+
+	private SharedPreferences mPrefs;
+	private SharedPreferences mTokenHashPrefs;
+	private SessionStore mSessionStore;
+
+	@Before
+	public void setUp() {
+		Context context = ApplicationProvider.getApplicationContext();
+		mPrefs = context.getSharedPreferences("session_test", Context.MODE_PRIVATE);
+		mTokenHashPrefs = context.getSharedPreferences("session_token_hash_test", Context.MODE_PRIVATE);
+		mSessionStore = new SessionStore(mPrefs, mTokenHashPrefs);
+	}
+
+	@After
+	public void tearDown() {
+		mPrefs.edit().clear().commit();
+		mTokenHashPrefs.edit().clear().commit();
+	}
+
+	@Test
+	public void getUsername_returnsUserUntilSessionExpires() {
+		assertNull(mSessionStore.getUsername(1000));
+
+		mSessionStore.start("steven", 1000);
+
+		assertEquals("steven", mSessionStore.getUsername(1000));
+		assertEquals("steven", mSessionStore.getUsername(1000 + SessionStore.SESSION_LIFETIME_MS - 1));
+		assertNull(mSessionStore.getUsername(1000 + SessionStore.SESSION_LIFETIME_MS));
+
+		// An expired session is gone for good
+		assertNull(mSessionStore.getUsername(1000));
+	}
+
+	@Test
+	public void start_replacesPreviousSessionAndItsExpiry() {
+		mSessionStore.start("steven", 1000);
+		mSessionStore.start("alex", 2000);
+
+		assertEquals("alex", mSessionStore.getUsername(2000));
+		assertEquals("alex", mSessionStore.getUsername(1000 + SessionStore.SESSION_LIFETIME_MS));
+		assertNull(mSessionStore.getUsername(2000 + SessionStore.SESSION_LIFETIME_MS));
+	}
+
+	@Test
+	public void end_revokesSession() {
+		mSessionStore.start("steven", 1000);
+
+		mSessionStore.end();
+
+		assertNull(mSessionStore.getUsername(1000));
+		assertNull(new SessionStore(mPrefs, mTokenHashPrefs).getUsername(1000));
+		assertTrue(mTokenHashPrefs.getAll().isEmpty());
+	}
+
+	@Test
+	public void getUsername_rejectsSessionWhoseTokenDoesNotMatch() {
+		mSessionStore.start("steven", 1000);
+
+		// Only a hash of the token is kept as the record of the session
+		String token = mPrefs.getString("token", null);
+		assertNotNull(token);
+		assertFalse(mTokenHashPrefs.getAll().containsValue(token));
+
+		// A session put back after logging out no longer has a token to match
+		mSessionStore.end();
+		mPrefs.edit()
+				.putString("username", "steven")
+				.putLong("expires_at", 1000 + SessionStore.SESSION_LIFETIME_MS)
+				.putString("token", token)
+				.commit();
+		assertNull(mSessionStore.getUsername(1000));
+
+		// Nor does a session edited to name another user
+		mSessionStore.start("steven", 1000);
+		mPrefs.edit().putString("username", "alex").commit();
+		assertNull(mSessionStore.getUsername(1000));
+	}
+}
@@ -0,0 +1,145 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SmsNotificationQueueTest {
+
+	private Context mContext;
+	private InventoryDatabase mInventoryDb;
+	private SharedPreferences mSharedPrefs;
+	private FakeSmsSender mSender;
+	private SmsNotificationQueue mQueue;
+
+	// When the alerts in these tests crossed their thresholds
+	private long mStart;
+
+	@Before
+	public void setUp() {
+		mContext = ApplicationProvider.getApplicationContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+
+		mSharedPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+		mSharedPrefs.edit()
+				.putBoolean(SmsNotifcationsActivity.PREFERENCE_RECEIVE_NOTIFICATIONS, true)
+				.putString(SmsNotifcationsActivity.PREFERENCE_PHONE_NUMBER, "5550100")
+				.commit();
+
+		mSender = new FakeSmsSender();
+		mQueue = new SmsNotificationQueue(mContext, new AsyncInventoryDatabase(mInventoryDb), mSharedPrefs, mSender);
+		mStart = System.currentTimeMillis();
+	}
+
+	@After
+	public void tearDown() {
+		mSharedPrefs.edit().clear().commit();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+	}
+
+	@Test
+	public void dispatch_sendsOneDigestPerInterval() {
+		mInventoryDb.queueNotifications(Arrays.asList(event(1, "Widget", 4), event(2, "Gadget", 1)));
+		mInventoryDb.queueNotifications(Collections.singletonList(event(1, "Widget", 2)));
+
+		// Waits for the rest of the interval in case more alerts arrive
+		assertEquals(SmsNotificationQueue.DIGEST_INTERVAL_MS, mQueue.dispatch(mStart));
+		assertTrue(mSender.messages.isEmpty());
+
+		// One message with each item's latest quantity
+		long now = mStart + SmsNotificationQueue.DIGEST_INTERVAL_MS;
+		assertEquals(-1, mQueue.dispatch(now));
+		assertEquals(1, mSender.messages.size());
+		assertTrue(mSender.messages.get(0).contains("Gadget (1), Widget (2)"));
+
+		// A later alert waits for the next interval
+		mInventoryDb.queueNotifications(Collections.singletonList(event(3, "Sprocket", 0)));
+		assertEquals(SmsNotificationQueue.DIGEST_INTERVAL_MS, mQueue.dispatch(now));
+		assertEquals(1, mSender.messages.size());
+	}
+
+	@Test
+	public void dispatch_retriesWithBackoff() {
+		mInventoryDb.queueNotifications(Collections.singletonList(event(1, "Widget", 4)));
+		mSender.failuresLeft = 2;
+
+		long now = mStart + SmsNotificationQueue.DIGEST_INTERVAL_MS;
+		assertEquals(SmsNotificationQueue.RETRY_BASE_MS, mQueue.dispatch(now));
+		now += SmsNotificationQueue.RETRY_BASE_MS;
+		assertEquals(SmsNotificationQueue.RETRY_BASE_MS * 2, mQueue.dispatch(now));
+		assertTrue(mSender.messages.isEmpty());
+
+		// The alert stays queued until it's sent
+		now += SmsNotificationQueue.RETRY_BASE_MS * 2;
+		assertEquals(-1, mQueue.dispatch(now));
+		assertEquals(1, mSender.messages.size());
+		assertTrue(mInventoryDb.getQueuedNotifications(10).events.isEmpty());
+	}
+
+	@Test
+	public void dispatch_isRateLimited() {
+		long now = mStart;
+		for (int i = 0; i < SmsNotificationQueue.RATE_LIMIT_BURST; i++) {
+			now += SmsNotificationQueue.DIGEST_INTERVAL_MS;
+			mInventoryDb.queueNotifications(Collections.singletonList(event(i, "Item " + i, 0)));
+			assertEquals(-1, mQueue.dispatch(now));
+		}
+		assertEquals(SmsNotificationQueue.RATE_LIMIT_BURST, mSender.messages.size());
+
+		// The burst is used up until a token is added back
+		now += SmsNotificationQueue.DIGEST_INTERVAL_MS;
+		mInventoryDb.queueNotifications(Collections.singletonList(event(99, "Late", 0)));
+		long delay = mQueue.dispatch(now);
+		assertTrue(delay > 0 && delay <= SmsNotificationQueue.RATE_LIMIT_REFILL_MS);
+		assertEquals(SmsNotificationQueue.RATE_LIMIT_BURST, mSender.messages.size());
+		assertEquals(-1, mQueue.dispatch(now + delay));
+		assertEquals(SmsNotificationQueue.RATE_LIMIT_BURST + 1, mSender.messages.size());
+	}
+
+	@Test
+	public void dispatch_dropsQueueWhenNotificationsAreOff() {
+		mInventoryDb.queueNotifications(Collections.singletonList(event(1, "Widget", 4)));
+		mSharedPrefs.edit().putBoolean(SmsNotifcationsActivity.PREFERENCE_RECEIVE_NOTIFICATIONS, false).commit();
+
+		assertEquals(-1, mQueue.dispatch(mStart + SmsNotificationQueue.DIGEST_INTERVAL_MS));
+		assertTrue(mSender.messages.isEmpty());
+		assertTrue(mInventoryDb.getQueuedNotifications(10).events.isEmpty());
+	}
+
+	@Test
+	public void buildDigest_countsItemsBeyondTheFirstFew() {
+		assertEquals("Inventory alert: Widget is running low (4 left)",
+				mQueue.buildDigest(Collections.singletonList(event(1, "Widget", 4))));
+
+		String digest = mQueue.buildDigest(Arrays.asList(event(1, "A", 0), event(2, "B", 0), event(3, "C", 0),
+				event(4, "D", 0), event(5, "E", 0), event(6, "F", 0), event(7, "G", 0)));
+		assertEquals("Inventory alert: 7 items are running low: A (0), B (0), C (0), D (0), E (0) and 2 more",
+				digest);
+	}
+
+	/**
+	 * Create an alert that crossed its threshold at the start of the test
+	 */
+	private LowStockEvent event(long itemId, String name, int quantity) {
+		return new LowStockEvent("", itemId, name, quantity, 5, mStart);
+	}
+}
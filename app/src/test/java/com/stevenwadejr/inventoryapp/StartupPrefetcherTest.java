@@ -0,0 +1,82 @@
+package com.stevenwadejr.inventoryapp;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class StartupPrefetcherTest {
+
+	private Context mContext;
+	private InventoryDatabase mInventoryDb;
+	private AsyncInventoryDatabase mAsyncDb;
+	private StartupPrefetcher mPrefetcher;
+
+	@Before
+	public void setUp() {
+		mContext = ApplicationProvider.getApplicationContext();
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+		mInventoryDb = InventoryDatabase.getInstance(mContext);
+		mAsyncDb = new AsyncInventoryDatabase(mInventoryDb);
+		mPrefetcher = new StartupPrefetcher(mAsyncDb);
+	}
+
+	@After
+	public void tearDown() {
+		InventoryDatabase.resetInstance();
+		mContext.deleteDatabase("inventoryApp.db");
+	}
+
+	@Test
+	public void take_returnsPageForUserWhoLoggedInAfterColdStart() throws InterruptedException {
+		mInventoryDb.setCurrentUser("steven");
+		assertTrue(mInventoryDb.addItem("Widget", 5));
+		assertTrue(mInventoryDb.addItem("Gadget", 2));
+
+		// A cold start without a saved session prefetches before anyone is logged in
+		mInventoryDb.setOwner(null);
+		mPrefetcher.prefetch();
+		awaitPage();
+
+		// Then the login screen sets the user and prefetches again
+		mAsyncDb.setCurrentUser("steven", null);
+		mPrefetcher.prefetch();
+		StartupPrefetcher.FirstPage firstPage = awaitPage();
+
+		assertNotNull(firstPage);
+		assertEquals("steven", firstPage.owner);
+		assertEquals(2, firstPage.size);
+		assertEquals("Widget", firstPage.items.get(0).getName());
+		assertNull(mPrefetcher.take());
+	}
+
+	/**
+	 * Run main thread callbacks until the prefetched page is ready, or give up after a second
+	 *
+	 * @return The page handed over by the prefetcher, or `null` if there wasn't one
+	 */
+	private StartupPrefetcher.FirstPage awaitPage() throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			shadowOf(Looper.getMainLooper()).idle();
+			StartupPrefetcher.FirstPage firstPage = mPrefetcher.take();
+			if (firstPage != null) {
+				return firstPage;
+			}
+			Thread.sleep(10);
+		}
+		return null;
+	}
+}